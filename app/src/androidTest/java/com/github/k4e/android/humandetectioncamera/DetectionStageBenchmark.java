@@ -0,0 +1,209 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionStage;
+import com.github.k4e.humandetectioncamera.pipeline.DetectorParams;
+import com.github.k4e.humandetectioncamera.pipeline.FrameConverter;
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the shared downscaled grayscale detection path with running the cascades on the
+ * full-resolution RGBA frame. Recorded frames named {@code <width>x<height>_*.nv21} are read from
+ * the directory given by the {@code framesDir} instrumentation argument; synthetic frames are used otherwise.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DetectionStageBenchmark {
+
+    static {
+        System.loadLibrary("opencv_java4");
+    }
+
+    private static final String TAG = MainActivity.TAG;
+    private static final int ITERATIONS = 5;
+    private static final double MATCH_IOU = 0.5;
+
+    @Test
+    public void downscaledGray_fasterThanFullResolution() throws IOException {
+        Context context = InstrumentationRegistry.getTargetContext();
+        CascadeClassifier face = new CascadeClassifier(
+                copyAsset(context, "haarcascades/haarcascade_frontalface_alt.xml"));
+        CascadeClassifier body = new CascadeClassifier(
+                copyAsset(context, "haarcascades/haarcascade_fullbody.xml"));
+        CascadeDetector faceDetector = new CascadeDetector(CascadeDetector.HAAR, face);
+        CascadeDetector bodyDetector = new CascadeDetector(CascadeDetector.HAAR, body);
+        List<Mat> frames = loadFrames();
+        DetectionStage stage = new DetectionStage(DetectionStage.DEFAULT_DETECTION_WIDTH);
+        MatOfRect fullRects = new MatOfRect();
+        MatOfRect stageRects = new MatOfRect();
+        long fullNanos = 0;
+        long stageNanos = 0;
+        int fullCount = 0;
+        int matchedCount = 0;
+        int stageCount = 0;
+        for (Mat frame : frames) {
+            for (int it = 0; it < ITERATIONS; ++it) {
+                List<int[]> full = new ArrayList<>();
+                long start = System.nanoTime();
+                face.detectMultiScale(frame, fullRects);
+                collect(fullRects, null, full);
+                body.detectMultiScale(frame, fullRects);
+                collect(fullRects, null, full);
+                long mid = System.nanoTime();
+                List<int[]> scaled = new ArrayList<>();
+                stage.prepare(frame);
+                stage.detect(faceDetector, DetectorParams.DEFAULT_FACE, stageRects);
+                collect(stageRects, stage, scaled);
+                stage.detect(bodyDetector, DetectorParams.DEFAULT_BODY, stageRects);
+                collect(stageRects, stage, scaled);
+                long end = System.nanoTime();
+                fullNanos += mid - start;
+                stageNanos += end - mid;
+                fullCount += full.size();
+                stageCount += scaled.size();
+                matchedCount += countMatches(full, scaled);
+            }
+        }
+        int runs = frames.size() * ITERATIONS;
+        double agreement = fullCount == 0 ? (stageCount == 0 ? 1.0 : 0.0) : (double) matchedCount / fullCount;
+        Log.i(TAG, String.format("Detection benchmark: %d runs, full %.2f ms/frame, downscaled %.2f ms/frame, "
+                        + "speedup %.2fx, full detections %d, downscaled detections %d, agreement %.3f",
+                runs, fullNanos / 1e6 / runs, stageNanos / 1e6 / runs,
+                (double) fullNanos / stageNanos, fullCount, stageCount, agreement));
+        assertTrue(stageNanos < fullNanos);
+        stage.release();
+        for (Mat frame : frames) {
+            frame.release();
+        }
+    }
+
+    private static void collect(MatOfRect rects, DetectionStage stage, List<int[]> out) {
+        for (int i = 0; i < rects.rows(); ++i) {
+            int[] rect = new int[4];
+            rects.get(i, 0, rect);
+            if (stage != null) {
+                stage.mapToSource(rect);
+            }
+            out.add(rect);
+        }
+    }
+
+    private static int countMatches(List<int[]> expected, List<int[]> actual) {
+        boolean[] used = new boolean[actual.size()];
+        int matches = 0;
+        for (int[] e : expected) {
+            for (int i = 0; i < actual.size(); ++i) {
+                if (!used[i] && iou(e, actual.get(i)) >= MATCH_IOU) {
+                    used[i] = true;
+                    ++matches;
+                    break;
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static double iou(int[] a, int[] b) {
+        int left = Math.max(a[0], b[0]);
+        int top = Math.max(a[1], b[1]);
+        int right = Math.min(a[0] + a[2], b[0] + b[2]);
+        int bottom = Math.min(a[1] + a[3], b[1] + b[3]);
+        if (right <= left || bottom <= top) {
+            return 0;
+        }
+        double inter = (double) (right - left) * (bottom - top);
+        return inter / ((double) a[2] * a[3] + (double) b[2] * b[3] - inter);
+    }
+
+    private static List<Mat> loadFrames() throws IOException {
+        List<Mat> frames = new ArrayList<>();
+        Bundle args = InstrumentationRegistry.getArguments();
+        String dirname = args.getString("framesDir");
+        File[] files = dirname != null ? new File(dirname).listFiles() : null;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                int x = name.indexOf('x');
+                int underscore = name.indexOf('_');
+                if (!name.endsWith(".nv21") || x <= 0 || underscore <= x) {
+                    continue;
+                }
+                int width = Integer.parseInt(name.substring(0, x));
+                int height = Integer.parseInt(name.substring(x + 1, underscore));
+                byte[] data = new byte[width * height * 3 / 2];
+                InputStream in = new FileInputStream(file);
+                int off = 0;
+                int len;
+                while (off < data.length && (len = in.read(data, off, data.length - off)) >= 0) {
+                    off += len;
+                }
+                in.close();
+                frames.add(toRgba(data, width, height));
+            }
+        }
+        if (frames.isEmpty()) {
+            Random random = new Random(5);
+            for (int i = 0; i < 4; ++i) {
+                frames.add(toRgba(syntheticFrame(1280, 720, random), 1280, 720));
+            }
+        }
+        return frames;
+    }
+
+    private static Mat toRgba(byte[] nv21, int width, int height) {
+        Mat rgba = new Mat();
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.convert(nv21, width, height, rgba);
+        converter.release();
+        return rgba;
+    }
+
+    private static byte[] syntheticFrame(int width, int height, Random random) {
+        byte[] data = new byte[width * height * 3 / 2];
+        random.nextBytes(data);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int i = y * width + x;
+                data[i] = (byte) (((x / 40 + y / 40) % 2 == 0 ? 60 : 180) + (data[i] & 0x0f));
+            }
+        }
+        return data;
+    }
+
+    private static String copyAsset(Context context, String name) throws IOException {
+        File file = new File(context.getCacheDir(), name.replace('/', '_'));
+        InputStream in = context.getAssets().open(name);
+        OutputStream out = new FileOutputStream(file);
+        byte[] buf = new byte[1024 * 16];
+        int len;
+        while ((len = in.read(buf)) >= 0) {
+            out.write(buf, 0, len);
+        }
+        in.close();
+        out.close();
+        return file.getAbsolutePath();
+    }
+}
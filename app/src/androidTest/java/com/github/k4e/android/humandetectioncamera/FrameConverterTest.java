@@ -0,0 +1,138 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.github.k4e.humandetectioncamera.pipeline.FrameConverter;
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class FrameConverterTest {
+
+    static {
+        System.loadLibrary("opencv_java4");
+    }
+
+    private static final int[][] FRAME_SIZES = { { 320, 240 }, { 640, 480 }, { 1280, 720 } };
+
+    @Test
+    public void direct_matchesBt601Reference() {
+        for (int[] size : FRAME_SIZES) {
+            byte[] nv21 = syntheticFrame(size[0], size[1], 1);
+            Mat rgba = new Mat();
+            new Nv21FrameConverter().convert(nv21, size[0], size[1], rgba);
+            assertEquals(CvType.CV_8UC4, rgba.type());
+            assertEquals(size[0], rgba.cols());
+            assertEquals(size[1], rgba.rows());
+            int[] ref = referenceRgb(nv21, size[0], size[1]);
+            byte[] actual = new byte[size[0] * size[1] * 4];
+            rgba.get(0, 0, actual);
+            int maxDiff = 0;
+            for (int i = 0; i < size[0] * size[1]; ++i) {
+                for (int c = 0; c < 3; ++c) {
+                    maxDiff = Math.max(maxDiff, Math.abs(ref[i * 3 + c] - (actual[i * 4 + c] & 0xff)));
+                }
+            }
+            assertTrue("max diff " + maxDiff, maxDiff <= 2);
+            rgba.release();
+        }
+    }
+
+    @Test
+    public void direct_matchesJpegPathWithinCodecTolerance() {
+        for (int[] size : FRAME_SIZES) {
+            byte[] nv21 = syntheticFrame(size[0], size[1], 2);
+            Mat direct = new Mat();
+            Mat jpeg = new Mat();
+            new Nv21FrameConverter().convert(nv21, size[0], size[1], direct);
+            new JpegFrameConverter().convert(nv21, size[0], size[1], jpeg);
+            assertEquals(jpeg.type(), direct.type());
+            assertEquals(jpeg.size(), direct.size());
+            byte[] a = new byte[size[0] * size[1] * 4];
+            byte[] b = new byte[size[0] * size[1] * 4];
+            direct.get(0, 0, a);
+            jpeg.get(0, 0, b);
+            long sum = 0;
+            for (int i = 0; i < a.length; i += 4) {
+                for (int c = 0; c < 3; ++c) {
+                    sum += Math.abs((a[i + c] & 0xff) - (b[i + c] & 0xff));
+                }
+            }
+            double meanDiff = (double) sum / (size[0] * size[1] * 3);
+            assertTrue("mean diff " + meanDiff, meanDiff < 6.0);
+            direct.release();
+            jpeg.release();
+        }
+    }
+
+    @Test
+    public void toRgba_reconvertsLastFrame() {
+        int w = 320;
+        int h = 240;
+        FrameConverter converter = new Nv21FrameConverter();
+        assertFalse(converter.hasFrame());
+        converter.put(syntheticFrame(w, h, 3), w, h);
+        Mat first = new Mat();
+        Mat second = new Mat();
+        converter.toRgba(first);
+        converter.toRgba(second);
+        byte[] a = new byte[w * h * 4];
+        byte[] b = new byte[w * h * 4];
+        first.get(0, 0, a);
+        second.get(0, 0, b);
+        assertArrayEquals(a, b);
+        converter.release();
+        assertFalse(converter.hasFrame());
+    }
+
+    private static byte[] syntheticFrame(int width, int height, long seed) {
+        byte[] data = new byte[width * height * 3 / 2];
+        Random random = new Random(seed);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int v = 32 + (x * 160 / width) + (y * 48 / height) + random.nextInt(8);
+                data[y * width + x] = (byte) v;
+            }
+        }
+        int uvOffset = width * height;
+        for (int y = 0; y < height / 2; ++y) {
+            for (int x = 0; x < width / 2; ++x) {
+                int i = uvOffset + y * width + x * 2;
+                data[i] = (byte) (96 + (y * 64 / height));
+                data[i + 1] = (byte) (160 - (x * 64 / width));
+            }
+        }
+        return data;
+    }
+
+    private static int[] referenceRgb(byte[] nv21, int width, int height) {
+        int[] rgb = new int[width * height * 3];
+        int uvOffset = width * height;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int luma = Math.max(0, (nv21[y * width + x] & 0xff) - 16);
+                int vi = uvOffset + (y / 2) * width + (x / 2) * 2;
+                int v = (nv21[vi] & 0xff) - 128;
+                int u = (nv21[vi + 1] & 0xff) - 128;
+                double yy = 1.164 * luma;
+                int i = (y * width + x) * 3;
+                rgb[i] = clamp(yy + 1.596 * v);
+                rgb[i + 1] = clamp(yy - 0.813 * v - 0.391 * u);
+                rgb[i + 2] = clamp(yy + 2.018 * u);
+            }
+        }
+        return rgb;
+    }
+
+    private static int clamp(double v) {
+        return (int) Math.max(0, Math.min(255, Math.round(v)));
+    }
+}
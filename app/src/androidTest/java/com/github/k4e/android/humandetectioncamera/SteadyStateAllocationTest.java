@@ -0,0 +1,80 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.content.Context;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class SteadyStateAllocationTest {
+
+    static {
+        System.loadLibrary("opencv_java4");
+    }
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int WARM_UP_FRAMES = 50;
+    private static final int MEASURED_FRAMES = 3000;
+    private static final long NATIVE_HEAP_SLACK_BYTES = 4L * 1024 * 1024;
+
+    private HumanDetectionCameraPreview mPreview;
+
+    @Test
+    public void processFrame_allocationsStayFlat() {
+        final Context context = InstrumentationRegistry.getTargetContext();
+        final DetectorRegistry registry = DetectorRegistry.getInstance(context);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override public void run() {
+                mPreview = new HumanDetectionCameraPreview(context, WIDTH, HEIGHT, 0,
+                        registry, 0, true, false, true, true, new Runnable() {
+                            @Override public void run() { }
+                        });
+            }
+        });
+        mPreview.loadDetectors();
+        byte[][] frames = new byte[8][];
+        for (int i = 0; i < frames.length; ++i) {
+            frames[i] = syntheticFrame(WIDTH, HEIGHT, i);
+        }
+        for (int i = 0; i < WARM_UP_FRAMES; ++i) {
+            mPreview.processFrame(frames[i % frames.length], WIDTH, HEIGHT);
+        }
+        int matCount = mPreview.getMatAllocationCount();
+        long nativeHeap = Debug.getNativeHeapAllocatedSize();
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < MEASURED_FRAMES; ++i) {
+            mPreview.processFrame(frames[i % frames.length], WIDTH, HEIGHT);
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+        long nativeGrowth = Debug.getNativeHeapAllocatedSize() - nativeHeap;
+        assertEquals(0, allocations);
+        assertEquals(matCount, mPreview.getMatAllocationCount());
+        assertTrue("native heap grew by " + nativeGrowth, nativeGrowth < NATIVE_HEAP_SLACK_BYTES);
+    }
+
+    private static byte[] syntheticFrame(int width, int height, int phase) {
+        byte[] data = new byte[width * height * 3 / 2];
+        int cx = width / 4 + phase * width / 16;
+        int cy = height / 2;
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int dx = x - cx;
+                int dy = y - cy;
+                boolean inside = dx * dx + dy * dy < (height / 6) * (height / 6);
+                data[y * width + x] = (byte) (inside ? 200 : 40 + (x + y) % 64);
+            }
+        }
+        for (int i = width * height; i < data.length; ++i) {
+            data[i] = (byte) 128;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a file in internal storage identical to a bundled asset, rewriting it only when it is missing or its
+ * size or CRC-32 differs. The file is replaced through a temporary file, so a reader never sees half of it.
+ */
+public class AssetSync {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private final byte[] mBuffer;
+
+    public AssetSync() {
+        mBuffer = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Reads the asset and closes it.
+     *
+     * @return whether the target was written
+     */
+    public boolean sync(InputStream asset, File target) throws IOException {
+        byte[] content;
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            int len;
+            while ((len = asset.read(mBuffer)) >= 0) {
+                out.write(mBuffer, 0, len);
+            }
+            content = out.toByteArray();
+        } finally {
+            asset.close();
+        }
+        if (target.isFile() && target.length() == content.length && crc(target) == crc(content)) {
+            return false;
+        }
+        File dir = target.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File tmp = new File(dir, target.getName() + ".tmp");
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            throw new IOException("Cannot replace " + target);
+        }
+        return true;
+    }
+
+    private long crc(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            int len;
+            while ((len = in.read(mBuffer)) >= 0) {
+                crc.update(mBuffer, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return crc.getValue();
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        return crc.getValue();
+    }
+}
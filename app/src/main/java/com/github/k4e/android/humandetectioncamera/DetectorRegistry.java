@@ -0,0 +1,218 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.Detector;
+import com.github.k4e.humandetectioncamera.pipeline.HogDetector;
+
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Process-wide owner of the cascades. The assets are copied to internal storage only when missing or
+ * changed, and the classifiers are loaded once on a background thread, so camera switches and resolution
+ * changes reuse them instead of reading the XML files again.
+ * The LBP face cascade is optional: it is loaded only if {@value #LBP_FACE_CASCADE} is bundled under
+ * {@value #LBP_CASCADE_DIR}. The classifiers are shared; only one preview at a time may run detection with them.
+ */
+public class DetectorRegistry {
+
+    static final String CASCADE_DIR = "haarcascades";
+    static final String FACE_CASCADE = "haarcascade_frontalface_alt.xml";
+    static final String BODY_CASCADE = "haarcascade_fullbody.xml";
+    static final String LBP_CASCADE_DIR = "lbpcascades";
+    static final String LBP_FACE_CASCADE = "lbpcascade_frontalface_improved.xml";
+    private static final String TAG = MainActivity.TAG;
+    private static DetectorRegistry sInstance;
+    private final Context mContext;
+    private final long mCreatedNanos;
+    private final CountDownLatch mReadyLatch;
+    private final AtomicBoolean mFirstDetectionReported;
+    private boolean mPreloadStarted;
+    private volatile CascadeClassifier mFaceDetector;
+    private volatile CascadeClassifier mBodyDetector;
+    private volatile CascadeClassifier mLbpFaceDetector;
+    private volatile long mReadyLatencyNanos;
+    private volatile long mFirstDetectionLatencyNanos;
+
+    private DetectorRegistry(Context context) {
+        mContext = context.getApplicationContext();
+        mCreatedNanos = System.nanoTime();
+        mReadyLatch = new CountDownLatch(1);
+        mFirstDetectionReported = new AtomicBoolean();
+    }
+
+    public static synchronized DetectorRegistry getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new DetectorRegistry(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Starts copying and loading the cascades in the background. Later calls do nothing.
+     */
+    public synchronized void preload() {
+        if (mPreloadStarted) {
+            return;
+        }
+        mPreloadStarted = true;
+        Thread loader = new Thread(new Runnable() {
+            @Override public void run() {
+                load();
+            }
+        }, "DetectorRegistry");
+        loader.setPriority(Thread.NORM_PRIORITY - 1);
+        loader.start();
+    }
+
+    public boolean isReady() {
+        return mReadyLatch.getCount() == 0;
+    }
+
+    /**
+     * Blocks until the cascades are loaded, starting the preload if nobody did.
+     */
+    public void awaitReady() throws InterruptedException {
+        preload();
+        mReadyLatch.await();
+    }
+
+    /**
+     * @param backend {@link CascadeDetector#HAAR} or {@link CascadeDetector#LBP}
+     * @return a new face detector on the shared classifier, or null before {@link #isReady()} or if the backend
+     *         is not available
+     */
+    public Detector createFaceDetector(String backend) {
+        switch (backend) {
+            case CascadeDetector.HAAR:
+                return wrap(CascadeDetector.HAAR, mFaceDetector);
+            case CascadeDetector.LBP:
+                return wrap(CascadeDetector.LBP, mLbpFaceDetector);
+            default:
+                throw new IllegalArgumentException("Unknown face detector: " + backend);
+        }
+    }
+
+    /**
+     * @param backend {@link CascadeDetector#HAAR} or {@link HogDetector#NAME}
+     * @return a new body detector, or null before {@link #isReady()} or if the backend is not available
+     */
+    public Detector createBodyDetector(String backend) {
+        switch (backend) {
+            case CascadeDetector.HAAR:
+                return wrap(CascadeDetector.HAAR, mBodyDetector);
+            case HogDetector.NAME:
+                return isReady() ? new HogDetector() : null;
+            default:
+                throw new IllegalArgumentException("Unknown body detector: " + backend);
+        }
+    }
+
+    /**
+     * @return time from the creation of the registry at startup until the cascades were loaded, or 0 before
+     */
+    public long getReadyLatencyNanos() {
+        return mReadyLatencyNanos;
+    }
+
+    /**
+     * @return time from the creation of the registry until the first detection finished, or 0 before
+     */
+    public long getFirstDetectionLatencyNanos() {
+        return mFirstDetectionLatencyNanos;
+    }
+
+    /**
+     * Called by the preview after every keyframe; only the first call of the process is recorded.
+     */
+    void onDetectionFinished() {
+        if (mFirstDetectionReported.compareAndSet(false, true)) {
+            mFirstDetectionLatencyNanos = System.nanoTime() - mCreatedNanos;
+            Log.d(TAG, "First detection " + mFirstDetectionLatencyNanos / 1000000 + " ms after startup");
+        }
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            File dir = new File(mContext.getFilesDir(), CASCADE_DIR);
+            File lbpDir = new File(mContext.getFilesDir(), LBP_CASCADE_DIR);
+            int copied = syncAssets(CASCADE_DIR, dir) + syncAssets(LBP_CASCADE_DIR, lbpDir);
+            long copiedNanos = System.nanoTime();
+            CascadeClassifier face = loadClassifier(new File(dir, FACE_CASCADE));
+            CascadeClassifier body = loadClassifier(new File(dir, BODY_CASCADE));
+            File lbpFace = new File(lbpDir, LBP_FACE_CASCADE);
+            if (lbpFace.isFile()) {
+                mLbpFaceDetector = loadClassifier(lbpFace);
+            } else {
+                Log.d(TAG, LBP_FACE_CASCADE + " is not bundled; the LBP face detector is unavailable");
+            }
+            mFaceDetector = face;
+            mBodyDetector = body;
+            long end = System.nanoTime();
+            mReadyLatencyNanos = end - mCreatedNanos;
+            Log.d(TAG, "Cascades ready " + mReadyLatencyNanos / 1000000 + " ms after startup"
+                    + " (" + copied + " asset(s) copied in " + (copiedNanos - start) / 1000000 + " ms"
+                    + ", loaded in " + (end - copiedNanos) / 1000000 + " ms)");
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot prepare the cascades", e);
+        } finally {
+            mReadyLatch.countDown();
+        }
+    }
+
+    /**
+     * Files written after the installed APK cannot be stale, so they are trusted without reading them.
+     * Otherwise every asset is compared and rewritten only if it differs.
+     *
+     * @return number of files written
+     */
+    private int syncAssets(String assetDir, File dir) throws IOException {
+        long installedAt = getInstalledAt();
+        AssetSync sync = null;
+        int copied = 0;
+        for (String name : mContext.getAssets().list(assetDir)) {
+            File target = new File(dir, name);
+            if (target.isFile() && target.length() > 0 && target.lastModified() > installedAt) {
+                continue;
+            }
+            if (sync == null) {
+                sync = new AssetSync();
+            }
+            if (sync.sync(mContext.getAssets().open(assetDir + "/" + name), target)) {
+                ++copied;
+            }
+            target.setLastModified(System.currentTimeMillis());
+        }
+        return copied;
+    }
+
+    private long getInstalledAt() {
+        try {
+            return mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static Detector wrap(String name, CascadeClassifier classifier) {
+        return classifier != null ? new CascadeDetector(name, classifier) : null;
+    }
+
+    private static CascadeClassifier loadClassifier(File file) {
+        CascadeClassifier classifier = new CascadeClassifier();
+        if (!classifier.load(file.getAbsolutePath())) {
+            Log.e(TAG, "Cannot load " + file);
+            return null;
+        }
+        return classifier;
+    }
+}
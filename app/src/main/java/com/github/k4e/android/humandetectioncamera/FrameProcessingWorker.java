@@ -0,0 +1,144 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background thread that processes preview frames handed over through a single-slot mailbox.
+ * A frame submitted while the previous one is still waiting replaces it, so the worker always
+ * picks up the newest frame and stale ones are counted as dropped.
+ */
+public class FrameProcessingWorker {
+
+    public interface FrameProcessor {
+        void processFrame(byte[] data, int width, int height);
+        void reprocessFrame();
+    }
+
+    private static final String TAG = MainActivity.TAG;
+    private final FrameProcessor mProcessor;
+    private final Object mLock;
+    private final AtomicLong mProcessedCount;
+    private final AtomicLong mDroppedCount;
+    private Thread mThread;
+    private boolean mRunning;
+    private byte[] mPendingData;
+    private int mPendingWidth;
+    private int mPendingHeight;
+    private boolean mReprocessRequested;
+
+    public FrameProcessingWorker(FrameProcessor processor) {
+        mProcessor = processor;
+        mLock = new Object();
+        mProcessedCount = new AtomicLong();
+        mDroppedCount = new AtomicLong();
+    }
+
+    public void start() {
+        synchronized (mLock) {
+            if (mRunning) {
+                return;
+            }
+            mRunning = true;
+            mThread = new Thread(new Runnable() {
+                @Override public void run() {
+                    loop();
+                }
+            }, "FrameProcessingWorker");
+            mThread.start();
+        }
+    }
+
+    /**
+     * @return the buffer of the frame that was still waiting and has been discarded, or null
+     */
+    public byte[] stop() {
+        Thread thread;
+        byte[] discarded;
+        synchronized (mLock) {
+            if (!mRunning) {
+                return null;
+            }
+            mRunning = false;
+            discarded = mPendingData;
+            mPendingData = null;
+            mReprocessRequested = false;
+            thread = mThread;
+            mThread = null;
+            mLock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return discarded;
+    }
+
+    /**
+     * @return the buffer of the frame that was waiting and has been dropped, or null
+     */
+    public byte[] submit(byte[] data, int width, int height) {
+        synchronized (mLock) {
+            byte[] dropped = mPendingData;
+            if (dropped != null) {
+                mDroppedCount.incrementAndGet();
+            }
+            mPendingData = data;
+            mPendingWidth = width;
+            mPendingHeight = height;
+            mLock.notifyAll();
+            return dropped;
+        }
+    }
+
+    public void requestReprocess() {
+        synchronized (mLock) {
+            mReprocessRequested = true;
+            mLock.notifyAll();
+        }
+    }
+
+    public long getProcessedFrameCount() {
+        return mProcessedCount.get();
+    }
+
+    public long getDroppedFrameCount() {
+        return mDroppedCount.get();
+    }
+
+    private void loop() {
+        while (true) {
+            byte[] data;
+            int width;
+            int height;
+            boolean reprocess;
+            synchronized (mLock) {
+                while (mRunning && mPendingData == null && !mReprocessRequested) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        Log.d(TAG, "Frame processing worker interrupted");
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                data = mPendingData;
+                width = mPendingWidth;
+                height = mPendingHeight;
+                reprocess = mReprocessRequested;
+                mPendingData = null;
+                mReprocessRequested = false;
+            }
+            if (data != null) {
+                mProcessor.processFrame(data, width, height);
+            } else if (reprocess) {
+                mProcessor.reprocessFrame();
+            }
+            mProcessedCount.incrementAndGet();
+        }
+    }
+}
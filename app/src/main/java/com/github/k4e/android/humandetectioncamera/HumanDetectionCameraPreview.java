@@ -2,76 +2,149 @@ package com.github.k4e.android.humandetectioncamera;
 
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.ImageFormat;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.PixelFormat;
 import android.graphics.RectF;
-import android.graphics.YuvImage;
+import android.graphics.SurfaceTexture;
 import android.hardware.Camera;
 import android.util.Log;
-import android.util.Pair;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
+import android.view.WindowManager;
 import android.widget.Toast;
 
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionEventBus;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionLogSink;
+import com.github.k4e.humandetectioncamera.pipeline.Detector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectorParams;
+import com.github.k4e.humandetectioncamera.pipeline.FrameConverter;
+import com.github.k4e.humandetectioncamera.pipeline.FrameGeometry;
+import com.github.k4e.humandetectioncamera.pipeline.FramePipeline;
+import com.github.k4e.humandetectioncamera.pipeline.FrameRecorder;
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+import com.github.k4e.humandetectioncamera.pipeline.QualityGovernor;
+import com.github.k4e.humandetectioncamera.pipeline.StageTimer;
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
 import org.opencv.android.Utils;
-import org.opencv.core.Core;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfRect;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.Scalar;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
-import org.opencv.objdetect.CascadeClassifier;
-import org.opencv.photo.Photo;
-
-import java.io.ByteArrayOutputStream;
+
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceHolder.Callback, Camera.PreviewCallback {
+public class HumanDetectionCameraPreview extends SurfaceView
+        implements SurfaceHolder.Callback, Camera.PreviewCallback, FrameProcessingWorker.FrameProcessor {
+
+    public static final int INPAINTING_FULL_FRAME = FramePipeline.INPAINTING_FULL_FRAME;
+    public static final int INPAINTING_ROI = FramePipeline.INPAINTING_ROI;
+    public static final int INPAINTING_BACKGROUND_PLATE = FramePipeline.INPAINTING_BACKGROUND_PLATE;
+    public static final int CONVERSION_JPEG = 0;
+    public static final int CONVERSION_DIRECT = 1;
+    /**
+     * Original drawing in {@code onDraw} on the UI thread over the camera preview, kept to compare
+     * display latency and UI jank against {@link #RENDER_THREAD}.
+     */
+    public static final int RENDER_INVALIDATE = 0;
+    /** Frames are drawn into the surface by a {@link SurfaceRenderer} thread; the camera feeds a hidden texture. */
+    public static final int RENDER_THREAD = 1;
 
     private static final String TAG = MainActivity.TAG;
-    private static final int TARGET_FACE = 0;
-    private static final int TARGET_BODY = 1;
-    private final int mPreviewWidth;
-    private final int mPreviewHeight;
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+    private static final long OVERLAY_REFRESH_NANOS = 500000000L;
+    private static final int[] OVERLAY_STAGES = {
+            StageTimer.CONVERSION, StageTimer.DETECTION_PREPARE, StageTimer.FACE_DETECTION,
+            StageTimer.BODY_DETECTION, StageTimer.TRACKING, StageTimer.MOTION, StageTimer.MASK,
+            StageTimer.INPAINTING, StageTimer.PROCESS, StageTimer.RENDER, StageTimer.DRAW, StageTimer.DISPLAY,
+            StageTimer.UI_FRAME };
+    private static final String[] OVERLAY_LABELS = {
+            "conv", "prep", "face", "body", "track", "motion", "mask", "inpaint", "total", "bitmap", "draw",
+            "display", "ui" };
+    private int mPreviewWidth;
+    private int mPreviewHeight;
     private final int mDisplayOrientation;
-    private final String mFaceCascadeFilename;
-    private final String mBodyCascadeFilename;
-    private final CascadeClassifier mFaceDetector;
-    private final CascadeClassifier mBodyDetector;
-    private final List<Pair<Integer, RectF>> mTargets;
+    private final DetectorRegistry mDetectorRegistry;
+    private final long mCreatedNanos;
+    private final FramePipeline mPipeline;
+    private final Paint mBitmapPaint;
+    private final Paint mFacePaint;
+    private final Paint mBodyPaint;
+    private final Paint mOverlayTextPaint;
+    private final Paint mOverlayBackgroundPaint;
+    private final StringBuilder[] mOverlayLines;
+    private final StageTimer mStageTimer;
+    private final RectF mSightRect;
+    private volatile FrameGeometry mGeometry;
+    private final Matrix mDrawMatrix;
+    private FrameGeometry mMatrixGeometry;
+    private int mMatrixBitmapWidth;
+    private int mMatrixBitmapHeight;
+    private int mMatrixCanvasWidth;
+    private int mMatrixCanvasHeight;
     private boolean mFirstSurfaceChangeFinished;
     private int mSurfaceWidth;
     private int mSurfaceHeight;
+    private int mCameraPreviewWidth;
+    private int mCameraPreviewHeight;
     private Integer mCameraInfo;
-    private Boolean mFaceDetectionEnable;
-    private Boolean mBodyDetectionEnable;
-    private Boolean mSightOn;
-    private Boolean mInpaintingOn;
-    private Boolean mPreviewWorking;
+    private volatile boolean mSightOn;
+    private volatile boolean mPerformanceOverlayOn;
+    private int mOverlayLineCount;
+    private long mOverlayUpdatedNanos;
+    private volatile boolean mPreviewWorking;
+    private volatile int mConversionMode;
+    private int mConverterMode;
     private Camera mCamera;
-    private Bitmap mOriginalBitmap;
-    private Bitmap mProcessedBitmap;
-    private Mat mImageMat;
-    private Mat mMaskMat;
+    private FrameConverter mConverter;
+    private final FrameProcessingWorker mWorker;
+    private final PreviewBufferPool mBufferPool;
+    private final SurfaceRenderer mRenderer;
+    private final UiJankMonitor mJankMonitor;
+    private volatile int mRenderMode;
+    private volatile int mAppliedRenderMode;
+    private SurfaceTexture mCameraTexture;
+    private long mFrameArrivalNanos;
+    private long mDrawnFrameNanos;
+    private long mDisplayedFrameNanos;
+    private volatile ProcessedFrame mFrontFrame;
+    private volatile long mFirstFrameLatencyNanos;
+    private volatile long mReconfigureStartNanos;
+    private volatile long mReconfigureLatencyNanos;
+    private ProcessedFrame mBackFrame;
     private final Runnable mOnSurfaceReady;
+    private final Runnable mQualityLevelNotifier;
+    private volatile OnQualityLevelChangeListener mOnQualityLevelChangeListener;
+    private volatile FrameRecorder mRecorder;
+    private final DetectionEventBus mEventBus;
+    private volatile DetectionLogSink mEventLog;
+    private long mPublishedFrameId;
+    private volatile String mFaceDetectorBackend;
+    private volatile String mBodyDetectorBackend;
+    private int mNotifiedQualityLevel;
+
+    /**
+     * Called on the UI thread when the adaptive quality governor switches to another level.
+     */
+    public interface OnQualityLevelChangeListener {
+        /**
+         * @param level 0 for the best quality up to {@code levelCount - 1}, or -1 when the governor is disabled
+         */
+        void onQualityLevelChanged(int level, int levelCount);
+    }
 
     public HumanDetectionCameraPreview(
             Context context,
             int previewWidth,
             int previewHeight,
             int displayOrientation,
-            String faceCascadeFilename,
-            String bodyCascadeFilename,
+            DetectorRegistry detectorRegistry,
             int cameraInfo,
             boolean faceDetectionEnable,
             boolean bodyDetectionEnable,
@@ -85,30 +158,76 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
         mPreviewWidth = previewWidth;
         mPreviewHeight = previewHeight;
         mDisplayOrientation = displayOrientation;
-        mFaceCascadeFilename = faceCascadeFilename;
-        mBodyCascadeFilename = bodyCascadeFilename;
-        mFaceDetector = new CascadeClassifier();
-        mBodyDetector = new CascadeClassifier();
-        mTargets = new ArrayList<>();
+        mDetectorRegistry = detectorRegistry;
+        mFaceDetectorBackend = CascadeDetector.HAAR;
+        mBodyDetectorBackend = CascadeDetector.HAAR;
+        mCreatedNanos = System.nanoTime();
+        mGeometry = new FrameGeometry(displayOrientation, isFrontFacing(cameraInfo));
+        mPipeline = new FramePipeline(mGeometry);
+        mPipeline.setFaceDetectionEnable(faceDetectionEnable);
+        mPipeline.setBodyDetectionEnable(bodyDetectionEnable);
+        mPipeline.setInpaintingOn(inpaintingOn);
+        mStageTimer = mPipeline.getStageTimer();
+        mBitmapPaint = new Paint();
+        mFacePaint = createSightPaint(Color.GREEN);
+        mBodyPaint = createSightPaint(Color.RED);
+        mOverlayTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mOverlayTextPaint.setColor(Color.WHITE);
+        mOverlayTextPaint.setTextSize(12 * getResources().getDisplayMetrics().scaledDensity);
+        mOverlayBackgroundPaint = new Paint();
+        mOverlayBackgroundPaint.setColor(0x80000000);
+        mOverlayLines = new StringBuilder[OVERLAY_STAGES.length + 1];
+        for (int i = 0; i < mOverlayLines.length; ++i) {
+            mOverlayLines[i] = new StringBuilder(64);
+        }
+        mSightRect = new RectF();
+        mDrawMatrix = new Matrix();
         mFirstSurfaceChangeFinished = false;
         mCameraInfo = cameraInfo;
-        mFaceDetectionEnable = faceDetectionEnable;
-        mBodyDetectionEnable = bodyDetectionEnable;
         mSightOn = sightOn;
-        mInpaintingOn = inpaintingOn;
         mPreviewWorking = false;
+        mConversionMode = CONVERSION_DIRECT;
+        mConverterMode = mConversionMode;
+        mConverter = createConverter(mConverterMode);
+        mWorker = new FrameProcessingWorker(this);
+        mBufferPool = new PreviewBufferPool(PREVIEW_BUFFER_COUNT);
+        mEventBus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY);
+        mRenderMode = RENDER_THREAD;
+        mAppliedRenderMode = mRenderMode;
+        mRenderer = new SurfaceRenderer(getHolder(), new SurfaceRenderer.Drawer() {
+            @Override public void drawFrame(Canvas canvas) {
+                HumanDetectionCameraPreview.this.drawFrame(canvas);
+            }
+            @Override public void onFramePosted() {
+                recordDisplayLatency();
+            }
+        });
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        mJankMonitor = new UiJankMonitor(mStageTimer, windowManager.getDefaultDisplay().getRefreshRate());
+        mFrontFrame = new ProcessedFrame();
+        mBackFrame = new ProcessedFrame();
         mOnSurfaceReady = onSurfaceReady;
+        mNotifiedQualityLevel = -1;
+        mQualityLevelNotifier = new Runnable() {
+            @Override public void run() {
+                OnQualityLevelChangeListener listener = mOnQualityLevelChangeListener;
+                if (listener != null) {
+                    listener.onQualityLevelChanged(mPipeline.getQualityLevel(), mPipeline.getQualityLevelCount());
+                }
+            }
+        };
     }
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
         try {
-            mFaceDetector.load(mFaceCascadeFilename);
-            mBodyDetector.load(mBodyCascadeFilename);
             if (mCameraInfo <= Camera.getNumberOfCameras()) {
+                mAppliedRenderMode = mRenderMode;
                 openCamera();
-                setZOrderOnTop(true);
-                getHolder().setFormat(PixelFormat.TRANSLUCENT);
+                if (mAppliedRenderMode == RENDER_INVALIDATE) {
+                    setZOrderOnTop(true);
+                    getHolder().setFormat(PixelFormat.TRANSLUCENT);
+                }
             } else {
                 Log.d(TAG, "Cannot bind camera");
                 Toast.makeText(getContext(), "カメラをバインドできません", Toast.LENGTH_LONG).show();
@@ -122,7 +241,14 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
         mSurfaceWidth = width;
         mSurfaceHeight = height;
+        mBufferPool.recycle(mWorker.stop());
+        mRenderer.stop();
         cvCleanUp();
+        mWorker.start();
+        if (mAppliedRenderMode == RENDER_THREAD) {
+            mRenderer.start();
+            mRenderer.requestRender();
+        }
         startPreview();
         if (!mFirstSurfaceChangeFinished) {
             mFirstSurfaceChangeFinished = true;
@@ -132,57 +258,115 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
 
     @Override
     public void surfaceDestroyed(SurfaceHolder surfaceHolder) {
+        mBufferPool.recycle(mWorker.stop());
+        // The renderer must let go of the surface before this callback returns
+        mRenderer.stop();
+        stopRecording();
+        stopEventLog();
+        logStageTimings();
         cvCleanUp();
         closeCamera();
+        if (mCameraTexture != null) {
+            mCameraTexture.release();
+            mCameraTexture = null;
+        }
     }
 
     @Override
     public void onPreviewFrame(byte[] data, Camera camera) {
-        int pvWidth = camera.getParameters().getPreviewSize().width;
-        int pvHeight = camera.getParameters().getPreviewSize().height;
-        mOriginalBitmap = yuvToBitmap(data, pvWidth, pvHeight, mDisplayOrientation);
-        processImage(pvWidth, pvHeight);
-        invalidate();
+        mBufferPool.onFrameReceived(data);
+        mBufferPool.recycle(mWorker.submit(data, mCameraPreviewWidth, mCameraPreviewHeight));
+    }
+
+    @Override
+    public void processFrame(byte[] data, int width, int height) {
+        mFrameArrivalNanos = System.nanoTime();
+        if (mConverterMode != mConversionMode) {
+            mConverter.release();
+            mConverterMode = mConversionMode;
+            mConverter = createConverter(mConverterMode);
+        }
+        long t = mStageTimer.start();
+        mConverter.put(data, width, height);
+        mStageTimer.record(StageTimer.UPLOAD, t);
+        mBufferPool.recycle(data);
+        if (processImage()) {
+            publishFrame();
+        }
+    }
+
+    @Override
+    public void reprocessFrame() {
+        mFrameArrivalNanos = System.nanoTime();
+        if (processImage()) {
+            publishFrame();
+        }
     }
 
     @Override
     protected void onDraw(Canvas canvas) {
-        Paint bitmapPaint = new Paint();
-        int width = getWidth();
-        int height = getHeight();
-        Bitmap bitmap = mProcessedBitmap != null ? mProcessedBitmap : mOriginalBitmap;
-        if (bitmap != null) {
-            canvas.drawBitmap(bitmap, null,
-                    new android.graphics.Rect(0, 0, canvas.getWidth(), canvas.getHeight()), bitmapPaint);
-        }
-        if (isSightOn()) {
-            Paint greenPaint = new Paint();
-            greenPaint.setColor(Color.GREEN);
-            greenPaint.setStyle(Paint.Style.STROKE);
-            greenPaint.setStrokeWidth(4f);
-            Paint redPaint = new Paint();
-            redPaint.setColor(Color.RED);
-            redPaint.setStyle(Paint.Style.STROKE);
-            redPaint.setStrokeWidth(4f);
-            for (Pair<Integer, RectF> target : mTargets) {
-                Paint p = target.first == TARGET_FACE ? greenPaint : redPaint;
-                RectF tr = target.second;
-                RectF sr = new RectF(width * tr.left, height * tr.top, width * tr.right, height * tr.bottom);
-                canvas.drawRect(sr, p);
-            }
+        if (mAppliedRenderMode != RENDER_INVALIDATE) {
+            return;
         }
+        drawFrame(canvas);
+        recordDisplayLatency();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        mJankMonitor.stop();
+        super.onDetachedFromWindow();
     }
 
     public int getCameraInfo() {
         return mCameraInfo;
     }
 
+    /**
+     * Switches to another camera or preview size while keeping the surface, the loaded detectors, the processing
+     * settings and every buffer whose size does not change. Must be called on the UI thread after the surface
+     * was created.
+     *
+     * @return false if the camera cannot be opened, in which case the preview is stopped
+     */
+    public boolean reconfigure(int cameraInfo, int previewWidth, int previewHeight) {
+        long start = System.nanoTime();
+        mBufferPool.recycle(mWorker.stop());
+        closeCamera();
+        boolean facingChanged = cameraInfo != mCameraInfo;
+        mCameraInfo = cameraInfo;
+        mPreviewWidth = previewWidth;
+        mPreviewHeight = previewHeight;
+        if (facingChanged) {
+            mGeometry = new FrameGeometry(mDisplayOrientation, isFrontFacing(cameraInfo));
+            mPipeline.setGeometry(mGeometry);
+            FrameRecorder recorder = mRecorder;
+            if (recorder != null) {
+                recorder.setGeometry(mGeometry);
+            }
+        }
+        mPipeline.requestReset();
+        try {
+            openCamera();
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Cannot open camera " + cameraInfo, e);
+            closeCamera();
+            return false;
+        }
+        mReconfigureStartNanos = start;
+        mWorker.start();
+        startPreview();
+        Log.d(TAG, "Camera " + cameraInfo + " reopened at " + mCameraPreviewWidth + "x" + mCameraPreviewHeight
+                + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        return true;
+    }
+
     public boolean isFaceDetectionEnable() {
-        return mFaceDetectionEnable;
+        return mPipeline.isFaceDetectionEnable();
     }
 
     public boolean isBodyDetectionEnable() {
-        return mBodyDetectionEnable;
+        return mPipeline.isBodyDetectionEnable();
     }
 
     public boolean isSightOn() {
@@ -190,11 +374,270 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
     }
 
     public boolean isInpaintingOn() {
-        return mInpaintingOn;
+        return mPipeline.isInpaintingOn();
+    }
+
+    public boolean isPerformanceOverlayOn() {
+        return mPerformanceOverlayOn;
+    }
+
+    public boolean isQualityGovernorEnable() {
+        return mPipeline.isQualityGovernorEnable();
+    }
+
+    public int getQualityLevel() {
+        return mPipeline.getQualityLevel();
+    }
+
+    public boolean isMotionGateEnable() {
+        return mPipeline.isMotionGateEnable();
+    }
+
+    public double getMotionSkipRatio() {
+        return mPipeline.getMotionSkipRatio();
+    }
+
+    public long getMotionSavedNanos() {
+        return mPipeline.getMotionSavedNanos();
+    }
+
+    public double getTargetFps() {
+        return mPipeline.getTargetFps();
+    }
+
+    public int getConversionMode() {
+        return mConversionMode;
+    }
+
+    public boolean isParallelDetectionEnable() {
+        return mPipeline.isParallelDetectionEnable();
+    }
+
+    public long getFaceDetectionLatencyNanos() {
+        return mPipeline.getFaceDetectionLatencyNanos();
+    }
+
+    public long getBodyDetectionLatencyNanos() {
+        return mPipeline.getBodyDetectionLatencyNanos();
+    }
+
+    public long getDetectionLatencyNanos() {
+        return mPipeline.getDetectionLatencyNanos();
+    }
+
+    public long getSequentialDetectionLatencyNanos() {
+        return mPipeline.getSequentialDetectionLatencyNanos();
+    }
+
+    public int getInpaintingMode() {
+        return mPipeline.getInpaintingMode();
+    }
+
+    public boolean isBackgroundPlateReady() {
+        return mPipeline.isBackgroundPlateReady();
+    }
+
+    public boolean isInpaintingCacheEnable() {
+        return mPipeline.isInpaintingCacheEnable();
+    }
+
+    public long getInpaintingCacheHitCount() {
+        return mPipeline.getInpaintingCacheHitCount();
+    }
+
+    public long getInpaintingCacheMissCount() {
+        return mPipeline.getInpaintingCacheMissCount();
+    }
+
+    public double getInpaintingCacheHitRate() {
+        return mPipeline.getInpaintingCacheHitRate();
+    }
+
+    public long getInpaintingCacheSavedNanos() {
+        return mPipeline.getInpaintingCacheSavedNanos();
+    }
+
+    public boolean isTrackingEnable() {
+        return mPipeline.isTrackingEnable();
+    }
+
+    public int getKeyframeInterval() {
+        return mPipeline.getKeyframeInterval();
+    }
+
+    public int getDetectionWidth() {
+        return mPipeline.getDetectionWidth();
+    }
+
+    public String getFaceDetectorBackend() {
+        return mFaceDetectorBackend;
+    }
+
+    public String getBodyDetectorBackend() {
+        return mBodyDetectorBackend;
+    }
+
+    public DetectorParams getFaceDetectorParams() {
+        return mPipeline.getFaceDetectorParams();
+    }
+
+    public DetectorParams getBodyDetectorParams() {
+        return mPipeline.getBodyDetectorParams();
+    }
+
+    public long getProcessedFrameCount() {
+        return mWorker.getProcessedFrameCount();
+    }
+
+    public long getDroppedFrameCount() {
+        return mWorker.getDroppedFrameCount();
+    }
+
+    public long getBufferPoolExhaustedCount() {
+        return mBufferPool.getExhaustedCount();
+    }
+
+    public int getMatAllocationCount() {
+        return mPipeline.getMatAllocationCount();
+    }
+
+    /**
+     * @return time from creating this preview, e.g. for a camera switch, until its first frame was shown,
+     *         or 0 before
+     */
+    public long getFirstFrameLatencyNanos() {
+        return mFirstFrameLatencyNanos;
+    }
+
+    /**
+     * @return time from the last {@link #reconfigure} call until its first frame was shown, or 0 before
+     */
+    public long getReconfigureLatencyNanos() {
+        return mReconfigureLatencyNanos;
+    }
+
+    /**
+     * @return latency statistics of every stage since the preview was created or last reset
+     */
+    public StageTimer.Snapshot getStageSnapshot() {
+        return mStageTimer.snapshot();
+    }
+
+    public void resetStageTimings() {
+        mStageTimer.reset();
+    }
+
+    public void logStageTimings() {
+        for (String line : mStageTimer.snapshot().format()) {
+            Log.d(TAG, line);
+        }
+        if (mPipeline.isMotionGateEnable()) {
+            Log.d(TAG, String.format("motion gate: %.0f%% of keyframes skipped, %d ms of detection saved",
+                    mPipeline.getMotionSkipRatio() * 100, mPipeline.getMotionSavedNanos() / 1000000));
+        }
+        Log.d(TAG, (mAppliedRenderMode == RENDER_THREAD ? "render thread" : "invalidate") + ": "
+                + mRenderer.getPostedFrameCount() + " frame(s) posted, "
+                + mRenderer.getCoalescedRequestCount() + " coalesced, "
+                + mJankMonitor.getJankCount() + " janky of " + mJankMonitor.getFrameCount() + " UI frame(s)");
+    }
+
+    /**
+     * Starts writing the processed frames, upright, to an MJPEG AVI file with a sidecar of timestamps and
+     * targets. The processing thread only copies each frame into a bounded queue; frames are dropped, never
+     * waited for, when the encoder falls behind.
+     */
+    public void startRecording(File videoFile) {
+        stopRecording();
+        FrameRecorder recorder = new FrameRecorder(videoFile, QualityGovernor.DEFAULT_TARGET_FPS,
+                FrameRecorder.DEFAULT_QUEUE_CAPACITY, FrameRecorder.DROP_OLDEST);
+        recorder.setGeometry(mGeometry);
+        recorder.start();
+        mRecorder = recorder;
+        Log.d(TAG, "Recording to " + videoFile);
+    }
+
+    /**
+     * Stops the recording, if any, after the queued frames are written.
+     *
+     * @return the closed recorder for its statistics, or null if nothing was recorded
+     */
+    public FrameRecorder stopRecording() {
+        FrameRecorder recorder = mRecorder;
+        if (recorder == null) {
+            return null;
+        }
+        mRecorder = null;
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot record to " + recorder.getVideoFile(), e);
+        }
+        Log.d(TAG, "Recorded " + recorder.getWrittenFrameCount() + " frame(s) to " + recorder.getVideoFile()
+                + ", dropped " + recorder.getDroppedFrameCount()
+                + ", max queue depth " + recorder.getMaxQueueDepth() + "/" + recorder.getQueueCapacity()
+                + ", " + String.format("%.1f fps, %.2f MB/s, %.1f ms/frame", recorder.getWriteFps(),
+                        recorder.getWriteBytesPerSecond() / 1e6, recorder.getMeanEncodeNanos() / 1e6));
+        return recorder;
+    }
+
+    /**
+     * @return the running recorder, or null
+     */
+    public FrameRecorder getRecorder() {
+        return mRecorder;
+    }
+
+    public boolean isRecording() {
+        return mRecorder != null;
+    }
+
+    /**
+     * @return the bus every processed frame's targets are published to, for subscribers on other threads
+     */
+    public DetectionEventBus getEventBus() {
+        return mEventBus;
+    }
+
+    /**
+     * Starts appending the targets of every processed frame to a CSV or binary file, chosen by the file name,
+     * from a background thread that subscribes to {@link #getEventBus()}.
+     */
+    public void startEventLog(File file) {
+        stopEventLog();
+        DetectionLogSink sink = new DetectionLogSink(mEventBus, file, DetectionLogSink.formatOf(file),
+                DetectionLogSink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        sink.start();
+        mEventLog = sink;
+        Log.d(TAG, "Logging detections to " + file);
+    }
+
+    /**
+     * Stops the event log, if any, after the records still in the bus are written.
+     *
+     * @return the closed sink for its statistics, or null if nothing was logged
+     */
+    public DetectionLogSink stopEventLog() {
+        DetectionLogSink sink = mEventLog;
+        if (sink == null) {
+            return null;
+        }
+        mEventLog = null;
+        try {
+            sink.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot log detections to " + sink.getFile(), e);
+        }
+        Log.d(TAG, "Logged " + sink.getWrittenRecordCount() + " record(s) to " + sink.getFile()
+                + ", " + mEventBus.getDroppedFrameCount() + " frame(s) dropped by the bus");
+        return sink;
+    }
+
+    public boolean isEventLogging() {
+        return mEventLog != null;
     }
 
     public boolean isSomeProcessingEnable() {
-        return mFaceDetectionEnable || mBodyDetectionEnable || mSightOn || mInpaintingOn;
+        return isFaceDetectionEnable() || isBodyDetectionEnable() || mSightOn || isInpaintingOn();
     }
 
     public boolean isPreviewWorking() {
@@ -202,11 +645,11 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
     }
 
     public void setFaceDetectionEnable(boolean b) {
-        mFaceDetectionEnable = b;
+        mPipeline.setFaceDetectionEnable(b);
     }
 
     public void setBodyDetectionEnable(boolean b) {
-        mBodyDetectionEnable = b;
+        mPipeline.setBodyDetectionEnable(b);
     }
 
     public void setSightOn(boolean b) {
@@ -214,11 +657,140 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
     }
 
     public void setInpaintingOn(boolean b) {
-        mInpaintingOn = b;
+        mPipeline.setInpaintingOn(b);
+    }
+
+    public void setQualityGovernorEnable(boolean b) {
+        mPipeline.setQualityGovernorEnable(b);
+    }
+
+    public void setMotionGateEnable(boolean b) {
+        mPipeline.setMotionGateEnable(b);
+    }
+
+    public void setTargetFps(double targetFps) {
+        mPipeline.setTargetFps(targetFps);
+    }
+
+    public void setOnQualityLevelChangeListener(OnQualityLevelChangeListener listener) {
+        mOnQualityLevelChangeListener = listener;
+    }
+
+    /**
+     * Also measures the UI thread frame intervals while on; call on the UI thread.
+     */
+    public void setPerformanceOverlayOn(boolean b) {
+        mPerformanceOverlayOn = b;
+        mOverlayUpdatedNanos = 0;
+        if (b) {
+            mJankMonitor.start();
+        } else {
+            mJankMonitor.stop();
+        }
+        requestDraw();
+    }
+
+    /**
+     * Selects how frames are presented, {@link #RENDER_THREAD} by default. Takes effect when the surface is
+     * next created, since the camera and the surface are set up differently for each mode.
+     */
+    public void setRenderMode(int mode) {
+        if (mode != RENDER_INVALIDATE && mode != RENDER_THREAD) {
+            throw new IllegalArgumentException("Unknown render mode: " + mode);
+        }
+        mRenderMode = mode;
+    }
+
+    public int getRenderMode() {
+        return mAppliedRenderMode;
+    }
+
+    public long getUiJankCount() {
+        return mJankMonitor.getJankCount();
+    }
+
+    public void setConversionMode(int mode) {
+        if (mode != CONVERSION_JPEG && mode != CONVERSION_DIRECT) {
+            throw new IllegalArgumentException("Unknown conversion mode: " + mode);
+        }
+        mConversionMode = mode;
+    }
+
+    public void setParallelDetectionEnable(boolean b) {
+        mPipeline.setParallelDetectionEnable(b);
+    }
+
+    public void setInpaintingMode(int mode) {
+        mPipeline.setInpaintingMode(mode);
+    }
+
+    public void setInpaintingCacheEnable(boolean b) {
+        mPipeline.setInpaintingCacheEnable(b);
+    }
+
+    public void setTrackingEnable(boolean b) {
+        mPipeline.setTrackingEnable(b);
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        mPipeline.setKeyframeInterval(keyframeInterval);
+    }
+
+    public void setDetectionWidth(int detectionWidth) {
+        mPipeline.setDetectionWidth(detectionWidth);
+    }
+
+    /**
+     * Switches the face detector, see {@link DetectorRegistry#createFaceDetector}, from the next frame on.
+     *
+     * @return false if the backend is not available, in which case the current detector is kept
+     */
+    public boolean setFaceDetectorBackend(String backend) {
+        if (!mDetectorRegistry.isReady()) {
+            mFaceDetectorBackend = backend;
+            return true;
+        }
+        Detector detector = mDetectorRegistry.createFaceDetector(backend);
+        if (detector == null) {
+            return false;
+        }
+        mFaceDetectorBackend = backend;
+        mPipeline.setFaceDetector(detector);
+        return true;
+    }
+
+    /**
+     * Switches the body detector, see {@link DetectorRegistry#createBodyDetector}, from the next frame on.
+     *
+     * @return false if the backend is not available, in which case the current detector is kept
+     */
+    public boolean setBodyDetectorBackend(String backend) {
+        if (!mDetectorRegistry.isReady()) {
+            mBodyDetectorBackend = backend;
+            return true;
+        }
+        Detector detector = mDetectorRegistry.createBodyDetector(backend);
+        if (detector == null) {
+            return false;
+        }
+        mBodyDetectorBackend = backend;
+        mPipeline.setBodyDetector(detector);
+        return true;
+    }
+
+    public void setFaceDetectorParams(DetectorParams params) {
+        mPipeline.setFaceDetectorParams(params);
+    }
+
+    public void setBodyDetectorParams(DetectorParams params) {
+        mPipeline.setBodyDetectorParams(params);
     }
 
     public void unsetAll() {
-        mFaceDetectionEnable = mBodyDetectionEnable = mSightOn = mInpaintingOn = false;
+        mSightOn = false;
+        mPipeline.setFaceDetectionEnable(false);
+        mPipeline.setBodyDetectionEnable(false);
+        mPipeline.setInpaintingOn(false);
     }
 
     public void startPreview() {
@@ -265,21 +837,44 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
     }
 
     public void reprocess() {
-        int pvWidth = mCamera.getParameters().getPreviewSize().width;
-        int pvHeight = mCamera.getParameters().getPreviewSize().height;
-        processImage(pvWidth, pvHeight);
-        invalidate();
+        mWorker.requestReprocess();
     }
 
     public void closeCamera() {
         if (mCamera != null) {
             stopPreview();
-            mCamera.setPreviewCallback(null);
+            mCamera.setPreviewCallbackWithBuffer(null);
+            mBufferPool.detach();
             mCamera.release();
             mCamera = null;
         }
     }
 
+    /**
+     * Blocks until the shared cascades are loaded and hands them to the pipeline.
+     */
+    void loadDetectors() {
+        try {
+            mDetectorRegistry.awaitReady();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        attachDetectors();
+    }
+
+    /**
+     * Hands detectors of the selected backends to the pipeline once the registry has loaded the cascades;
+     * until then frames are shown without detection.
+     */
+    private void attachDetectors() {
+        if (mPipeline.hasDetectors() || !mDetectorRegistry.isReady()) {
+            return;
+        }
+        mPipeline.setDetectors(mDetectorRegistry.createFaceDetector(mFaceDetectorBackend),
+                mDetectorRegistry.createBodyDetector(mBodyDetectorBackend));
+    }
+
     private void openCamera() throws IOException {
         mCamera = Camera.open(mCameraInfo);
         Camera.Parameters params = mCamera.getParameters();
@@ -289,127 +884,274 @@ public class HumanDetectionCameraPreview extends SurfaceView implements SurfaceH
         } else {
             Log.d(TAG, "Continuous focus is not supported");
         }
-        params.setPreviewSize(mPreviewWidth, mPreviewHeight);
+        if (isSupportedPreviewSize(params, mPreviewWidth, mPreviewHeight)) {
+            params.setPreviewSize(mPreviewWidth, mPreviewHeight);
+        } else {
+            Log.d(TAG, mPreviewWidth + "x" + mPreviewHeight + " is not supported by camera " + mCameraInfo);
+        }
         mCamera.setParameters(params);
+        params = mCamera.getParameters();
+        Camera.Size previewSize = params.getPreviewSize();
+        mCameraPreviewWidth = previewSize.width;
+        mCameraPreviewHeight = previewSize.height;
+        int bufferSize = mCameraPreviewWidth * mCameraPreviewHeight
+                * ImageFormat.getBitsPerPixel(params.getPreviewFormat()) / 8;
         mCamera.setDisplayOrientation(mDisplayOrientation);
-        mCamera.setPreviewDisplay(getHolder());
-        mCamera.setPreviewCallback(this);
+        if (mAppliedRenderMode == RENDER_THREAD) {
+            // The surface belongs to the renderer; the camera still needs a target to deliver preview frames
+            if (mCameraTexture == null) {
+                mCameraTexture = new SurfaceTexture(0);
+            }
+            mCamera.setPreviewTexture(mCameraTexture);
+        } else {
+            mCamera.setPreviewDisplay(getHolder());
+        }
+        mCamera.setPreviewCallbackWithBuffer(this);
+        final Camera camera = mCamera;
+        mBufferPool.attach(new PreviewBufferPool.CallbackBufferTarget() {
+            @Override public void addCallbackBuffer(byte[] buffer) {
+                camera.addCallbackBuffer(buffer);
+            }
+        }, bufferSize);
     }
 
-    private Bitmap yuvToBitmap(byte[] data, int width, int height, int rotation) {
-        YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, width, height, null);
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        yuvImage.compressToJpeg(new android.graphics.Rect(0, 0, width, height), 80, bout);
-        byte[] jdata = bout.toByteArray();
-        BitmapFactory.Options bfOpts = new BitmapFactory.Options();
-        bfOpts.inPreferredConfig = Bitmap.Config.RGB_565;
-        Bitmap bitmap = BitmapFactory.decodeByteArray(jdata, 0, jdata.length, bfOpts);
-        return bitmap;
+    private boolean processImage() {
+        attachDetectors();
+        if (!mPipeline.process(mConverter)) {
+            return false;
+        }
+        if (mPipeline.isKeyframe()) {
+            mDetectorRegistry.onDetectionFinished();
+        }
+        if (mPipeline.isKeyframe() && (mPipeline.getFaceCount() > 0 || mPipeline.getBodyCount() > 0)) {
+            Log.d(TAG, "Detect " + mPipeline.getFaceCount() + " face(s), " + mPipeline.getBodyCount() + " body(s)"
+                    + " in " + mPipeline.getDetectionLatencyNanos() / 1000000 + " ms"
+                    + " (face " + mPipeline.getFaceDetectionLatencyNanos() / 1000000 + " ms"
+                    + ", body " + mPipeline.getBodyDetectionLatencyNanos() / 1000000 + " ms"
+                    + ", sequential " + mPipeline.getSequentialDetectionLatencyNanos() / 1000000 + " ms)");
+        }
+        int qualityLevel = mPipeline.getQualityLevel();
+        if (qualityLevel != mNotifiedQualityLevel) {
+            mNotifiedQualityLevel = qualityLevel;
+            Log.d(TAG, "Quality level " + qualityLevel + " of " + mPipeline.getQualityLevelCount());
+            post(mQualityLevelNotifier);
+        }
+        long timestampNanos = System.nanoTime();
+        mEventBus.publish(timestampNanos, mPublishedFrameId++, mPipeline.getTargets());
+        renderBackFrame(mPipeline.getOutput(), mPipeline.getTargets());
+        FrameRecorder recorder = mRecorder;
+        if (recorder != null) {
+            recorder.submit(mPipeline.getOutput(), mPipeline.getTargets(), timestampNanos);
+        }
+        return true;
     }
 
-    private void processImage(int pvWidth, int pvHeight) {
-        if (mOriginalBitmap == null) {
-            return;
+    private void renderBackFrame(Mat output, TargetList targets) {
+        ProcessedFrame frame = mBackFrame;
+        synchronized (frame) {
+            long t = mStageTimer.start();
+            Utils.matToBitmap(output, frame.obtainBitmap(output.cols(), output.rows()));
+            mStageTimer.record(StageTimer.RENDER, t);
+            frame.setTargets(targets);
+            frame.setArrivalNanos(mFrameArrivalNanos);
         }
-        if (mImageMat == null) {
-            mImageMat = new Mat();
-        }
-        Utils.bitmapToMat(mOriginalBitmap, mImageMat);
-        if ((mDisplayOrientation - 90) % 180 == 0) {
-            int oldWith = pvWidth;
-            pvWidth = pvHeight;
-            pvHeight = oldWith;
-            Core.flip(mImageMat.t(), mImageMat, 0);
-        }
-        List<Rect> faceRects;
-        if (isFaceDetectionEnable()) {
-            MatOfRect faceMor = new MatOfRect();
-            mFaceDetector.detectMultiScale(mImageMat, faceMor);
-            faceRects = Collections.unmodifiableList(faceMor.toList());
-        } else {
-            faceRects = Collections.emptyList();
-        }
-        int faceCount = faceRects.size();
-        List<Rect> bodyRects;
-        if (isBodyDetectionEnable()) {
-            MatOfRect bodyMor = new MatOfRect();
-            mBodyDetector.detectMultiScale(mImageMat, bodyMor);
-            bodyRects = Collections.unmodifiableList(bodyMor.toList());
-        } else {
-            bodyRects = Collections.emptyList();
+    }
+
+    private void publishFrame() {
+        ProcessedFrame finished = mBackFrame;
+        mBackFrame = mFrontFrame;
+        mFrontFrame = finished;
+        if (mFirstFrameLatencyNanos == 0) {
+            mFirstFrameLatencyNanos = System.nanoTime() - mCreatedNanos;
+            Log.d(TAG, "First frame " + mFirstFrameLatencyNanos / 1000000 + " ms after the preview was created");
+        }
+        long reconfigureStart = mReconfigureStartNanos;
+        if (reconfigureStart != 0) {
+            mReconfigureStartNanos = 0;
+            mReconfigureLatencyNanos = System.nanoTime() - reconfigureStart;
+            Log.d(TAG, "First frame " + mReconfigureLatencyNanos / 1000000 + " ms after reconfiguring");
         }
-        int bodyCount = bodyRects.size();
-        boolean somethingDetected = faceCount > 0 || bodyCount > 0;
-        if (somethingDetected) {
-            Log.d(TAG, "Detect " + faceCount + " face(s), " + bodyCount + " body(s)");
+        mStageTimer.markFrame();
+        requestDraw();
+    }
+
+    private void requestDraw() {
+        if (mAppliedRenderMode == RENDER_THREAD) {
+            mRenderer.requestRender();
+        } else {
+            postInvalidate();
         }
-        mTargets.clear();
-        if (somethingDetected) {
-            for (Rect rect : faceRects) {
-                addTarget(pvWidth, pvHeight, rect, TARGET_FACE);
+    }
+
+    /**
+     * Draws the front frame, the sights and the performance overlay in one pass, either from {@code onDraw}
+     * or on the render thread.
+     */
+    private void drawFrame(Canvas canvas) {
+        long t = mStageTimer.start();
+        int width = canvas.getWidth();
+        int height = canvas.getHeight();
+        ProcessedFrame frame = mFrontFrame;
+        synchronized (frame) {
+            Bitmap bitmap = frame.getBitmap();
+            if (bitmap != null) {
+                updateDisplayMatrix(bitmap.getWidth(), bitmap.getHeight(), width, height);
+                canvas.drawBitmap(bitmap, mDrawMatrix, mBitmapPaint);
+            } else if (mAppliedRenderMode == RENDER_THREAD) {
+                // Nothing shows through the surface, unlike the camera preview beneath onDraw
+                canvas.drawColor(Color.BLACK);
             }
-            for (Rect rect : bodyRects) {
-                addTarget(pvWidth, pvHeight, rect, TARGET_BODY);
+            if (isSightOn()) {
+                TargetList targets = frame.getTargets();
+                for (int i = 0; i < targets.size(); ++i) {
+                    Paint p = targets.getType(i) == FramePipeline.TARGET_FACE ? mFacePaint : mBodyPaint;
+                    mSightRect.set(width * targets.getLeft(i), height * targets.getTop(i),
+                            width * targets.getRight(i), height * targets.getBottom(i));
+                    canvas.drawRect(mSightRect, p);
+                }
             }
+            mDrawnFrameNanos = frame.getArrivalNanos();
+        }
+        mStageTimer.record(StageTimer.DRAW, t);
+        if (mPerformanceOverlayOn) {
+            drawPerformanceOverlay(canvas);
         }
-        mMaskMat = Mat.zeros(pvHeight, pvWidth, CvType.CV_8UC1);
-        if (mProcessedBitmap == null) {
-            mProcessedBitmap = Bitmap.createBitmap(mPreviewWidth, mPreviewHeight, Bitmap.Config.ARGB_8888);
+    }
+
+    /**
+     * Records how long the frame just drawn took from the camera to the display; a frame drawn again,
+     * e.g. for the overlay, is not counted twice.
+     */
+    private void recordDisplayLatency() {
+        long arrival = mDrawnFrameNanos;
+        if (arrival != 0 && arrival != mDisplayedFrameNanos) {
+            mDisplayedFrameNanos = arrival;
+            mStageTimer.record(StageTimer.DISPLAY, arrival);
         }
-        if (isInpaintingOn() && somethingDetected) {
-            for (Rect rect : faceRects) {
-                addMask(rect);
+    }
+
+    /**
+     * Draws the frame rate and the median and 95th percentile of each stage in the top left corner.
+     * The text is rebuilt at most every {@link #OVERLAY_REFRESH_NANOS} into reused builders, so drawing it
+     * does not allocate per frame.
+     */
+    private void drawPerformanceOverlay(Canvas canvas) {
+        long now = System.nanoTime();
+        if (now - mOverlayUpdatedNanos >= OVERLAY_REFRESH_NANOS) {
+            mOverlayUpdatedNanos = now;
+            updateOverlayLines();
+        }
+        float lineHeight = mOverlayTextPaint.getFontSpacing();
+        float padding = lineHeight / 4;
+        canvas.drawRect(0, 0, lineHeight * 12, mOverlayLineCount * lineHeight + padding * 2,
+                mOverlayBackgroundPaint);
+        for (int i = 0; i < mOverlayLineCount; ++i) {
+            StringBuilder line = mOverlayLines[i];
+            canvas.drawText(line, 0, line.length(), padding, padding + (i + 1) * lineHeight
+                    - mOverlayTextPaint.descent(), mOverlayTextPaint);
+        }
+    }
+
+    private void updateOverlayLines() {
+        StringBuilder fps = mOverlayLines[0];
+        fps.setLength(0);
+        fps.append("fps ");
+        appendTenths(fps, Math.round(mStageTimer.getFps() * 10));
+        int qualityLevel = mPipeline.getQualityLevel();
+        if (qualityLevel >= 0) {
+            fps.append("  Q ").append(qualityLevel + 1).append('/').append(mPipeline.getQualityLevelCount());
+        }
+        if (mPipeline.isMotionGateEnable()) {
+            fps.append("  skip ").append(Math.round(mPipeline.getMotionSkipRatio() * 100)).append('%');
+        }
+        fps.append("  jank ").append(mJankMonitor.getJankCount());
+        int n = 1;
+        for (int i = 0; i < OVERLAY_STAGES.length; ++i) {
+            int stage = OVERLAY_STAGES[i];
+            if (mStageTimer.getCount(stage) == 0) {
+                continue;
             }
-            for (Rect rect : bodyRects) {
-                addMask(rect);
+            StringBuilder line = mOverlayLines[n++];
+            line.setLength(0);
+            line.append(OVERLAY_LABELS[i]).append(' ');
+            appendTenths(line, mStageTimer.getPercentileNanos(stage, 50) / 100000);
+            line.append(" / ");
+            appendTenths(line, mStageTimer.getPercentileNanos(stage, 95) / 100000);
+            line.append(" ms");
+        }
+        mOverlayLineCount = n;
+    }
+
+    private static void appendTenths(StringBuilder sb, long tenths) {
+        sb.append(tenths / 10).append('.').append(tenths % 10);
+    }
+
+    /**
+     * The processed frame stays in sensor orientation; it is mirrored and rotated here, while drawing,
+     * and stretched over the canvas like the camera preview beneath it. The matrix is only rebuilt when the
+     * bitmap, the canvas or the geometry changes.
+     */
+    private void updateDisplayMatrix(int bitmapWidth, int bitmapHeight, int canvasWidth, int canvasHeight) {
+        FrameGeometry geometry = mGeometry;
+        if (geometry == mMatrixGeometry && bitmapWidth == mMatrixBitmapWidth && bitmapHeight == mMatrixBitmapHeight
+                && canvasWidth == mMatrixCanvasWidth && canvasHeight == mMatrixCanvasHeight) {
+            return;
+        }
+        mMatrixGeometry = geometry;
+        mMatrixBitmapWidth = bitmapWidth;
+        mMatrixBitmapHeight = bitmapHeight;
+        mMatrixCanvasWidth = canvasWidth;
+        mMatrixCanvasHeight = canvasHeight;
+        Matrix m = mDrawMatrix;
+        m.setTranslate(-bitmapWidth / 2f, -bitmapHeight / 2f);
+        if (geometry.isMirrored()) {
+            m.postScale(-1f, 1f);
+        }
+        m.postRotate(geometry.getDisplayOrientation());
+        int displayWidth = geometry.getDisplayWidth(bitmapWidth, bitmapHeight);
+        int displayHeight = geometry.getDisplayHeight(bitmapWidth, bitmapHeight);
+        m.postScale((float) canvasWidth / displayWidth, (float) canvasHeight / displayHeight);
+        m.postTranslate(canvasWidth / 2f, canvasHeight / 2f);
+    }
+
+    private static boolean isSupportedPreviewSize(Camera.Parameters params, int width, int height) {
+        for (Camera.Size size : params.getSupportedPreviewSizes()) {
+            if (size.width == width && size.height == height) {
+                return true;
             }
-            Mat mInpaintInMat = new Mat(mImageMat.width(), mImageMat.height(), CvType.CV_8UC3);
-            Mat mInpaintOutMat = new Mat(mImageMat.width(), mImageMat.height(), CvType.CV_8UC3);
-            Imgproc.cvtColor(mImageMat, mInpaintInMat, Imgproc.COLOR_BGRA2BGR);
-            Photo.inpaint(mInpaintInMat, mMaskMat, mInpaintOutMat, 1, Photo.INPAINT_TELEA);
-            Utils.matToBitmap(mInpaintOutMat, mProcessedBitmap);
-        } else {
-            Utils.matToBitmap(mImageMat, mProcessedBitmap);
         }
+        return false;
     }
 
-    private void addTarget(int pvWidth, int pvHeight, Rect rect, int targetType) {
-        int x = rect.x;
-        int y = rect.y;
-        int w = rect.width;
-        int h = rect.height;
-        float left = Integer.valueOf(x).floatValue() / pvWidth;
-        float top = Integer.valueOf(y).floatValue() / pvHeight;
-        float right = left + (Integer.valueOf(w).floatValue() / pvWidth);
-        float bottom = top + (Integer.valueOf(h).floatValue() / pvHeight);
-        mTargets.add(Pair.create(targetType, new RectF(left, top, right, bottom)));
+    private static boolean isFrontFacing(int cameraId) {
+        if (cameraId < 0 || cameraId >= Camera.getNumberOfCameras()) {
+            return false;
+        }
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        Camera.getCameraInfo(cameraId, info);
+        return info.facing == Camera.CameraInfo.CAMERA_FACING_FRONT;
     }
 
-    private void addMask(Rect rect) {
-        int x = rect.x;
-        int y = rect.y;
-        int w = rect.width;
-        int h = rect.height;
-        int cx = x + w / 2;
-        int cy = y + h / 2;
-        Imgproc.ellipse(mMaskMat, new Point(cx, cy), new Size(w / 2, h / 2), 0, 0, 360, Scalar.all(255.), -1);
+    private static FrameConverter createConverter(int mode) {
+        return mode == CONVERSION_JPEG ? new JpegFrameConverter() : new Nv21FrameConverter();
+    }
+
+    private static Paint createSightPaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setStyle(Paint.Style.STROKE);
+        paint.setStrokeWidth(4f);
+        return paint;
     }
 
     private void cvCleanUp() {
-        if (mImageMat != null) {
-            mImageMat.release();
-            mImageMat = null;
-        }
-        if (mMaskMat != null) {
-            mMaskMat.release();
-            mMaskMat = null;
+        mPipeline.release();
+        synchronized (mFrontFrame) {
+            mFrontFrame.recycle();
         }
-        if (mProcessedBitmap != null) {
-            if (!mProcessedBitmap.isRecycled()) {
-                mProcessedBitmap.recycle();
-            }
-            mProcessedBitmap = null;
+        synchronized (mBackFrame) {
+            mBackFrame.recycle();
         }
-        mTargets.clear();
+        mConverter.release();
     }
 }
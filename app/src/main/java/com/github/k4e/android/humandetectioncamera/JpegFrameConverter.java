@@ -0,0 +1,85 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.ImageFormat;
+import android.graphics.YuvImage;
+
+import com.github.k4e.humandetectioncamera.pipeline.FrameConverter;
+
+import org.opencv.android.Utils;
+import org.opencv.core.Mat;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Original YuvImage -> JPEG -> Bitmap round trip, kept to compare against the direct NV21 conversion.
+ */
+public class JpegFrameConverter implements FrameConverter {
+
+    private static final int JPEG_QUALITY = 80;
+    private int mWidth;
+    private int mHeight;
+    private Bitmap mJpegBitmap;
+
+    @Override
+    public void put(byte[] data, int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        mJpegBitmap = yuvToBitmap(data, width, height);
+    }
+
+    @Override
+    public boolean hasFrame() {
+        return mJpegBitmap != null;
+    }
+
+    @Override
+    public void toRgba(Mat dst) {
+        if (!hasFrame()) {
+            return;
+        }
+        Utils.bitmapToMat(mJpegBitmap, dst);
+    }
+
+    @Override
+    public Mat getLuma() {
+        return null;
+    }
+
+    @Override
+    public void convert(byte[] data, int width, int height, Mat dst) {
+        put(data, width, height);
+        toRgba(dst);
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void release() {
+        if (mJpegBitmap != null) {
+            if (!mJpegBitmap.isRecycled()) {
+                mJpegBitmap.recycle();
+            }
+            mJpegBitmap = null;
+        }
+    }
+
+    private static Bitmap yuvToBitmap(byte[] data, int width, int height) {
+        YuvImage yuvImage = new YuvImage(data, ImageFormat.NV21, width, height, null);
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        yuvImage.compressToJpeg(new android.graphics.Rect(0, 0, width, height), JPEG_QUALITY, bout);
+        byte[] jdata = bout.toByteArray();
+        BitmapFactory.Options bfOpts = new BitmapFactory.Options();
+        bfOpts.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeByteArray(jdata, 0, jdata.length, bfOpts);
+    }
+}
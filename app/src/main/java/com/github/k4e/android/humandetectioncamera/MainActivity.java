@@ -6,6 +6,7 @@ import android.hardware.Camera;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
+import android.os.Environment;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
@@ -19,19 +20,24 @@ import android.widget.LinearLayout;
 import android.widget.Space;
 import android.widget.Spinner;
 import android.widget.SpinnerAdapter;
+import android.widget.TextView;
 import android.widget.Toast;
 import android.widget.ToggleButton;
 
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionLogSink;
+import com.github.k4e.humandetectioncamera.pipeline.FrameRecorder;
+import com.github.k4e.humandetectioncamera.pipeline.HogDetector;
+
 import org.opencv.android.OpenCVLoader;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class MainActivity extends AppCompatActivity {
 
@@ -50,6 +56,12 @@ public class MainActivity extends AppCompatActivity {
     private List<Camera.Size> mSupportedCameraSizes;
     private AdapterView.OnItemSelectedListener mOnResolutionSpinnerSelected;
     private boolean mFlagContinuousUpdateConfirmPassed = false;
+    private boolean mPerformanceOverlayOn = false;
+    private boolean mQualityGovernorEnable = false;
+    private boolean mMotionGateEnable = false;
+    private TextView mQualityText;
+    private ToggleButton mRecordToggle;
+    private ToggleButton mEventLogToggle;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -61,19 +73,23 @@ public class MainActivity extends AppCompatActivity {
         mCameraWidth = 640;
         mCameraHeight = 480;
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN);
-        try {
-            copyAssets("haarcascades");
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        DetectorRegistry.getInstance(this).preload();
         mResolutionSpinner = findViewById(R.id.resolutionSpinner);
         final Button cameraSwitchButton = findViewById(R.id.cameraSwitchButton);
         final ToggleButton snapshotButton = findViewById(R.id.snapshotButton);
         final Button unsetButton = findViewById(R.id.unsetButton);
         final CheckBox faceCheck = findViewById(R.id.faceCheck);
         final CheckBox bodyCheck = findViewById(R.id.bodyCheck);
+        final ToggleButton faceBackendToggle = findViewById(R.id.faceBackendToggle);
+        final ToggleButton bodyBackendToggle = findViewById(R.id.bodyBackendToggle);
         final ToggleButton sightToggle = findViewById(R.id.sightToggle);
         final ToggleButton inpaintToggle = findViewById(R.id.inpaintToggle);
+        final ToggleButton perfToggle = findViewById(R.id.perfToggle);
+        final ToggleButton autoQualityToggle = findViewById(R.id.autoQualityToggle);
+        final ToggleButton motionGateToggle = findViewById(R.id.motionGateToggle);
+        mQualityText = findViewById(R.id.qualityText);
+        mRecordToggle = findViewById(R.id.recordToggle);
+        mEventLogToggle = findViewById(R.id.eventLogToggle);
         final List<CompoundButton> flagCompoundButtons = Arrays.asList(
                 faceCheck, bodyCheck, sightToggle, inpaintToggle);
         final LinearLayout pvLayer = findViewById(R.id.previewLayer);
@@ -102,40 +118,23 @@ public class MainActivity extends AppCompatActivity {
         });
         cameraSwitchButton.setOnClickListener(new View.OnClickListener() {
             @Override public void onClick(View v) {
-                for (CompoundButton cb : flagCompoundButtons) {
-                    cb.setChecked(false);
-                }
                 int cameraInfo = mPreview.getCameraInfo();
                 if (cameraInfo == Camera.CameraInfo.CAMERA_FACING_BACK) {
                     mCameraInfo = Camera.CameraInfo.CAMERA_FACING_FRONT;
                 } else {
                     mCameraInfo = Camera.CameraInfo.CAMERA_FACING_BACK;
                 }
-                mPreview.closeCamera();
-                pvLayer.removeAllViews();
-                mPreview = createView(
-                        faceCheck.isChecked(), bodyCheck.isChecked(),
-                        sightToggle.isChecked(), inpaintToggle.isChecked());
-                pvLayer.addView(mPreview, new LinearLayout.LayoutParams(
-                        ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+                reconfigurePreview();
                 snapshotButton.setChecked(false);
             }
         });
         mOnResolutionSpinnerSelected = new AdapterView.OnItemSelectedListener() {
                 @Override public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
                     if (mSupportedCameraSizes != null && position < mSupportedCameraSizes.size()) {
-                        for (CompoundButton cb : flagCompoundButtons) {
-                            cb.setChecked(false);
-                        }
                         Camera.Size newSize = mSupportedCameraSizes.get(position);
                         mCameraWidth = newSize.width;
                         mCameraHeight = newSize.height;
-                        mPreview.closeCamera();
-                        pvLayer.removeAllViews();
-                        mPreview = createView(faceCheck.isChecked(), bodyCheck.isChecked(),
-                                sightToggle.isChecked(), inpaintToggle.isChecked());
-                        pvLayer.addView(mPreview, new LinearLayout.LayoutParams(
-                                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+                        reconfigurePreview();
                         snapshotButton.setChecked(false);
                     }
                 }
@@ -216,45 +215,120 @@ public class MainActivity extends AppCompatActivity {
                 }, !isChecked || !mPreview.isPreviewWorking());
             }
         });
+        perfToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                mPerformanceOverlayOn = isChecked;
+                mPreview.setPerformanceOverlayOn(isChecked);
+                if (!isChecked) {
+                    mPreview.logStageTimings();
+                }
+            }
+        });
+        autoQualityToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                mQualityGovernorEnable = isChecked;
+                mPreview.setQualityGovernorEnable(isChecked);
+            }
+        });
+        motionGateToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                mMotionGateEnable = isChecked;
+                mPreview.setMotionGateEnable(isChecked);
+            }
+        });
+        faceBackendToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (!mPreview.setFaceDetectorBackend(isChecked ? CascadeDetector.LBP : CascadeDetector.HAAR)) {
+                    Toast.makeText(mContext, "LBP カスケードがありません", Toast.LENGTH_SHORT).show();
+                    buttonView.setChecked(!isChecked);
+                }
+            }
+        });
+        bodyBackendToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (!mPreview.setBodyDetectorBackend(isChecked ? HogDetector.NAME : CascadeDetector.HAAR)) {
+                    Toast.makeText(mContext, "検出器を切り替えられません", Toast.LENGTH_SHORT).show();
+                    buttonView.setChecked(!isChecked);
+                }
+            }
+        });
+        mRecordToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (isChecked) {
+                    mPreview.startRecording(createRecordingFile());
+                    return;
+                }
+                FrameRecorder recorder = mPreview.stopRecording();
+                if (recorder == null) {
+                    return;
+                }
+                if (recorder.getError() != null) {
+                    Toast.makeText(mContext, "録画を保存できません", Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(mContext, String.format("%d フレームを保存しました (%d 枚スキップ)\n%s",
+                            recorder.getWrittenFrameCount(), recorder.getDroppedFrameCount(),
+                            recorder.getVideoFile()), Toast.LENGTH_LONG).show();
+                }
+            }
+        });
+        mEventLogToggle.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
+            @Override public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
+                if (isChecked) {
+                    mPreview.startEventLog(createEventLogFile());
+                    return;
+                }
+                DetectionLogSink sink = mPreview.stopEventLog();
+                if (sink == null) {
+                    return;
+                }
+                if (sink.getError() != null) {
+                    Toast.makeText(mContext, "検出ログを保存できません", Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(mContext, String.format("%d 件の検出を保存しました\n%s",
+                            sink.getWrittenRecordCount(), sink.getFile()), Toast.LENGTH_LONG).show();
+                }
+            }
+        });
         pvLayer.addView(mPreview, new LinearLayout.LayoutParams(
                 ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
     }
 
-    private void copyAssets(String dirname) throws IOException {
-        File dir = new File(getFilesDir(), dirname);
-        if(!dir.exists()) {
-            dir.mkdirs();
-            dir.setReadable(true, false);
-            dir.setWritable(true, false);
-            dir.setExecutable(true, false);
+    @Override
+    protected void onPause() {
+        // The preview stops recording when its surface goes away; keep the toggle in step and report the file
+        mRecordToggle.setChecked(false);
+        mEventLogToggle.setChecked(false);
+        super.onPause();
+    }
+
+    private File createRecordingFile() {
+        File dir = getExternalFilesDir(Environment.DIRECTORY_MOVIES);
+        if (dir == null) {
+            dir = getFilesDir();
         }
-        byte[] buf = new byte[1024 * 4];
-        for(String filename : getAssets().list(dirname)) {
-            File file = new File(dir, filename);
-            BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file));
-            BufferedInputStream in = new BufferedInputStream(getAssets().open(dirname + "/" + filename));
-            int len;
-            while((len = in.read(buf)) >= 0) {
-                out.write(buf, 0, len);
-            }
-            in.close();
-            out.close();
-            file.setReadable(true, false);
-            file.setWritable(true, false);
-            file.setExecutable(true, false);
+        dir.mkdirs();
+        String name = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        return new File(dir, "recording_" + name + ".avi");
+    }
+
+    private File createEventLogFile() {
+        File dir = getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
+        if (dir == null) {
+            dir = getFilesDir();
         }
+        dir.mkdirs();
+        String name = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+        return new File(dir, "detections_" + name + ".csv");
     }
 
     private HumanDetectionCameraPreview createView(
             boolean faceDetectionEnabled, boolean bodyDetectionEnabled, boolean sightOn, boolean inpaintingOn) {
-        String pathToAssets = getFilesDir().getAbsolutePath();
-        return new HumanDetectionCameraPreview(
+        HumanDetectionCameraPreview preview = new HumanDetectionCameraPreview(
                 this,
                 mCameraWidth,
                 mCameraHeight,
                 0,
-                pathToAssets + "/haarcascades/haarcascade_frontalface_alt.xml",
-                pathToAssets + "/haarcascades/haarcascade_fullbody.xml",
+                DetectorRegistry.getInstance(this),
                 mCameraInfo,
                 faceDetectionEnabled,
                 bodyDetectionEnabled,
@@ -262,38 +336,67 @@ public class MainActivity extends AppCompatActivity {
                 inpaintingOn,
                 new Runnable() {
                     @Override public void run() {
-                        mSupportedCameraSizes = mPreview.getSupportedCameraSizes(true);
-                        Camera.Size currentSize = mPreview.getCameraSize();
-                        if (currentSize != null) {
-                            Toast.makeText(mContext, String.format("解像度は %d x %d です", currentSize.width, currentSize.height), Toast.LENGTH_LONG)
-                                    .show();
-                        } else {
-                            Toast.makeText(mContext, "解像度が取得できません", Toast.LENGTH_LONG).show();
-                        }
-                        ArrayAdapter<String> adapter = new ArrayAdapter<>(mContext, R.layout.support_simple_spinner_dropdown_item);
-                        int index = 0;
-                        if (mSupportedCameraSizes != null) {
-                            for (int i = 0; i < mSupportedCameraSizes.size(); ++i) {
-                                Camera.Size size = mSupportedCameraSizes.get(i);
-                                adapter.add(String.format("%d x %d", size.width, size.height));
-                                if (currentSize != null && size.width == currentSize.width && size.height == currentSize.height) {
-                                    index = i;
-                                }
-                            }
-                        } else {
-                            adapter.add("解像度変更不可");
-                        }
-                        mResolutionSpinner.setOnItemSelectedListener(null);
-                        mResolutionSpinner.setAdapter(adapter);
-                        if (index < adapter.getCount()) {
-                            mResolutionSpinner.setSelection(index, false);
-                        }
-                        if (mOnResolutionSpinnerSelected != null) {
-                            mResolutionSpinner.setOnItemSelectedListener(mOnResolutionSpinnerSelected);
-                        }
+                        onPreviewReady();
                     }
                 }
         );
+        preview.setPerformanceOverlayOn(mPerformanceOverlayOn);
+        preview.setQualityGovernorEnable(mQualityGovernorEnable);
+        preview.setMotionGateEnable(mMotionGateEnable);
+        preview.setOnQualityLevelChangeListener(new HumanDetectionCameraPreview.OnQualityLevelChangeListener() {
+            @Override public void onQualityLevelChanged(int level, int levelCount) {
+                if (level < 0) {
+                    mQualityText.setText("画質 手動");
+                } else {
+                    mQualityText.setText(String.format("画質 %d/%d", level + 1, levelCount));
+                }
+            }
+        });
+        return preview;
+    }
+
+    /**
+     * Switches the running preview to {@link #mCameraInfo} and the selected size in place, keeping the loaded
+     * detectors and the processing toggles.
+     */
+    private void reconfigurePreview() {
+        if (mPreview.reconfigure(mCameraInfo, mCameraWidth, mCameraHeight)) {
+            onPreviewReady();
+        } else {
+            Toast.makeText(mContext, "カメラをバインドできません", Toast.LENGTH_LONG).show();
+        }
+    }
+
+    private void onPreviewReady() {
+        mSupportedCameraSizes = mPreview.getSupportedCameraSizes(true);
+        Camera.Size currentSize = mPreview.getCameraSize();
+        if (currentSize != null) {
+            Toast.makeText(mContext, String.format("解像度は %d x %d です", currentSize.width, currentSize.height), Toast.LENGTH_LONG)
+                    .show();
+        } else {
+            Toast.makeText(mContext, "解像度が取得できません", Toast.LENGTH_LONG).show();
+        }
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(mContext, R.layout.support_simple_spinner_dropdown_item);
+        int index = 0;
+        if (mSupportedCameraSizes != null) {
+            for (int i = 0; i < mSupportedCameraSizes.size(); ++i) {
+                Camera.Size size = mSupportedCameraSizes.get(i);
+                adapter.add(String.format("%d x %d", size.width, size.height));
+                if (currentSize != null && size.width == currentSize.width && size.height == currentSize.height) {
+                    index = i;
+                }
+            }
+        } else {
+            adapter.add("解像度変更不可");
+        }
+        mResolutionSpinner.setOnItemSelectedListener(null);
+        mResolutionSpinner.setAdapter(adapter);
+        if (index < adapter.getCount()) {
+            mResolutionSpinner.setSelection(index, false);
+        }
+        if (mOnResolutionSpinnerSelected != null) {
+            mResolutionSpinner.setOnItemSelectedListener(mOnResolutionSpinnerSelected);
+        }
     }
 
     private void onContinuousUpdate(
@@ -0,0 +1,114 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed set of preallocated preview buffers cycled between the camera and the processing path.
+ * Buffers are only reallocated when the negotiated frame size changes.
+ */
+public class PreviewBufferPool {
+
+    public interface CallbackBufferTarget {
+        void addCallbackBuffer(byte[] buffer);
+    }
+
+    private final int mBufferCount;
+    private final Object mLock;
+    private final AtomicLong mExhaustedCount;
+    private final AtomicLong mReceivedCount;
+    private CallbackBufferTarget mTarget;
+    private byte[][] mBuffers;
+    private int mQueuedCount;
+
+    public PreviewBufferPool(int bufferCount) {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("bufferCount must be positive: " + bufferCount);
+        }
+        mBufferCount = bufferCount;
+        mLock = new Object();
+        mExhaustedCount = new AtomicLong();
+        mReceivedCount = new AtomicLong();
+    }
+
+    public void attach(CallbackBufferTarget target, int bufferSize) {
+        synchronized (mLock) {
+            if (mBuffers == null || mBuffers[0].length != bufferSize) {
+                mBuffers = new byte[mBufferCount][bufferSize];
+            }
+            mTarget = target;
+            mQueuedCount = 0;
+            for (byte[] buffer : mBuffers) {
+                mTarget.addCallbackBuffer(buffer);
+                ++mQueuedCount;
+            }
+        }
+    }
+
+    public void detach() {
+        synchronized (mLock) {
+            mTarget = null;
+            mQueuedCount = 0;
+        }
+    }
+
+    public void onFrameReceived(byte[] data) {
+        mReceivedCount.incrementAndGet();
+        synchronized (mLock) {
+            if (mTarget == null || !owns(data)) {
+                return;
+            }
+            --mQueuedCount;
+            if (mQueuedCount <= 0) {
+                mQueuedCount = 0;
+                mExhaustedCount.incrementAndGet();
+            }
+        }
+    }
+
+    public void recycle(byte[] data) {
+        if (data == null) {
+            return;
+        }
+        synchronized (mLock) {
+            if (mTarget == null || !owns(data)) {
+                return;
+            }
+            mTarget.addCallbackBuffer(data);
+            ++mQueuedCount;
+        }
+    }
+
+    public int getBufferCount() {
+        return mBufferCount;
+    }
+
+    public int getQueuedCount() {
+        synchronized (mLock) {
+            return mQueuedCount;
+        }
+    }
+
+    public long getReceivedCount() {
+        return mReceivedCount.get();
+    }
+
+    /**
+     * @return how many times the camera was left without a queued buffer,
+     * during which it skips frames
+     */
+    public long getExhaustedCount() {
+        return mExhaustedCount.get();
+    }
+
+    private boolean owns(byte[] data) {
+        if (mBuffers == null) {
+            return false;
+        }
+        for (byte[] buffer : mBuffers) {
+            if (buffer == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.graphics.Bitmap;
+
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
+/**
+ * Result of processing one frame. The worker fills it while holding its monitor and publishes it
+ * afterwards; readers hold the same monitor while drawing it.
+ */
+public class ProcessedFrame {
+
+    private static final int INITIAL_TARGET_CAPACITY = 16;
+    private final TargetList mTargets;
+    private Bitmap mBitmap;
+    private long mArrivalNanos;
+
+    public ProcessedFrame() {
+        mTargets = new TargetList(INITIAL_TARGET_CAPACITY);
+    }
+
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    public TargetList getTargets() {
+        return mTargets;
+    }
+
+    /**
+     * @return when the camera frame behind this result arrived, or 0 for none
+     */
+    public long getArrivalNanos() {
+        return mArrivalNanos;
+    }
+
+    public Bitmap obtainBitmap(int width, int height) {
+        if (mBitmap == null || mBitmap.isRecycled()
+                || mBitmap.getWidth() != width || mBitmap.getHeight() != height) {
+            recycle();
+            mBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        return mBitmap;
+    }
+
+    public void setTargets(TargetList targets) {
+        mTargets.copyFrom(targets);
+    }
+
+    public void setArrivalNanos(long arrivalNanos) {
+        mArrivalNanos = arrivalNanos;
+    }
+
+    public void recycle() {
+        if (mBitmap != null) {
+            if (!mBitmap.isRecycled()) {
+                mBitmap.recycle();
+            }
+            mBitmap = null;
+        }
+        mTargets.clear();
+        mArrivalNanos = 0;
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.graphics.Canvas;
+import android.util.Log;
+import android.view.SurfaceHolder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread that owns a {@link SurfaceHolder} and draws into it with {@code lockCanvas}/{@code unlockCanvasAndPost},
+ * so presenting a frame never waits for the UI thread and never blocks the frame worker.
+ * Requests made while a frame is being drawn are coalesced into one, so a slow display only ever shows
+ * the newest frame.
+ */
+public class SurfaceRenderer {
+
+    public interface Drawer {
+        /**
+         * Draws a whole frame on the render thread; the canvas keeps nothing from the previous frame.
+         */
+        void drawFrame(Canvas canvas);
+
+        /**
+         * Called on the render thread once the frame has been posted to the display.
+         */
+        void onFramePosted();
+    }
+
+    private static final String TAG = MainActivity.TAG;
+    private final SurfaceHolder mHolder;
+    private final Drawer mDrawer;
+    private final Object mLock;
+    private final AtomicLong mPostedCount;
+    private final AtomicLong mCoalescedCount;
+    private final AtomicLong mUnavailableCount;
+    private Thread mThread;
+    private boolean mRunning;
+    private boolean mRenderRequested;
+
+    public SurfaceRenderer(SurfaceHolder holder, Drawer drawer) {
+        mHolder = holder;
+        mDrawer = drawer;
+        mLock = new Object();
+        mPostedCount = new AtomicLong();
+        mCoalescedCount = new AtomicLong();
+        mUnavailableCount = new AtomicLong();
+    }
+
+    public void start() {
+        synchronized (mLock) {
+            if (mRunning) {
+                return;
+            }
+            mRunning = true;
+            mThread = new Thread(new Runnable() {
+                @Override public void run() {
+                    loop();
+                }
+            }, "SurfaceRenderer");
+            mThread.start();
+        }
+    }
+
+    /**
+     * Stops the thread and waits until it has posted its last canvas; call before the surface is destroyed.
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (mLock) {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            mRenderRequested = false;
+            thread = mThread;
+            mThread = null;
+            mLock.notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        synchronized (mLock) {
+            return mRunning;
+        }
+    }
+
+    /**
+     * Asks for the current frame to be drawn; returns at once.
+     */
+    public void requestRender() {
+        synchronized (mLock) {
+            if (mRenderRequested) {
+                mCoalescedCount.incrementAndGet();
+            }
+            mRenderRequested = true;
+            mLock.notifyAll();
+        }
+    }
+
+    public long getPostedFrameCount() {
+        return mPostedCount.get();
+    }
+
+    /**
+     * @return number of requests merged into another one because the previous frame was still being drawn
+     */
+    public long getCoalescedRequestCount() {
+        return mCoalescedCount.get();
+    }
+
+    /**
+     * @return number of requests dropped because the surface could not be locked
+     */
+    public long getUnavailableCount() {
+        return mUnavailableCount.get();
+    }
+
+    private void loop() {
+        while (true) {
+            synchronized (mLock) {
+                while (mRunning && !mRenderRequested) {
+                    try {
+                        mLock.wait();
+                    } catch (InterruptedException e) {
+                        Log.d(TAG, "Surface renderer interrupted");
+                        return;
+                    }
+                }
+                if (!mRunning) {
+                    return;
+                }
+                mRenderRequested = false;
+            }
+            Canvas canvas = mHolder.lockCanvas();
+            if (canvas == null) {
+                mUnavailableCount.incrementAndGet();
+                continue;
+            }
+            try {
+                mDrawer.drawFrame(canvas);
+            } finally {
+                // Blocks until the display takes the buffer, which paces the thread to the refresh rate
+                mHolder.unlockCanvasAndPost(canvas);
+            }
+            mPostedCount.incrementAndGet();
+            mDrawer.onFramePosted();
+        }
+    }
+}
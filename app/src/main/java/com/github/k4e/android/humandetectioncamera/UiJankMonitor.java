@@ -0,0 +1,67 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.view.Choreographer;
+
+import com.github.k4e.humandetectioncamera.pipeline.StageTimer;
+
+/**
+ * Records the interval between frames of the UI thread into {@link StageTimer#UI_FRAME} and counts janky ones,
+ * those taking more than one and a half refresh periods. Must be started and stopped on the UI thread.
+ */
+public class UiJankMonitor implements Choreographer.FrameCallback {
+
+    private static final double JANK_FACTOR = 1.5;
+    private final StageTimer mStageTimer;
+    private final long mJankThresholdNanos;
+    private boolean mRunning;
+    private long mLastFrameNanos;
+    private volatile long mFrameCount;
+    private volatile long mJankCount;
+
+    /**
+     * @param refreshRate refresh rate of the display in Hz
+     */
+    public UiJankMonitor(StageTimer stageTimer, float refreshRate) {
+        mStageTimer = stageTimer;
+        mJankThresholdNanos = (long) (JANK_FACTOR * 1e9 / (refreshRate > 0 ? refreshRate : 60));
+    }
+
+    public void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameNanos = 0;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    public void stop() {
+        mRunning = false;
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getJankCount() {
+        return mJankCount;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!mRunning) {
+            return;
+        }
+        if (mLastFrameNanos != 0) {
+            long interval = frameTimeNanos - mLastFrameNanos;
+            mStageTimer.recordNanos(StageTimer.UI_FRAME, interval);
+            ++mFrameCount;
+            if (interval > mJankThresholdNanos) {
+                ++mJankCount;
+            }
+        }
+        mLastFrameNanos = frameTimeNanos;
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+}
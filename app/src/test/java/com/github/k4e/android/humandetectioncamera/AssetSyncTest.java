@@ -0,0 +1,80 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+public class AssetSyncTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void sync_writesMissingFile() throws IOException {
+        File target = new File(mFolder.getRoot(), "cascades/face.xml");
+        byte[] content = content(200000, 1);
+        assertTrue(new AssetSync().sync(new ByteArrayInputStream(content), target));
+        assertArrayEquals(content, read(target));
+        assertFalse(new File(target.getParentFile(), "face.xml.tmp").exists());
+    }
+
+    @Test
+    public void sync_skipsIdenticalFile() throws IOException {
+        File target = mFolder.newFile("face.xml");
+        byte[] content = content(100000, 2);
+        write(target, content);
+        assertTrue(target.setLastModified(1000));
+        assertFalse(new AssetSync().sync(new ByteArrayInputStream(content), target));
+        assertEquals(1000, target.lastModified());
+    }
+
+    @Test
+    public void sync_rewritesFileOfOtherSizeOrContent() throws IOException {
+        File target = mFolder.newFile("face.xml");
+        byte[] content = content(100000, 3);
+        write(target, content(90000, 3));
+        AssetSync sync = new AssetSync();
+        assertTrue(sync.sync(new ByteArrayInputStream(content), target));
+        assertArrayEquals(content, read(target));
+        byte[] changed = content.clone();
+        changed[50000] ^= 1;
+        assertTrue(sync.sync(new ByteArrayInputStream(changed), target));
+        assertArrayEquals(changed, read(target));
+    }
+
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] read(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            byte[] data = new byte[(int) in.length()];
+            in.readFully(data);
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+}
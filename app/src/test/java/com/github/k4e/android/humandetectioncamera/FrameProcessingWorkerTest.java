@@ -0,0 +1,73 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FrameProcessingWorkerTest {
+
+    @Test
+    public void submit_keepsOnlyNewestPendingFrame() throws InterruptedException {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final CountDownLatch lastProcessed = new CountDownLatch(1);
+        final List<Byte> processed = Collections.synchronizedList(new ArrayList<Byte>());
+        FrameProcessingWorker worker = new FrameProcessingWorker(new FrameProcessingWorker.FrameProcessor() {
+            @Override public void processFrame(byte[] data, int width, int height) {
+                processed.add(data[0]);
+                if (data[0] == 0) {
+                    firstStarted.countDown();
+                    await(releaseFirst);
+                }
+                if (data[0] == 3) {
+                    lastProcessed.countDown();
+                }
+            }
+            @Override public void reprocessFrame() { }
+        });
+        worker.start();
+        assertNull(worker.submit(new byte[] { 0 }, 1, 1));
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+        assertNull(worker.submit(new byte[] { 1 }, 1, 1));
+        assertEquals(1, worker.submit(new byte[] { 2 }, 1, 1)[0]);
+        assertEquals(2, worker.submit(new byte[] { 3 }, 1, 1)[0]);
+        releaseFirst.countDown();
+        assertTrue(lastProcessed.await(5, TimeUnit.SECONDS));
+        worker.stop();
+        assertEquals(Byte.valueOf((byte) 0), processed.get(0));
+        assertEquals(Byte.valueOf((byte) 3), processed.get(1));
+        assertEquals(2, processed.size());
+        assertEquals(2, worker.getProcessedFrameCount());
+        assertEquals(2, worker.getDroppedFrameCount());
+    }
+
+    @Test
+    public void requestReprocess_runsWithoutNewFrame() throws InterruptedException {
+        final CountDownLatch reprocessed = new CountDownLatch(1);
+        FrameProcessingWorker worker = new FrameProcessingWorker(new FrameProcessingWorker.FrameProcessor() {
+            @Override public void processFrame(byte[] data, int width, int height) { }
+            @Override public void reprocessFrame() {
+                reprocessed.countDown();
+            }
+        });
+        worker.start();
+        worker.requestReprocess();
+        assertTrue(reprocessed.await(5, TimeUnit.SECONDS));
+        worker.stop();
+        assertEquals(0, worker.getDroppedFrameCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
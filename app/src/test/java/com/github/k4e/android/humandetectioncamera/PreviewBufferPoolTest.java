@@ -0,0 +1,111 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class PreviewBufferPoolTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int BUFFER_SIZE = WIDTH * HEIGHT * 3 / 2;
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void attach_queuesAllBuffersOnce() {
+        FakeCamera camera = new FakeCamera();
+        PreviewBufferPool pool = new PreviewBufferPool(3);
+        pool.attach(camera, BUFFER_SIZE);
+        assertEquals(3, camera.queued.size());
+        assertEquals(3, pool.getQueuedCount());
+        byte[] foreign = new byte[BUFFER_SIZE];
+        pool.recycle(foreign);
+        assertEquals(3, camera.queued.size());
+    }
+
+    @Test
+    public void onFrameReceived_countsExhaustion() {
+        FakeCamera camera = new FakeCamera();
+        PreviewBufferPool pool = new PreviewBufferPool(2);
+        pool.attach(camera, BUFFER_SIZE);
+        byte[] first = camera.nextFrame();
+        pool.onFrameReceived(first);
+        assertEquals(0, pool.getExhaustedCount());
+        byte[] second = camera.nextFrame();
+        pool.onFrameReceived(second);
+        assertEquals(1, pool.getExhaustedCount());
+        pool.recycle(first);
+        assertEquals(1, pool.getQueuedCount());
+        pool.detach();
+        pool.recycle(second);
+        assertEquals(1, camera.queued.size());
+    }
+
+    @Test
+    public void steadyState_allocatesNothingOnHotPath() throws InterruptedException {
+        final FakeCamera camera = new FakeCamera();
+        final PreviewBufferPool pool = new PreviewBufferPool(3);
+        final AtomicLong workerAllocated = new AtomicLong();
+        final long[] workerBaseline = new long[] { -1 };
+        final int warmUpFrames = 2000;
+        final int measuredFrames = 20000;
+        FrameProcessingWorker worker = new FrameProcessingWorker(new FrameProcessingWorker.FrameProcessor() {
+            private int mCount;
+            @Override public void processFrame(byte[] data, int width, int height) {
+                pool.recycle(data);
+                if (++mCount == warmUpFrames) {
+                    workerBaseline[0] = allocatedBytes();
+                } else if (mCount > warmUpFrames) {
+                    workerAllocated.set(allocatedBytes() - workerBaseline[0]);
+                }
+            }
+            @Override public void reprocessFrame() { }
+        });
+        pool.attach(camera, BUFFER_SIZE);
+        worker.start();
+        long cameraBaseline = 0;
+        for (int i = 0; i < warmUpFrames + measuredFrames; ++i) {
+            if (i == warmUpFrames) {
+                cameraBaseline = allocatedBytes();
+            }
+            byte[] data = camera.nextFrame();
+            if (data == null) {
+                Thread.yield();
+                continue;
+            }
+            pool.onFrameReceived(data);
+            pool.recycle(worker.submit(data, WIDTH, HEIGHT));
+        }
+        long cameraAllocated = allocatedBytes() - cameraBaseline;
+        pool.recycle(worker.stop());
+        // Anything allocated per frame would cost at least 16 bytes each time; the budget only
+        // leaves room for one-off JIT deoptimization artifacts.
+        long budget = measuredFrames / 16;
+        assertTrue("camera thread allocated " + cameraAllocated, cameraAllocated < budget);
+        assertTrue("worker thread allocated " + workerAllocated.get(), workerAllocated.get() < budget);
+        assertTrue(worker.getProcessedFrameCount() > 0);
+    }
+
+    private static long allocatedBytes() {
+        return THREAD_MX_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static class FakeCamera implements PreviewBufferPool.CallbackBufferTarget {
+
+        final ArrayDeque<byte[]> queued = new ArrayDeque<>(16);
+
+        @Override
+        public synchronized void addCallbackBuffer(byte[] buffer) {
+            queued.addLast(buffer);
+        }
+
+        synchronized byte[] nextFrame() {
+            return queued.pollFirst();
+        }
+    }
+}
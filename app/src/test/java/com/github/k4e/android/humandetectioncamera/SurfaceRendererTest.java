@@ -0,0 +1,107 @@
+package com.github.k4e.android.humandetectioncamera;
+
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.view.Surface;
+import android.view.SurfaceHolder;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SurfaceRendererTest {
+
+    @Test
+    public void requestRender_coalescesWhileSurfaceIsBusy() throws InterruptedException {
+        final CountDownLatch firstLocked = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final CountDownLatch secondLocked = new CountDownLatch(1);
+        final AtomicInteger locks = new AtomicInteger();
+        final AtomicInteger draws = new AtomicInteger();
+        SurfaceRenderer renderer = new SurfaceRenderer(new FakeHolder() {
+            @Override public Canvas lockCanvas() {
+                int n = locks.incrementAndGet();
+                if (n == 1) {
+                    firstLocked.countDown();
+                    await(releaseFirst);
+                } else {
+                    secondLocked.countDown();
+                }
+                // Surface not ready, so nothing is drawn
+                return null;
+            }
+        }, new SurfaceRenderer.Drawer() {
+            @Override public void drawFrame(Canvas canvas) {
+                draws.incrementAndGet();
+            }
+            @Override public void onFramePosted() { }
+        });
+        renderer.start();
+        renderer.requestRender();
+        assertTrue(firstLocked.await(5, TimeUnit.SECONDS));
+        renderer.requestRender();
+        renderer.requestRender();
+        renderer.requestRender();
+        releaseFirst.countDown();
+        assertTrue(secondLocked.await(5, TimeUnit.SECONDS));
+        renderer.stop();
+        assertEquals(2, locks.get());
+        assertEquals(0, draws.get());
+        assertEquals(2, renderer.getCoalescedRequestCount());
+        assertEquals(2, renderer.getUnavailableCount());
+        assertEquals(0, renderer.getPostedFrameCount());
+    }
+
+    @Test
+    public void stop_isIdempotentAndReleasesSurface() {
+        final AtomicInteger locks = new AtomicInteger();
+        SurfaceRenderer renderer = new SurfaceRenderer(new FakeHolder() {
+            @Override public Canvas lockCanvas() {
+                locks.incrementAndGet();
+                return null;
+            }
+        }, null);
+        renderer.stop();
+        renderer.start();
+        assertTrue(renderer.isRunning());
+        renderer.stop();
+        assertFalse(renderer.isRunning());
+        renderer.requestRender();
+        assertEquals(0, locks.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private abstract static class FakeHolder implements SurfaceHolder {
+        @Override public void addCallback(Callback callback) { }
+        @Override public void removeCallback(Callback callback) { }
+        @Override public boolean isCreating() {
+            return false;
+        }
+        @Override public void setType(int type) { }
+        @Override public void setFixedSize(int width, int height) { }
+        @Override public void setSizeFromLayout() { }
+        @Override public void setFormat(int format) { }
+        @Override public void setKeepScreenOn(boolean screenOn) { }
+        @Override public Canvas lockCanvas(Rect dirty) {
+            return lockCanvas();
+        }
+        @Override public void unlockCanvasAndPost(Canvas canvas) { }
+        @Override public Rect getSurfaceFrame() {
+            return null;
+        }
+        @Override public Surface getSurface() {
+            return null;
+        }
+    }
+}
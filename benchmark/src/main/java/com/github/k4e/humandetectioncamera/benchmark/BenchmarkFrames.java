@@ -0,0 +1,185 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import nu.pattern.OpenCV;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Input frames and target layouts shared by the benchmarks.
+ * Recorded frames are read from the {@value #FRAMES_DIR_PROPERTY} directory, using the same
+ * {@code <w>x<h>_*.nv21} naming as the instrumented DetectionStageBenchmark; otherwise a deterministic synthetic frame is generated, so the suite runs offline without a camera.
+ */
+public final class BenchmarkFrames {
+
+    public static final String FRAMES_DIR_PROPERTY = "benchmark.framesDir";
+    public static final String CASCADE_DIR_PROPERTY = "benchmark.cascadeDir";
+    public static final String FACE_CASCADE = "haarcascade_frontalface_alt.xml";
+    public static final String BODY_CASCADE = "haarcascade_fullbody.xml";
+    public static final String LBP_CASCADE_DIR_PROPERTY = "benchmark.lbpCascadeDir";
+    public static final String LBP_FACE_CASCADE = "lbpcascade_frontalface_improved.xml";
+    private static final String DEFAULT_CASCADE_DIR = "../app/src/main/assets/haarcascades";
+    private static boolean sLoaded;
+
+    private BenchmarkFrames() {
+    }
+
+    public static synchronized void loadOpenCv() {
+        if (!sLoaded) {
+            OpenCV.loadLocally();
+            sLoaded = true;
+        }
+    }
+
+    /**
+     * @return {width, height} of a resolution written as {@code <w>x<h>}
+     */
+    public static int[] parseSize(String resolution) {
+        int x = resolution.indexOf('x');
+        if (x < 0) {
+            throw new IllegalArgumentException("Resolution must be <w>x<h>: " + resolution);
+        }
+        return new int[] {
+                Integer.parseInt(resolution.substring(0, x)), Integer.parseInt(resolution.substring(x + 1)) };
+    }
+
+    public static byte[] nv21(int width, int height) throws IOException {
+        byte[] recorded = loadRecorded(width, height);
+        return recorded != null ? recorded : synthetic(width, height);
+    }
+
+    public static Mat rgba(int width, int height) throws IOException {
+        Mat yuv = new Mat(height + height / 2, width, CvType.CV_8UC1);
+        yuv.put(0, 0, nv21(width, height));
+        Mat rgba = new Mat();
+        Imgproc.cvtColor(yuv, rgba, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+        yuv.release();
+        return rgba;
+    }
+
+    /**
+     * @return the Y plane of the frame, as the pipeline reads it from an NV21 buffer for detection
+     */
+    public static Mat luma(int width, int height) throws IOException {
+        Mat luma = new Mat(height, width, CvType.CV_8UC1);
+        luma.put(0, 0, nv21(width, height));
+        return luma;
+    }
+
+    public static String cascade(String name) {
+        return cascade(System.getProperty(CASCADE_DIR_PROPERTY, DEFAULT_CASCADE_DIR), name);
+    }
+
+    /**
+     * LBP cascades are not bundled, so there is no default directory.
+     */
+    public static String lbpCascade(String name) {
+        String dir = System.getProperty(LBP_CASCADE_DIR_PROPERTY);
+        if (dir == null) {
+            throw new IllegalStateException("Set " + LBP_CASCADE_DIR_PROPERTY + " to a directory holding " + name);
+        }
+        return cascade(dir, name);
+    }
+
+    private static String cascade(String dir, String name) {
+        File file = new File(dir, name);
+        if (!file.isFile()) {
+            throw new IllegalStateException("Cascade not found: " + file.getAbsolutePath());
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Lays out person-sized boxes side by side across the frame, wrapping to a second row if needed.
+     *
+     * @return {x, y, w, h} for every target
+     */
+    public static int[][] targets(int width, int height, int count) {
+        int[][] rects = new int[count][];
+        int perRow = Math.max(1, Math.min(count, 4));
+        int w = width / (perRow + 1);
+        int h = Math.min(height / 2, w * 2);
+        int gap = (width - perRow * w) / (perRow + 1);
+        for (int i = 0; i < count; ++i) {
+            int col = i % perRow;
+            int row = i / perRow;
+            int y = Math.min(height - h, height / 8 + row * h / 2);
+            rects[i] = new int[] { gap + col * (w + gap), y, w, h };
+        }
+        return rects;
+    }
+
+    private static byte[] loadRecorded(int width, int height) throws IOException {
+        String dirName = System.getProperty(FRAMES_DIR_PROPERTY);
+        if (dirName == null) {
+            return null;
+        }
+        String prefix = width + "x" + height + "_";
+        File[] files = new File(dirName).listFiles();
+        if (files == null) {
+            return null;
+        }
+        Arrays.sort(files);
+        int size = width * height * 3 / 2;
+        for (File file : files) {
+            if (file.getName().startsWith(prefix) && file.getName().endsWith(".nv21") && file.length() == size) {
+                byte[] data = new byte[size];
+                InputStream in = new FileInputStream(file);
+                try {
+                    int off = 0;
+                    while (off < size) {
+                        int n = in.read(data, off, size - off);
+                        if (n < 0) {
+                            throw new IOException("Unexpected end of " + file);
+                        }
+                        off += n;
+                    }
+                } finally {
+                    in.close();
+                }
+                return data;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A blurred noise texture with a few large blobs, so cascades and Telea see structure rather than a flat image.
+     */
+    private static byte[] synthetic(int width, int height) {
+        Mat bgr = new Mat(height, width, CvType.CV_8UC3);
+        Core.setRNGSeed(width * 31 + height);
+        Core.randu(bgr, 0, 255);
+        Imgproc.GaussianBlur(bgr, bgr, new Size(15, 15), 0);
+        for (int[] r : targets(width, height, 3)) {
+            Imgproc.ellipse(bgr, new Point(r[0] + r[2] / 2, r[1] + r[3] / 2), new Size(r[2] / 3, r[3] / 3),
+                    0, 0, 360, new Scalar(40, 80, 160), -1);
+        }
+        Mat i420 = new Mat();
+        Imgproc.cvtColor(bgr, i420, Imgproc.COLOR_BGR2YUV_I420);
+        byte[] planar = new byte[width * height * 3 / 2];
+        i420.get(0, 0, planar);
+        bgr.release();
+        i420.release();
+        int lumaSize = width * height;
+        int chromaSize = lumaSize / 4;
+        byte[] nv21 = new byte[planar.length];
+        System.arraycopy(planar, 0, nv21, 0, lumaSize);
+        for (int i = 0; i < chromaSize; ++i) {
+            nv21[lumaSize + i * 2] = planar[lumaSize + chromaSize + i];
+            nv21[lumaSize + i * 2 + 1] = planar[lumaSize + i];
+        }
+        return nv21;
+    }
+}
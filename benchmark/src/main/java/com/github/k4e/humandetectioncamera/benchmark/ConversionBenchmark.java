@@ -0,0 +1,110 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NV21 preview buffer to RGBA image, as done at the start of every frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    private static final int JPEG_QUALITY = 80;
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mData;
+    private Nv21FrameConverter mConverter;
+    private Mat mYuvMat;
+    private Mat mBgrMat;
+    private Mat mRgbaMat;
+    private MatOfByte mJpegBuffer;
+    private MatOfInt mJpegParams;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mWidth = size[0];
+        mHeight = size[1];
+        mData = BenchmarkFrames.nv21(mWidth, mHeight);
+        mConverter = new Nv21FrameConverter();
+        mYuvMat = new Mat(mHeight + mHeight / 2, mWidth, CvType.CV_8UC1);
+        mBgrMat = new Mat();
+        mRgbaMat = new Mat();
+        mJpegBuffer = new MatOfByte();
+        mJpegParams = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, JPEG_QUALITY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mConverter.release();
+        mYuvMat.release();
+        mBgrMat.release();
+        mRgbaMat.release();
+        mJpegBuffer.release();
+        mJpegParams.release();
+    }
+
+    @Benchmark
+    public Mat direct() {
+        mConverter.convert(mData, mWidth, mHeight, mRgbaMat);
+        return mRgbaMat;
+    }
+
+    /**
+     * Stands in for the YuvImage.compressToJpeg and BitmapFactory round trip, which only exist on Android:
+     * the frame is encoded to JPEG at the same quality and decoded again before the RGBA conversion.
+     */
+    @Benchmark
+    public Mat jpegRoundTrip() {
+        mYuvMat.put(0, 0, mData);
+        Imgproc.cvtColor(mYuvMat, mBgrMat, Imgproc.COLOR_YUV2BGR_NV21);
+        Imgcodecs.imencode(".jpg", mBgrMat, mJpegBuffer, mJpegParams);
+        Mat decoded = Imgcodecs.imdecode(mJpegBuffer, Imgcodecs.IMREAD_COLOR);
+        Imgproc.cvtColor(decoded, mRgbaMat, Imgproc.COLOR_BGR2RGBA);
+        decoded.release();
+        return mRgbaMat;
+    }
+
+    /**
+     * Detection only needs luma, which is the first plane of NV21 and needs no conversion at all.
+     */
+    @Benchmark
+    public Mat lumaOnly() {
+        mYuvMat.put(0, 0, mData);
+        Mat luma = mYuvMat.submat(0, mHeight, 0, mWidth);
+        luma.copyTo(mBgrMat);
+        luma.release();
+        return mBgrMat;
+    }
+}
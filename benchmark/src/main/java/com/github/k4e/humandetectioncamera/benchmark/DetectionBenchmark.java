@@ -0,0 +1,116 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionStage;
+import com.github.k4e.humandetectioncamera.pipeline.DetectorParams;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.objdetect.CascadeClassifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Face and body cascades, both on the full RGBA frame as originally done and through the shared
+ * downscaled grayscale {@link DetectionStage}, prepared from RGBA or straight from the NV21 luma plane.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectionBenchmark {
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private Mat mRgbaMat;
+    private Mat mLumaMat;
+    private CascadeClassifier mFaceDetector;
+    private CascadeClassifier mBodyDetector;
+    private CascadeDetector mFaceCascadeDetector;
+    private CascadeDetector mBodyCascadeDetector;
+    private DetectionStage mDetectionStage;
+    private MatOfRect mResult;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mRgbaMat = BenchmarkFrames.rgba(size[0], size[1]);
+        mLumaMat = BenchmarkFrames.luma(size[0], size[1]);
+        mFaceDetector = new CascadeClassifier(BenchmarkFrames.cascade(BenchmarkFrames.FACE_CASCADE));
+        mBodyDetector = new CascadeClassifier(BenchmarkFrames.cascade(BenchmarkFrames.BODY_CASCADE));
+        mFaceCascadeDetector = new CascadeDetector(CascadeDetector.HAAR, mFaceDetector);
+        mBodyCascadeDetector = new CascadeDetector(CascadeDetector.HAAR, mBodyDetector);
+        mDetectionStage = new DetectionStage(DetectionStage.DEFAULT_DETECTION_WIDTH);
+        mResult = new MatOfRect();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRgbaMat.release();
+        mLumaMat.release();
+        mDetectionStage.release();
+        mResult.release();
+    }
+
+    @Benchmark
+    public MatOfRect faceFullFrame() {
+        mFaceDetector.detectMultiScale(mRgbaMat, mResult);
+        return mResult;
+    }
+
+    @Benchmark
+    public MatOfRect bodyFullFrame() {
+        mBodyDetector.detectMultiScale(mRgbaMat, mResult);
+        return mResult;
+    }
+
+    @Benchmark
+    public MatOfRect faceDetectionStage() {
+        mDetectionStage.prepare(mRgbaMat);
+        mDetectionStage.detect(mFaceCascadeDetector, DetectorParams.DEFAULT_FACE, mResult);
+        return mResult;
+    }
+
+    @Benchmark
+    public MatOfRect bodyDetectionStage() {
+        mDetectionStage.prepare(mRgbaMat);
+        mDetectionStage.detect(mBodyCascadeDetector, DetectorParams.DEFAULT_BODY, mResult);
+        return mResult;
+    }
+
+    @Benchmark
+    public MatOfRect faceDetectionStageFromLuma() {
+        mDetectionStage.prepareGray(mLumaMat);
+        mDetectionStage.detect(mFaceCascadeDetector, DetectorParams.DEFAULT_FACE, mResult);
+        return mResult;
+    }
+
+    @Benchmark
+    public Mat prepareOnly() {
+        mDetectionStage.prepare(mRgbaMat);
+        return mDetectionStage.getDetectionMat();
+    }
+
+    @Benchmark
+    public Mat prepareFromLuma() {
+        mDetectionStage.prepareGray(mLumaMat);
+        return mDetectionStage.getDetectionMat();
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionStage;
+import com.github.k4e.humandetectioncamera.pipeline.Detector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectorParams;
+import com.github.k4e.humandetectioncamera.pipeline.HogDetector;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every {@link Detector} backend on the same prepared detection image. The number of detections of each backend
+ * is reported as the {@code detections} secondary result, so speed can be weighed against what is found.
+ * The LBP face cascade is not bundled, so {@code lbp-face} only runs when the jmh task is given a directory
+ * holding {@value BenchmarkFrames#LBP_FACE_CASCADE} from OpenCV's data/lbpcascades with {@code -PlbpCascadeDir}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DetectorBackendBenchmark {
+
+    @Param({ "haar-face", "haar-body", "hog-body" })
+    public String backend;
+
+    @Param({ "640x480", "1280x720" })
+    public String resolution;
+
+    /**
+     * Detections per call; the image never changes, so every call finds the same. JMH sums event counters over
+     * the measurement iterations and threads, so each iteration holds only its share of the count.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Detections {
+
+        public double detections;
+        private double mShare;
+
+        @Setup(Level.Iteration)
+        public void clear(BenchmarkParams params) {
+            detections = 0;
+            mShare = 1.0 / (params.getMeasurement().getCount() * params.getThreads());
+        }
+
+        void set(int count) {
+            detections = count * mShare;
+        }
+    }
+
+    private Mat mRgbaMat;
+    private DetectionStage mDetectionStage;
+    private Detector mDetector;
+    private DetectorParams mParams;
+    private MatOfRect mResult;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mRgbaMat = BenchmarkFrames.rgba(size[0], size[1]);
+        mDetectionStage = new DetectionStage(DetectionStage.DEFAULT_DETECTION_WIDTH);
+        mDetectionStage.prepare(mRgbaMat);
+        mResult = new MatOfRect();
+        switch (backend) {
+            case "haar-face":
+                mDetector = load(CascadeDetector.HAAR, BenchmarkFrames.cascade(BenchmarkFrames.FACE_CASCADE));
+                mParams = DetectorParams.DEFAULT_FACE;
+                break;
+            case "lbp-face":
+                mDetector = load(CascadeDetector.LBP, BenchmarkFrames.lbpCascade(BenchmarkFrames.LBP_FACE_CASCADE));
+                mParams = DetectorParams.DEFAULT_FACE;
+                break;
+            case "haar-body":
+                mDetector = load(CascadeDetector.HAAR, BenchmarkFrames.cascade(BenchmarkFrames.BODY_CASCADE));
+                mParams = DetectorParams.DEFAULT_BODY;
+                break;
+            case "hog-body":
+                mDetector = new HogDetector();
+                mParams = DetectorParams.DEFAULT_BODY;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown backend: " + backend);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mRgbaMat.release();
+        mDetectionStage.release();
+        mDetector.release();
+        mResult.release();
+    }
+
+    @Benchmark
+    public int detect(Detections counters) {
+        int count = mDetectionStage.detect(mDetector, mParams, mResult);
+        counters.set(count);
+        return count;
+    }
+
+    private static Detector load(String name, String filename) {
+        Detector detector = CascadeDetector.load(name, filename);
+        if (detector == null) {
+            throw new IllegalStateException("Cannot load " + filename);
+        }
+        return detector;
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.DetectionEventBus;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionLogSink;
+import com.github.k4e.humandetectioncamera.pipeline.FramePipeline;
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost on the processing thread of publishing the targets of one frame to {@link DetectionEventBus}, without
+ * subscribers, with a subscriber polled in line and with a {@link DetectionLogSink} writing on its own thread.
+ * {@code logLine} builds the detection log line the preview writes on keyframes, for scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBenchmark {
+
+    @Param({ "1", "8", "64" })
+    public int targetCount;
+
+    /**
+     * A sink writing on its own thread. Published far faster than any camera delivers frames, it falls behind and
+     * the bus drops most frames, so the teardown reports how many it wrote per second as well.
+     */
+    @State(Scope.Thread)
+    public static class SinkState {
+
+        @Param({ "csv", "binary" })
+        public String sinkFormat;
+
+        DetectionEventBus mBus;
+        private DetectionLogSink mSink;
+        private File mFile;
+        private long mStartNanos;
+
+        @Setup
+        public void setUp() throws IOException {
+            mBus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY * 16);
+            mFile = File.createTempFile("events", sinkFormat.equals("csv") ? ".csv" : ".bin");
+            mSink = new DetectionLogSink(mBus, mFile, DetectionLogSink.formatOf(mFile),
+                    DetectionLogSink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+            mSink.start();
+            mStartNanos = System.nanoTime();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            mSink.close();
+            double seconds = (System.nanoTime() - mStartNanos) / 1e9;
+            long published = mBus.getPublishedFrameCount();
+            long dropped = mBus.getDroppedFrameCount();
+            System.out.println(String.format(Locale.US,
+                    "sink: %.0f records/s, %.1f MB/s written; %.1f%% of the frames dropped",
+                    mSink.getWrittenRecordCount() / seconds, mFile.length() / 1e6 / seconds,
+                    100.0 * dropped / Math.max(1, published + dropped)));
+            if (!mFile.delete()) {
+                mFile.deleteOnExit();
+            }
+        }
+    }
+
+    private TargetList mTargets;
+    private DetectionEventBus mIdleBus;
+    private DetectionEventBus mBus;
+    private DetectionEventBus.Subscription mSubscription;
+    private DetectionEventBus.RecordHandler mHandler;
+    private long mFrameId;
+    private long mChecksum;
+
+    @Setup
+    public void setUp() {
+        mTargets = new TargetList(targetCount);
+        for (int i = 0; i < targetCount; ++i) {
+            float left = (i % 8) / 8f;
+            float top = (i / 8) / 8f;
+            mTargets.add(i % 2 == 0 ? FramePipeline.TARGET_FACE : FramePipeline.TARGET_BODY,
+                    left, top, left + 0.1f, top + 0.1f);
+        }
+        mIdleBus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY);
+        mBus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY);
+        mSubscription = mBus.subscribe();
+        mHandler = new DetectionEventBus.RecordHandler() {
+            @Override
+            public void onRecord(long timestampNanos, long frameId, int type, float left, float top, float right,
+                    float bottom) {
+                mChecksum += frameId + type;
+            }
+        };
+    }
+
+    @Benchmark
+    public boolean publishWithoutSubscriber() {
+        return mIdleBus.publish(System.nanoTime(), mFrameId++, mTargets);
+    }
+
+    @Benchmark
+    public int publishAndPoll() {
+        mBus.publish(System.nanoTime(), mFrameId++, mTargets);
+        return mSubscription.poll(mHandler, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean publishToSink(SinkState sink) {
+        return sink.mBus.publish(System.nanoTime(), mFrameId++, mTargets);
+    }
+
+    @Benchmark
+    public String logLine() {
+        return "Detect " + mTargets.size() + " target(s) in " + (mFrameId++ % 100) + " ms"
+                + " (face " + (mFrameId % 7) + " ms, body " + (mFrameId % 11) + " ms)";
+    }
+}
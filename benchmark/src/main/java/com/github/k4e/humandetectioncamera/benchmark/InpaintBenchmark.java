@@ -0,0 +1,140 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.BackgroundPlate;
+import com.github.k4e.humandetectioncamera.pipeline.RoiInpainter;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.photo.Photo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Removal of the masked targets: full-frame Telea as originally done, Telea on padded regions,
+ * the same with temporal reuse of an unchanged scene, and the background plate fill.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InpaintBenchmark {
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    @Param({ "1", "3", "6" })
+    public int targetCount;
+
+    private Mat mSourceMat;
+    private Mat mImageMat;
+    private Mat mMaskMat;
+    private Mat mInpaintInMat;
+    private Mat mInpaintOutMat;
+    private Mat mUncoveredMat;
+    private int[][] mTargets;
+    private RoiInpainter mRoiInpainter;
+    private RoiInpainter mCachedInpainter;
+    private BackgroundPlate mBackgroundPlate;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mSourceMat = BenchmarkFrames.rgba(size[0], size[1]);
+        mImageMat = new Mat();
+        mMaskMat = Mat.zeros(size[1], size[0], CvType.CV_8UC1);
+        mInpaintInMat = new Mat();
+        mInpaintOutMat = new Mat();
+        mUncoveredMat = new Mat();
+        mTargets = BenchmarkFrames.targets(size[0], size[1], targetCount);
+        for (int[] r : mTargets) {
+            Imgproc.ellipse(mMaskMat, new Point(r[0] + r[2] / 2, r[1] + r[3] / 2), new Size(r[2] / 2, r[3] / 2),
+                    0, 0, 360, Scalar.all(255.), -1);
+        }
+        mRoiInpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        mCachedInpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        mCachedInpainter.setTemporalReuse(true);
+        mBackgroundPlate = new BackgroundPlate(BackgroundPlate.DEFAULT_LEARNING_RATE, 1,
+                BackgroundPlate.DEFAULT_EXCLUSION_PADDING);
+        mBackgroundPlate.beginFrame(size[0], size[1]);
+        mBackgroundPlate.update(mSourceMat);
+    }
+
+    @Setup(Level.Invocation)
+    public void resetImage() {
+        mSourceMat.copyTo(mImageMat);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSourceMat.release();
+        mImageMat.release();
+        mMaskMat.release();
+        mInpaintInMat.release();
+        mInpaintOutMat.release();
+        mUncoveredMat.release();
+        mRoiInpainter.release();
+        mCachedInpainter.release();
+        mBackgroundPlate.release();
+    }
+
+    @Benchmark
+    public Mat fullFrameTelea() {
+        Imgproc.cvtColor(mImageMat, mInpaintInMat, Imgproc.COLOR_BGRA2BGR);
+        Photo.inpaint(mInpaintInMat, mMaskMat, mInpaintOutMat, 1, Photo.INPAINT_TELEA);
+        return mInpaintOutMat;
+    }
+
+    @Benchmark
+    public Mat roiTelea() {
+        addRegions(mRoiInpainter);
+        mRoiInpainter.inpaint(mImageMat, mMaskMat);
+        return mImageMat;
+    }
+
+    /**
+     * Same frame every time, so after the first invocation every region is reused.
+     */
+    @Benchmark
+    public Mat roiTeleaStaticScene() {
+        addRegions(mCachedInpainter);
+        mCachedInpainter.inpaint(mImageMat, mMaskMat);
+        return mImageMat;
+    }
+
+    /**
+     * The plate learned the whole frame in the setup, so nothing is left to inpaint.
+     */
+    @Benchmark
+    public Mat backgroundPlateFill() {
+        mBackgroundPlate.fill(mImageMat, mMaskMat, mUncoveredMat);
+        return mImageMat;
+    }
+
+    private void addRegions(RoiInpainter inpainter) {
+        inpainter.clearRegions();
+        for (int[] r : mTargets) {
+            inpainter.addRegion(r[0], r[1], r[2], r[3]);
+        }
+    }
+}
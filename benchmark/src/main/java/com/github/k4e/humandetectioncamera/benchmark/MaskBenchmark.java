@@ -0,0 +1,76 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clearing the mask and rasterizing one filled ellipse per target.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MaskBenchmark {
+
+    private static final Scalar MASK_CLEAR = Scalar.all(0.);
+    private static final Scalar MASK_FILL = Scalar.all(255.);
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    @Param({ "1", "3", "6" })
+    public int targetCount;
+
+    private Mat mMaskMat;
+    private int[][] mTargets;
+    private Point mCenter;
+    private Size mAxes;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mMaskMat = new Mat(size[1], size[0], CvType.CV_8UC1);
+        mTargets = BenchmarkFrames.targets(size[0], size[1], targetCount);
+        mCenter = new Point();
+        mAxes = new Size();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mMaskMat.release();
+    }
+
+    @Benchmark
+    public Mat ellipses() {
+        mMaskMat.setTo(MASK_CLEAR);
+        for (int[] r : mTargets) {
+            mCenter.x = r[0] + r[2] / 2;
+            mCenter.y = r[1] + r[3] / 2;
+            mAxes.width = r[2] / 2;
+            mAxes.height = r[3] / 2;
+            Imgproc.ellipse(mMaskMat, mCenter, mAxes, 0, 0, 360, MASK_FILL, -1);
+        }
+        return mMaskMat;
+    }
+}
@@ -0,0 +1,78 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.FramePipeline;
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One whole frame through {@link FramePipeline} with both detectors and inpainting on, as the preview runs it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    @Param({ "0", "90" })
+    public int displayOrientation;
+
+    @Param({ "true", "false" })
+    public boolean tracking;
+
+    private int mWidth;
+    private int mHeight;
+    private byte[] mData;
+    private Nv21FrameConverter mConverter;
+    private FramePipeline mPipeline;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mWidth = size[0];
+        mHeight = size[1];
+        mData = BenchmarkFrames.nv21(mWidth, mHeight);
+        mConverter = new Nv21FrameConverter();
+        mPipeline = new FramePipeline(displayOrientation);
+        mPipeline.loadDetectors(BenchmarkFrames.cascade(BenchmarkFrames.FACE_CASCADE),
+                BenchmarkFrames.cascade(BenchmarkFrames.BODY_CASCADE));
+        mPipeline.setFaceDetectionEnable(true);
+        mPipeline.setBodyDetectionEnable(true);
+        mPipeline.setInpaintingOn(true);
+        mPipeline.setTrackingEnable(tracking);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mPipeline.release();
+        mConverter.release();
+    }
+
+    @Benchmark
+    public Mat processFrame() {
+        mConverter.put(mData, mWidth, mHeight);
+        mPipeline.process(mConverter);
+        return mPipeline.getOutput();
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.k4e.humandetectioncamera.benchmark;
+
+import com.github.k4e.humandetectioncamera.pipeline.DetectionStage;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Quarter turn of the RGBA frame for portrait display orientations, against turning only the downscaled
+ * grayscale detection image as the pipeline does now.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotationBenchmark {
+
+    @Param({ "320x240", "640x480", "1280x720", "1920x1080" })
+    public String resolution;
+
+    private Mat mSourceMat;
+    private Mat mTransposeMat;
+    private Mat mRotateMat;
+    private Mat mDetectionMat;
+    private Mat mDetectionRotateMat;
+
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkFrames.loadOpenCv();
+        int[] size = BenchmarkFrames.parseSize(resolution);
+        mSourceMat = BenchmarkFrames.rgba(size[0], size[1]);
+        mTransposeMat = new Mat();
+        mRotateMat = new Mat();
+        Mat gray = new Mat();
+        Imgproc.cvtColor(mSourceMat, gray, Imgproc.COLOR_RGBA2GRAY);
+        mDetectionMat = new Mat();
+        int detectionWidth = DetectionStage.DEFAULT_DETECTION_WIDTH;
+        double scale = Math.min(1.0, (double) detectionWidth / size[1]);
+        Imgproc.resize(gray, mDetectionMat, new Size(size[0] * scale, size[1] * scale), 0, 0, Imgproc.INTER_AREA);
+        gray.release();
+        mDetectionRotateMat = new Mat();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSourceMat.release();
+        mTransposeMat.release();
+        mRotateMat.release();
+        mDetectionMat.release();
+        mDetectionRotateMat.release();
+    }
+
+    /**
+     * The original {@code Core.flip(mImageMat.t(), mImageMat, 0)}, which allocates the transposed image every frame.
+     */
+    @Benchmark
+    public Mat flipOfTransposeCopy() {
+        Mat transposed = mSourceMat.t();
+        Core.flip(transposed, mRotateMat, 0);
+        transposed.release();
+        return mRotateMat;
+    }
+
+    @Benchmark
+    public Mat transposeThenFlip() {
+        Core.transpose(mSourceMat, mTransposeMat);
+        Core.flip(mTransposeMat, mRotateMat, 0);
+        return mRotateMat;
+    }
+
+    @Benchmark
+    public Mat rotate() {
+        Core.rotate(mSourceMat, mRotateMat, Core.ROTATE_90_COUNTERCLOCKWISE);
+        return mRotateMat;
+    }
+
+    @Benchmark
+    public Mat rotateDetectionImage() {
+        Core.rotate(mDetectionMat, mDetectionRotateMat, Core.ROTATE_90_CLOCKWISE);
+        return mDetectionRotateMat;
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Running-average background model for fixed cameras. The model is only updated where no target is
+ * present, and masked pixels are filled by copying from it. A pixel is learned from the first frame that shows
+ * it without a target, so a person standing still from the start is never part of the model; the pixels not
+ * learned yet are left to the caller, see {@link #fill}. All buffers are allocated once per frame size.
+ */
+public class BackgroundPlate {
+
+    public static final double DEFAULT_LEARNING_RATE = 0.05;
+    public static final int DEFAULT_WARMUP_FRAMES = 30;
+    public static final int DEFAULT_EXCLUSION_PADDING = 8;
+    private static final Scalar UPDATE = Scalar.all(255.);
+    private static final Scalar EXCLUDE = Scalar.all(0.);
+    private static final Scalar UNCOVERED = Scalar.all(0.);
+    private final double mLearningRate;
+    private final int mWarmupFrames;
+    private final int mExclusionPadding;
+    private final Mat mModelMat;
+    private final Mat mPlateMat;
+    private final Mat mUpdateMask;
+    private final Mat mCoverageMask;
+    private final Mat mWorkMask;
+    private final Point mTopLeft;
+    private final Point mBottomRight;
+    private int mFrameCount;
+    private boolean mFullyCovered;
+
+    public BackgroundPlate(double learningRate, int warmupFrames, int exclusionPadding) {
+        if (learningRate <= 0 || learningRate > 1) {
+            throw new IllegalArgumentException("learningRate must be in (0, 1]: " + learningRate);
+        }
+        mLearningRate = learningRate;
+        mWarmupFrames = warmupFrames;
+        mExclusionPadding = exclusionPadding;
+        mModelMat = new Mat();
+        mPlateMat = new Mat();
+        mUpdateMask = new Mat();
+        mCoverageMask = new Mat();
+        mWorkMask = new Mat();
+        mTopLeft = new Point();
+        mBottomRight = new Point();
+    }
+
+    public boolean isReady() {
+        return mFrameCount >= mWarmupFrames;
+    }
+
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    public void beginFrame(int width, int height) {
+        if (mUpdateMask.cols() != width || mUpdateMask.rows() != height) {
+            mUpdateMask.create(height, width, CvType.CV_8UC1);
+            reset();
+        }
+        mTopLeft.x = 0;
+        mTopLeft.y = 0;
+        mBottomRight.x = width;
+        mBottomRight.y = height;
+        Imgproc.rectangle(mUpdateMask, mTopLeft, mBottomRight, UPDATE, -1);
+    }
+
+    /**
+     * Keeps the model from learning inside a target's box, padded so the edges of a person do not leak in.
+     */
+    public void excludeRegion(int x, int y, int w, int h) {
+        mTopLeft.x = x - mExclusionPadding;
+        mTopLeft.y = y - mExclusionPadding;
+        mBottomRight.x = x + w + mExclusionPadding;
+        mBottomRight.y = y + h + mExclusionPadding;
+        Imgproc.rectangle(mUpdateMask, mTopLeft, mBottomRight, EXCLUDE, -1);
+    }
+
+    public void update(Mat rgba) {
+        if (mFrameCount == 0 || mModelMat.cols() != rgba.cols() || mModelMat.rows() != rgba.rows()
+                || mModelMat.channels() != rgba.channels()) {
+            mModelMat.create(rgba.rows(), rgba.cols(), CvType.CV_32FC(rgba.channels()));
+            mCoverageMask.create(rgba.rows(), rgba.cols(), CvType.CV_8UC1);
+            mCoverageMask.setTo(UNCOVERED);
+            mFullyCovered = false;
+            mFrameCount = 0;
+        }
+        if (mFullyCovered) {
+            Imgproc.accumulateWeighted(rgba, mModelMat, mLearningRate, mUpdateMask);
+            ++mFrameCount;
+            return;
+        }
+        Core.bitwise_and(mUpdateMask, mCoverageMask, mWorkMask);
+        Imgproc.accumulateWeighted(rgba, mModelMat, mLearningRate, mWorkMask);
+        // A weight of 1 seeds the pixels seen for the first time with the frame itself
+        Core.subtract(mUpdateMask, mCoverageMask, mWorkMask);
+        Imgproc.accumulateWeighted(rgba, mModelMat, 1.0, mWorkMask);
+        Core.bitwise_or(mCoverageMask, mUpdateMask, mCoverageMask);
+        mFullyCovered = Core.countNonZero(mCoverageMask) == mCoverageMask.total();
+        ++mFrameCount;
+    }
+
+    /**
+     * @return whether every pixel has been learned at least once
+     */
+    public boolean isFullyCovered() {
+        return mFullyCovered;
+    }
+
+    /**
+     * Replaces the masked pixels of the image that the model has learned with the background model.
+     *
+     * @param uncovered receives the masked pixels the model has not learned yet, which are left as they are;
+     *                  not written once the whole frame is learned
+     * @return whether some masked pixels were left
+     */
+    public boolean fill(Mat rgba, Mat mask, Mat uncovered) {
+        mModelMat.convertTo(mPlateMat, rgba.type());
+        if (mFullyCovered) {
+            mPlateMat.copyTo(rgba, mask);
+            return false;
+        }
+        Core.bitwise_and(mask, mCoverageMask, mWorkMask);
+        mPlateMat.copyTo(rgba, mWorkMask);
+        Core.subtract(mask, mCoverageMask, uncovered);
+        return Core.countNonZero(uncovered) > 0;
+    }
+
+    public void reset() {
+        mFrameCount = 0;
+        mFullyCovered = false;
+    }
+
+    public void release() {
+        mModelMat.release();
+        mPlateMat.release();
+        mUpdateMask.release();
+        mCoverageMask.release();
+        mWorkMask.release();
+        mFrameCount = 0;
+        mFullyCovered = false;
+    }
+}
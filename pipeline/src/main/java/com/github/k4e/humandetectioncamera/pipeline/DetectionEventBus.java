@@ -0,0 +1,197 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ring buffer of detection records for analytics, filled by one publishing thread and read by any number of
+ * subscribers on their own threads. Records are kept in preallocated primitive arrays: capture time, frame id,
+ * type and a box normalized as in {@link TargetList}. Every published frame adds a {@link #TYPE_FRAME} record
+ * followed by one record per target, so frames without targets are still counted.
+ * <p>
+ * {@link #publish} never waits and does not allocate. When a frame does not fit behind the slowest subscriber it
+ * is dropped whole, like a frame at the full queue of {@link FrameRecorder}, so a stalled subscriber costs records
+ * but never time on the publishing thread. Without subscribers nothing is copied at all.
+ */
+public class DetectionEventBus {
+
+    /** Type of the record that starts every frame; its box is empty. */
+    public static final int TYPE_FRAME = -1;
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    public interface RecordHandler {
+        /**
+         * @param type {@link #TYPE_FRAME} or the target type of {@link TargetList}
+         */
+        void onRecord(long timestampNanos, long frameId, int type, float left, float top, float right,
+                float bottom);
+    }
+
+    /**
+     * Read position of one subscriber. Must be polled by one thread at a time.
+     */
+    public class Subscription {
+
+        // Next sequence to read; the publisher reads it to know which slots are free again
+        private final AtomicLong mCursor;
+
+        private Subscription(long cursor) {
+            mCursor = new AtomicLong(cursor);
+        }
+
+        /**
+         * Hands the records published since the last poll to the handler, oldest first.
+         *
+         * @return number of records handled
+         */
+        public int poll(RecordHandler handler, int maxRecords) {
+            long cursor = mCursor.get();
+            int count = (int) Math.min(mPublished.get() - cursor, maxRecords);
+            for (int i = 0; i < count; ++i) {
+                int slot = (int) (cursor + i) & mMask;
+                handler.onRecord(mTimestamps[slot], mFrameIds[slot], mTypes[slot],
+                        mLefts[slot], mTops[slot], mRights[slot], mBottoms[slot]);
+            }
+            if (count > 0) {
+                // Ordered after the reads above, so the publisher cannot overwrite a slot still being read
+                mCursor.lazySet(cursor + count);
+            }
+            return count;
+        }
+
+        /**
+         * @return number of records waiting to be polled
+         */
+        public int getPendingCount() {
+            return (int) (mPublished.get() - mCursor.get());
+        }
+
+        /**
+         * Detaches from the bus; its records are no longer kept for this subscription.
+         */
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+
+    private final int mCapacity;
+    private final int mMask;
+    private final long[] mTimestamps;
+    private final long[] mFrameIds;
+    private final int[] mTypes;
+    private final float[] mLefts;
+    private final float[] mTops;
+    private final float[] mRights;
+    private final float[] mBottoms;
+    // Sequence after the last published record; set after the records are written
+    private final AtomicLong mPublished;
+    private volatile Subscription[] mSubscriptions;
+    private volatile long mPublishedFrameCount;
+    private volatile long mDroppedFrameCount;
+
+    /**
+     * @param capacity number of records the ring holds, a power of two; a frame takes one record more than it has
+     *                 targets
+     */
+    public DetectionEventBus(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        mCapacity = capacity;
+        mMask = capacity - 1;
+        mTimestamps = new long[capacity];
+        mFrameIds = new long[capacity];
+        mTypes = new int[capacity];
+        mLefts = new float[capacity];
+        mTops = new float[capacity];
+        mRights = new float[capacity];
+        mBottoms = new float[capacity];
+        mPublished = new AtomicLong();
+        mSubscriptions = new Subscription[0];
+    }
+
+    /**
+     * Publishes the targets of a frame. Must only be called from one thread.
+     *
+     * @return false if the frame was dropped because a subscriber is a whole ring behind
+     */
+    public boolean publish(long timestampNanos, long frameId, TargetList targets) {
+        Subscription[] subscriptions = mSubscriptions;
+        if (subscriptions.length == 0) {
+            return true;
+        }
+        int count = targets.size();
+        long seq = mPublished.get();
+        long minCursor = seq;
+        for (Subscription subscription : subscriptions) {
+            minCursor = Math.min(minCursor, subscription.mCursor.get());
+        }
+        if (seq + count + 1 - minCursor > mCapacity) {
+            ++mDroppedFrameCount;
+            return false;
+        }
+        putRecord(seq, timestampNanos, frameId, TYPE_FRAME, 0, 0, 0, 0);
+        for (int i = 0; i < count; ++i) {
+            putRecord(seq + 1 + i, timestampNanos, frameId, targets.getType(i),
+                    targets.getLeft(i), targets.getTop(i), targets.getRight(i), targets.getBottom(i));
+        }
+        mPublished.lazySet(seq + count + 1);
+        ++mPublishedFrameCount;
+        return true;
+    }
+
+    /**
+     * Attaches a subscriber that sees the frames published from now on. Does not affect a publish in progress.
+     */
+    public synchronized Subscription subscribe() {
+        Subscription subscription = new Subscription(mPublished.get());
+        Subscription[] subscriptions = Arrays.copyOf(mSubscriptions, mSubscriptions.length + 1);
+        subscriptions[subscriptions.length - 1] = subscription;
+        mSubscriptions = subscriptions;
+        return subscription;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public int getSubscriberCount() {
+        return mSubscriptions.length;
+    }
+
+    /**
+     * @return frames copied into the ring, counting only those published while there was a subscriber
+     */
+    public long getPublishedFrameCount() {
+        return mPublishedFrameCount;
+    }
+
+    public long getDroppedFrameCount() {
+        return mDroppedFrameCount;
+    }
+
+    private synchronized void unsubscribe(Subscription subscription) {
+        Subscription[] subscriptions = mSubscriptions;
+        for (int i = 0; i < subscriptions.length; ++i) {
+            if (subscriptions[i] == subscription) {
+                Subscription[] remaining = new Subscription[subscriptions.length - 1];
+                System.arraycopy(subscriptions, 0, remaining, 0, i);
+                System.arraycopy(subscriptions, i + 1, remaining, i, remaining.length - i);
+                mSubscriptions = remaining;
+                return;
+            }
+        }
+    }
+
+    private void putRecord(long seq, long timestampNanos, long frameId, int type, float left, float top,
+            float right, float bottom) {
+        int slot = (int) seq & mMask;
+        mTimestamps[slot] = timestampNanos;
+        mFrameIds[slot] = frameId;
+        mTypes[slot] = type;
+        mLefts[slot] = left;
+        mTops[slot] = top;
+        mRights[slot] = right;
+        mBottoms[slot] = bottom;
+    }
+}
@@ -0,0 +1,268 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Subscribes to a {@link DetectionEventBus} and appends its records to a local file on a background thread,
+ * in batches, flushing at a fixed interval and on {@link #close}.
+ * <p>
+ * {@link #FORMAT_CSV} writes a header line and then {@code timestampNanos,frameId,type,left,top,right,bottom}
+ * per record. {@link #FORMAT_BINARY} writes the magic {@code HDEV} and a version int, then 33 bytes per record,
+ * big endian: the two longs, the type as a signed byte and the four floats; {@link #readBinary} reads it back.
+ */
+public class DetectionLogSink implements DetectionEventBus.RecordHandler {
+
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_BINARY = 1;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final String CSV_HEADER = "timestampNanos,frameId,type,left,top,right,bottom";
+    public static final int BINARY_MAGIC = 0x48444556;
+    public static final int BINARY_VERSION = 1;
+    /** Time the writer sleeps when the bus has nothing new; the ring must hold what is published meanwhile. */
+    private static final long POLL_INTERVAL_MILLIS = 20;
+    private static final int POLL_BATCH = 512;
+    private final DetectionEventBus mBus;
+    private final File mFile;
+    private final int mFormat;
+    private final long mFlushIntervalNanos;
+    private final Object mLock;
+    private final Thread mWriterThread;
+    private final StringBuilder mLine;
+    private DetectionEventBus.Subscription mSubscription;
+    private DataOutputStream mOut;
+    private volatile boolean mStarted;
+    private volatile boolean mClosing;
+    private volatile IOException mError;
+    private volatile long mWrittenCount;
+    private volatile long mFlushCount;
+
+    /**
+     * @param format {@link #FORMAT_CSV} or {@link #FORMAT_BINARY}
+     * @param flushIntervalMillis longest time a written record may stay in the buffer
+     */
+    public DetectionLogSink(DetectionEventBus bus, File file, int format, long flushIntervalMillis) {
+        if (format != FORMAT_CSV && format != FORMAT_BINARY) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("flushIntervalMillis must be positive: " + flushIntervalMillis);
+        }
+        mBus = bus;
+        mFile = file;
+        mFormat = format;
+        mFlushIntervalNanos = flushIntervalMillis * 1000000;
+        mLock = new Object();
+        mLine = new StringBuilder();
+        mWriterThread = new Thread(new Runnable() {
+            @Override public void run() {
+                write();
+            }
+        }, "DetectionLogSink");
+        mWriterThread.setPriority(Thread.NORM_PRIORITY - 1);
+    }
+
+    /**
+     * @return {@link #FORMAT_CSV} for a .csv file name, {@link #FORMAT_BINARY} otherwise
+     */
+    public static int formatOf(File file) {
+        return file.getName().endsWith(".csv") ? FORMAT_CSV : FORMAT_BINARY;
+    }
+
+    /**
+     * Subscribes and starts writing; records published before this are not logged.
+     */
+    public void start() {
+        if (mStarted) {
+            throw new IllegalStateException("Already started");
+        }
+        mStarted = true;
+        mSubscription = mBus.subscribe();
+        mWriterThread.start();
+    }
+
+    /**
+     * Writes what the bus still holds for this sink, unsubscribes and closes the file.
+     *
+     * @throws IOException if the file could not be written
+     */
+    public void close() throws IOException {
+        if (!mStarted || mClosing) {
+            return;
+        }
+        synchronized (mLock) {
+            mClosing = true;
+            mLock.notifyAll();
+        }
+        boolean interrupted = false;
+        while (mWriterThread.isAlive()) {
+            try {
+                mWriterThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    public int getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * @return the error that stopped the writer, or null
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    public long getWrittenRecordCount() {
+        return mWrittenCount;
+    }
+
+    public long getFlushCount() {
+        return mFlushCount;
+    }
+
+    @Override
+    public void onRecord(long timestampNanos, long frameId, int type, float left, float top, float right,
+            float bottom) {
+        try {
+            if (mFormat == FORMAT_CSV) {
+                mLine.setLength(0);
+                mLine.append(timestampNanos).append(',').append(frameId).append(',').append(type)
+                        .append(',').append(left).append(',').append(top)
+                        .append(',').append(right).append(',').append(bottom).append('\n');
+                for (int i = 0; i < mLine.length(); ++i) {
+                    mOut.write(mLine.charAt(i));
+                }
+            } else {
+                mOut.writeLong(timestampNanos);
+                mOut.writeLong(frameId);
+                mOut.writeByte(type);
+                mOut.writeFloat(left);
+                mOut.writeFloat(top);
+                mOut.writeFloat(right);
+                mOut.writeFloat(bottom);
+            }
+        } catch (IOException e) {
+            // Rethrown by write(), which cannot see it through the handler
+            throw new LogWriteException(e);
+        }
+    }
+
+    /**
+     * Reads a file written in {@link #FORMAT_BINARY}.
+     *
+     * @return number of records read
+     */
+    public static long readBinary(File file, DetectionEventBus.RecordHandler handler) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != BINARY_MAGIC) {
+                throw new IOException("Not a detection log: " + file);
+            }
+            int version = in.readInt();
+            if (version != BINARY_VERSION) {
+                throw new IOException("Unsupported detection log version " + version + ": " + file);
+            }
+            long count = 0;
+            while (true) {
+                long timestampNanos;
+                try {
+                    timestampNanos = in.readLong();
+                } catch (EOFException e) {
+                    return count;
+                }
+                handler.onRecord(timestampNanos, in.readLong(), in.readByte(),
+                        in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+                ++count;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void write() {
+        try {
+            mOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile)));
+            if (mFormat == FORMAT_CSV) {
+                mOut.writeBytes(CSV_HEADER + "\n");
+            } else {
+                mOut.writeInt(BINARY_MAGIC);
+                mOut.writeInt(BINARY_VERSION);
+            }
+            long lastFlush = System.nanoTime();
+            while (true) {
+                boolean closing = mClosing;
+                int count = mSubscription.poll(this, POLL_BATCH);
+                mWrittenCount += count;
+                if (count == 0 && closing) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (now - lastFlush >= mFlushIntervalNanos) {
+                    mOut.flush();
+                    ++mFlushCount;
+                    lastFlush = now;
+                }
+                if (count < POLL_BATCH) {
+                    synchronized (mLock) {
+                        if (!mClosing) {
+                            mLock.wait(POLL_INTERVAL_MILLIS);
+                        }
+                    }
+                }
+            }
+            mOut.flush();
+            ++mFlushCount;
+        } catch (IOException e) {
+            mError = e;
+        } catch (LogWriteException e) {
+            mError = e.getCause();
+        } catch (InterruptedException e) {
+            mError = new IOException("Interrupted while logging", e);
+        } finally {
+            mSubscription.close();
+            if (mOut != null) {
+                try {
+                    mOut.close();
+                } catch (IOException e) {
+                    if (mError == null) {
+                        mError = e;
+                    }
+                }
+            }
+        }
+    }
+
+    private static class LogWriteException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        LogWriteException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
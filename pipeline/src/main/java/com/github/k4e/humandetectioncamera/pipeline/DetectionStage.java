@@ -0,0 +1,163 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Builds one downscaled, histogram-equalized grayscale image per frame that every detector shares,
+ * and maps the detected rectangles back to the coordinates of the source frame.
+ * The image is built from an RGBA frame with {@link #prepare}, or from the luma plane of the camera buffer with
+ * {@link #prepareGray}, which skips the color conversion entirely.
+ * With a rotation set, only the small detection image is turned upright; the source frame stays as it is.
+ */
+public class DetectionStage {
+
+    public static final int DEFAULT_DETECTION_WIDTH = 480;
+    private final Mat mGrayMat;
+    private final Mat mScaledMat;
+    private final Mat mDetectionMat;
+    private final Size mResizeSize;
+    private int mDetectionWidth;
+    private double mScale;
+    private int mRotation;
+    private int mAppliedRotation;
+    private int mScaledWidth;
+    private int mScaledHeight;
+
+    public DetectionStage(int detectionWidth) {
+        mGrayMat = new Mat();
+        mScaledMat = new Mat();
+        mDetectionMat = new Mat();
+        mResizeSize = new Size();
+        setDetectionWidth(detectionWidth);
+        mScale = 1.0;
+    }
+
+    public void setDetectionWidth(int detectionWidth) {
+        if (detectionWidth <= 0) {
+            throw new IllegalArgumentException("detectionWidth must be positive: " + detectionWidth);
+        }
+        mDetectionWidth = detectionWidth;
+    }
+
+    public int getDetectionWidth() {
+        return mDetectionWidth;
+    }
+
+    /**
+     * @param degrees clockwise rotation from the source frame to the detection image, one of 0, 90, 180 and 270
+     */
+    public void setRotation(int degrees) {
+        FrameGeometry.getRotateCode(degrees);
+        mRotation = degrees;
+    }
+
+    public int getRotation() {
+        return mRotation;
+    }
+
+    /**
+     * @return detection image size divided by source frame size
+     */
+    public double getScale() {
+        return mScale;
+    }
+
+    public Mat getDetectionMat() {
+        return mDetectionMat;
+    }
+
+    /**
+     * @return the full resolution grayscale frame of the last {@link #prepare}, in source orientation
+     */
+    public Mat getGrayMat() {
+        return mGrayMat;
+    }
+
+    public void prepare(Mat rgba) {
+        Imgproc.cvtColor(rgba, mGrayMat, Imgproc.COLOR_RGBA2GRAY);
+        prepareGray(mGrayMat);
+    }
+
+    /**
+     * @param gray 8-bit single channel frame, e.g. the Y plane of an NV21 buffer; only read
+     */
+    public void prepareGray(Mat gray) {
+        int width = gray.cols();
+        int height = gray.rows();
+        int rotation = mRotation;
+        Mat scaled = rotation == 0 ? mDetectionMat : mScaledMat;
+        int uprightWidth = rotation == 90 || rotation == 270 ? height : width;
+        if (uprightWidth > mDetectionWidth) {
+            mScale = (double) mDetectionWidth / uprightWidth;
+            mResizeSize.width = Math.max(1, (int) Math.round(width * mScale));
+            mResizeSize.height = Math.max(1, (int) Math.round(height * mScale));
+            Imgproc.resize(gray, scaled, mResizeSize, 0, 0, Imgproc.INTER_AREA);
+            Imgproc.equalizeHist(scaled, scaled);
+        } else {
+            mScale = 1.0;
+            Imgproc.equalizeHist(gray, scaled);
+        }
+        mScaledWidth = scaled.cols();
+        mScaledHeight = scaled.rows();
+        mAppliedRotation = rotation;
+        if (rotation != 0) {
+            Core.rotate(scaled, mDetectionMat, FrameGeometry.getRotateCode(rotation));
+        }
+    }
+
+    /**
+     * Runs one detector on the prepared detection image.
+     */
+    public int detect(Detector detector, DetectorParams params, MatOfRect out) {
+        return detector.detect(mDetectionMat, mScale, params, out);
+    }
+
+    /**
+     * Maps an {x, y, width, height} rectangle from detection image coordinates back to the source frame in place.
+     */
+    public void mapToSource(int[] rect) {
+        if (mAppliedRotation != 0) {
+            boolean swapped = mAppliedRotation == 90 || mAppliedRotation == 270;
+            FrameGeometry.rotate(rect, (360 - mAppliedRotation) % 360,
+                    swapped ? mScaledHeight : mScaledWidth, swapped ? mScaledWidth : mScaledHeight);
+        }
+        if (mScale == 1.0) {
+            return;
+        }
+        double inv = 1.0 / mScale;
+        int left = (int) Math.round(rect[0] * inv);
+        int top = (int) Math.round(rect[1] * inv);
+        int right = (int) Math.round((rect[0] + rect[2]) * inv);
+        int bottom = (int) Math.round((rect[1] + rect[3]) * inv);
+        rect[0] = left;
+        rect[1] = top;
+        rect[2] = right - left;
+        rect[3] = bottom - top;
+    }
+
+    /**
+     * Maps an {x, y, width, height} rectangle from the source frame to detection image coordinates in place,
+     * rounding outwards and clamping to the detection image.
+     */
+    public void mapFromSource(int[] rect) {
+        int left = Math.max(0, (int) Math.floor(rect[0] * mScale));
+        int top = Math.max(0, (int) Math.floor(rect[1] * mScale));
+        int right = Math.min(mScaledWidth, (int) Math.ceil((rect[0] + rect[2]) * mScale));
+        int bottom = Math.min(mScaledHeight, (int) Math.ceil((rect[1] + rect[3]) * mScale));
+        rect[0] = left;
+        rect[1] = top;
+        rect[2] = Math.max(0, right - left);
+        rect[3] = Math.max(0, bottom - top);
+        FrameGeometry.rotate(rect, mAppliedRotation, mScaledWidth, mScaledHeight);
+    }
+
+    public void release() {
+        mGrayMat.release();
+        mScaledMat.release();
+        mDetectionMat.release();
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+
+/**
+ * One object detector run on the shared detection image of {@link DetectionStage}.
+ * An instance keeps its own scratch buffers, so it must be used by one thread at a time; the model behind it,
+ * such as a loaded cascade, may be shared.
+ */
+public interface Detector {
+
+    /**
+     * @return short name of the backend, for logs and the UI
+     */
+    String getName();
+
+    /**
+     * Detects on an 8-bit grayscale image. Sizes in params are in preview pixels and are multiplied by scale.
+     *
+     * @param scale detection image size divided by preview size
+     * @param out receives the found rectangles in detection image coordinates; only the first rows up to the
+     *            returned count are valid
+     * @return number of rectangles found
+     */
+    int detect(Mat detectionMat, double scale, DetectorParams params, MatOfRect out);
+
+    /**
+     * Frees the buffers of this instance, not a shared model.
+     */
+    void release();
+}
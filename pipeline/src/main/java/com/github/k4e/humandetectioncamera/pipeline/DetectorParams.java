@@ -0,0 +1,46 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+/**
+ * Tuning parameters of a {@link Detector}, named after those of {@code CascadeClassifier.detectMultiScale};
+ * other backends map them to their nearest equivalent, see {@link HogDetector}.
+ * Sizes are given in preview pixels and are scaled along with the detection image.
+ * A max size of 0 means unbounded.
+ */
+public class DetectorParams {
+
+    public static final DetectorParams DEFAULT_FACE = new DetectorParams(1.1, 3, 24, 0);
+    public static final DetectorParams DEFAULT_BODY = new DetectorParams(1.1, 3, 48, 0);
+    private final double mScaleFactor;
+    private final int mMinNeighbors;
+    private final int mMinSize;
+    private final int mMaxSize;
+
+    public DetectorParams(double scaleFactor, int minNeighbors, int minSize, int maxSize) {
+        if (scaleFactor <= 1.0) {
+            throw new IllegalArgumentException("scaleFactor must be greater than 1: " + scaleFactor);
+        }
+        if (minNeighbors < 0 || minSize < 0 || maxSize < 0) {
+            throw new IllegalArgumentException("minNeighbors, minSize and maxSize must not be negative");
+        }
+        mScaleFactor = scaleFactor;
+        mMinNeighbors = minNeighbors;
+        mMinSize = minSize;
+        mMaxSize = maxSize;
+    }
+
+    public double getScaleFactor() {
+        return mScaleFactor;
+    }
+
+    public int getMinNeighbors() {
+        return mMinNeighbors;
+    }
+
+    public int getMinSize() {
+        return mMinSize;
+    }
+
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+}
@@ -0,0 +1,30 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Mat;
+
+/**
+ * Turns raw preview buffers into RGBA {@link Mat}s. Implementations keep their own intermediate buffers,
+ * so the byte array passed to {@link #put} may be reused by the caller as soon as it returns.
+ */
+public interface FrameConverter {
+
+    void put(byte[] data, int width, int height);
+
+    boolean hasFrame();
+
+    void toRgba(Mat dst);
+
+    /**
+     * @return the luma plane of the current frame as a view owned by the converter, valid until the next
+     *         {@link #put}, or null if the format has no separate luma plane
+     */
+    Mat getLuma();
+
+    void convert(byte[] data, int width, int height, Mat dst);
+
+    int getWidth();
+
+    int getHeight();
+
+    void release();
+}
@@ -0,0 +1,148 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Relation between the camera frame as delivered by the sensor and the image shown on screen.
+ * The display image is the sensor image mirrored horizontally for a front camera, then rotated clockwise by the
+ * display orientation, as with {@code Camera.setDisplayOrientation}. Rectangles are {x, y, width, height} in
+ * pixels and are transformed analytically, so frames never need to be rotated to place targets on screen.
+ */
+public class FrameGeometry {
+
+    private final int mDisplayOrientation;
+    private final boolean mMirrored;
+
+    /**
+     * @param displayOrientation clockwise rotation in degrees, one of 0, 90, 180 and 270
+     * @param mirrored whether the display image is mirrored, as for a front camera
+     */
+    public FrameGeometry(int displayOrientation, boolean mirrored) {
+        if (displayOrientation != 0 && displayOrientation != 90 && displayOrientation != 180
+                && displayOrientation != 270) {
+            throw new IllegalArgumentException("displayOrientation must be 0, 90, 180 or 270: " + displayOrientation);
+        }
+        mDisplayOrientation = displayOrientation;
+        mMirrored = mirrored;
+    }
+
+    public int getDisplayOrientation() {
+        return mDisplayOrientation;
+    }
+
+    public boolean isMirrored() {
+        return mMirrored;
+    }
+
+    /**
+     * @return whether width and height trade places on screen
+     */
+    public boolean isSwapped() {
+        return mDisplayOrientation == 90 || mDisplayOrientation == 270;
+    }
+
+    public int getDisplayWidth(int sensorWidth, int sensorHeight) {
+        return isSwapped() ? sensorHeight : sensorWidth;
+    }
+
+    public int getDisplayHeight(int sensorWidth, int sensorHeight) {
+        return isSwapped() ? sensorWidth : sensorHeight;
+    }
+
+    /**
+     * Maps a rectangle from sensor to display coordinates in place.
+     */
+    public void toDisplay(int[] rect, int sensorWidth, int sensorHeight) {
+        if (mMirrored) {
+            mirror(rect, sensorWidth);
+        }
+        rotate(rect, mDisplayOrientation, sensorWidth, sensorHeight);
+    }
+
+    /**
+     * Maps a rectangle from display to sensor coordinates in place.
+     */
+    public void toSensor(int[] rect, int sensorWidth, int sensorHeight) {
+        rotate(rect, (360 - mDisplayOrientation) % 360,
+                getDisplayWidth(sensorWidth, sensorHeight), getDisplayHeight(sensorWidth, sensorHeight));
+        if (mMirrored) {
+            mirror(rect, sensorWidth);
+        }
+    }
+
+    /**
+     * Writes the display image of a sensor image. dst must not be src.
+     * Mirroring before a rotation equals mirroring along the other axis after it, so no intermediate is needed.
+     */
+    public void toDisplay(Mat src, Mat dst) {
+        int rotateCode = getRotateCode(mDisplayOrientation);
+        if (rotateCode < 0) {
+            if (mMirrored) {
+                Core.flip(src, dst, 1);
+            } else {
+                src.copyTo(dst);
+            }
+            return;
+        }
+        Core.rotate(src, dst, rotateCode);
+        if (mMirrored) {
+            Core.flip(dst, dst, isSwapped() ? 0 : 1);
+        }
+    }
+
+    /**
+     * @return the {@code Core.rotate} code of a clockwise rotation, or -1 for 0 degrees
+     */
+    public static int getRotateCode(int degrees) {
+        switch (degrees) {
+            case 0:
+                return -1;
+            case 90:
+                return Core.ROTATE_90_CLOCKWISE;
+            case 180:
+                return Core.ROTATE_180;
+            case 270:
+                return Core.ROTATE_90_COUNTERCLOCKWISE;
+            default:
+                throw new IllegalArgumentException("degrees must be 0, 90, 180 or 270: " + degrees);
+        }
+    }
+
+    /**
+     * Maps a rectangle in place from an image of the given size to the same image rotated clockwise.
+     */
+    public static void rotate(int[] rect, int degrees, int width, int height) {
+        int x = rect[0];
+        int y = rect[1];
+        int w = rect[2];
+        int h = rect[3];
+        switch (degrees) {
+            case 0:
+                return;
+            case 90:
+                rect[0] = height - y - h;
+                rect[1] = x;
+                break;
+            case 180:
+                rect[0] = width - x - w;
+                rect[1] = height - y - h;
+                return;
+            case 270:
+                rect[0] = y;
+                rect[1] = width - x - w;
+                break;
+            default:
+                throw new IllegalArgumentException("degrees must be 0, 90, 180 or 270: " + degrees);
+        }
+        rect[2] = h;
+        rect[3] = w;
+    }
+
+    /**
+     * Maps a rectangle in place to the horizontally mirrored image.
+     */
+    public static void mirror(int[] rect, int width) {
+        rect[0] = width - rect[0] - rect[2];
+    }
+}
@@ -0,0 +1,887 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.photo.Photo;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Per-frame processing of the camera preview: conversion, detection and tracking, mask rasterization and
+ * inpainting. Works only on byte buffers and {@link Mat}s, so it runs the same on a phone and on a desktop JVM
+ * with the OpenCV Java bindings.
+ * Frames are processed in sensor orientation; only the downscaled detection image is turned upright, and the
+ * output is rotated for display by the consumer, see {@link #getGeometry()}.
+ * Detection reads the luma plane of the converter when it has one, so the color conversion is only paid for
+ * frames whose output is used or inpainted, see {@link #setOutputEnable}.
+ * With the motion gate enabled, a keyframe on a static scene keeps the previous targets instead of running the
+ * detectors, and a keyframe with local changes runs them only around the changes, see {@link MotionGate}.
+ * {@link #process} must be called from one thread at a time; the setters may be called from any thread
+ * and take effect on the next frame.
+ */
+public class FramePipeline {
+
+    public static final int TARGET_FACE = 0;
+    public static final int TARGET_BODY = 1;
+    public static final int INPAINTING_FULL_FRAME = 0;
+    public static final int INPAINTING_ROI = 1;
+    public static final int INPAINTING_BACKGROUND_PLATE = 2;
+    private static final int INITIAL_TARGET_CAPACITY = 16;
+    private static final int MAX_DETECTION_THREADS = 2;
+    private static final double DETECTION_COST_SMOOTHING = 0.2;
+    private static final Scalar MASK_CLEAR = Scalar.all(0.);
+    private static final Scalar MASK_FILL = Scalar.all(255.);
+    private final DetectionStage mDetectionStage;
+    private final ParallelDetectionExecutor mDetectionExecutor;
+    private final int mFaceDetectorIndex;
+    private final int mBodyDetectorIndex;
+    private final AtomicReference<Detector> mPendingFaceDetector;
+    private final AtomicReference<Detector> mPendingBodyDetector;
+    private final TargetTracker mTracker;
+    private final RoiInpainter mRoiInpainter;
+    private final BackgroundPlate mBackgroundPlate;
+    private final TargetList mTargets;
+    private final StageTimer mStageTimer;
+    private final QualityGovernor mQualityGovernor;
+    private final MotionGate mMotionGate;
+    private final int[] mRegionBuffer;
+    private final int[] mRectBuffer;
+    private final int[] mDisplayRectBuffer;
+    private final Point mMaskCenter;
+    private final Size mMaskAxes;
+    private volatile boolean mFaceDetectionEnable;
+    private volatile boolean mBodyDetectionEnable;
+    private volatile boolean mInpaintingOn;
+    private volatile boolean mParallelDetectionEnable;
+    private volatile int mInpaintingMode;
+    private volatile boolean mInpaintingCacheEnable;
+    private volatile boolean mTrackingEnable;
+    private volatile int mKeyframeInterval;
+    private volatile int mDetectionWidth;
+    private volatile DetectorParams mFaceDetectorParams;
+    private volatile DetectorParams mBodyDetectorParams;
+    private volatile boolean mQualityGovernorEnable;
+    private volatile FrameGeometry mGeometry;
+    private volatile boolean mResetRequested;
+    private volatile Detector mFaceDetector;
+    private volatile Detector mBodyDetector;
+    private volatile int mQualityLevel;
+    private volatile QualityGovernor.Level mGovernedLevel;
+    private volatile boolean mMotionGateEnable;
+    private volatile boolean mOutputEnable;
+    private volatile int mFaceCount;
+    private volatile int mBodyCount;
+    private volatile long mMotionSkippedCount;
+    private volatile long mMotionRegionCount;
+    private volatile long mMotionFullFrameCount;
+    private volatile long mMotionSavedNanos;
+    private boolean mMotionGateApplied;
+    private boolean mBackgroundPlateApplied;
+    private double mFullDetectionNanos;
+    private boolean mTrackedFace;
+    private boolean mTrackedBody;
+    private boolean mKeyframe;
+    private FrameGeometry mFrameGeometry;
+    private QualityGovernor.Level mFrameLevel;
+    private Mat mImageMat;
+    private Mat mMaskMat;
+    private Mat mInpaintInMat;
+    private Mat mInpaintOutMat;
+    private Mat mUnfilledMaskMat;
+    private Mat mOutputMat;
+    private int mMatAllocationCount;
+
+    public FramePipeline(int displayOrientation) {
+        this(new FrameGeometry(displayOrientation, false));
+    }
+
+    public FramePipeline(FrameGeometry geometry) {
+        mGeometry = geometry;
+        mDetectionWidth = DetectionStage.DEFAULT_DETECTION_WIDTH;
+        mDetectionStage = new DetectionStage(mDetectionWidth);
+        mFaceDetectorParams = DetectorParams.DEFAULT_FACE;
+        mBodyDetectorParams = DetectorParams.DEFAULT_BODY;
+        mDetectionExecutor = new ParallelDetectionExecutor(
+                Math.min(MAX_DETECTION_THREADS, Runtime.getRuntime().availableProcessors()));
+        mFaceDetectorIndex = mDetectionExecutor.addDetector(null, mFaceDetectorParams);
+        mBodyDetectorIndex = mDetectionExecutor.addDetector(null, mBodyDetectorParams);
+        mPendingFaceDetector = new AtomicReference<>();
+        mPendingBodyDetector = new AtomicReference<>();
+        mParallelDetectionEnable = true;
+        mOutputEnable = true;
+        mKeyframeInterval = TargetTracker.DEFAULT_KEYFRAME_INTERVAL;
+        mTracker = new TargetTracker(mKeyframeInterval, TargetTracker.DEFAULT_MIN_CONFIDENCE);
+        mTrackingEnable = true;
+        mRoiInpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        mBackgroundPlate = new BackgroundPlate(BackgroundPlate.DEFAULT_LEARNING_RATE,
+                BackgroundPlate.DEFAULT_WARMUP_FRAMES, BackgroundPlate.DEFAULT_EXCLUSION_PADDING);
+        mInpaintingMode = INPAINTING_ROI;
+        mInpaintingCacheEnable = true;
+        mTargets = new TargetList(INITIAL_TARGET_CAPACITY);
+        mStageTimer = new StageTimer();
+        mQualityGovernor = new QualityGovernor(QualityGovernor.getDefaultLevels(), QualityGovernor.DEFAULT_TARGET_FPS);
+        mQualityLevel = -1;
+        mMotionGate = new MotionGate(MotionGate.DEFAULT_WIDTH);
+        mRegionBuffer = new int[MotionGate.MAX_REGIONS * 4];
+        mRectBuffer = new int[4];
+        mDisplayRectBuffer = new int[4];
+        mMaskCenter = new Point();
+        mMaskAxes = new Size();
+    }
+
+    /**
+     * Loads Haar cascades from files; a cascade that cannot be loaded leaves its detector unset.
+     */
+    public void loadDetectors(String faceCascadeFilename, String bodyCascadeFilename) {
+        setDetectors(CascadeDetector.load(CascadeDetector.HAAR, faceCascadeFilename),
+                CascadeDetector.load(CascadeDetector.HAAR, bodyCascadeFilename));
+    }
+
+    /**
+     * Sets both detectors, see {@link #setFaceDetector}. A null detector keeps the current one.
+     * Until a detector is set, frames are processed without that detection.
+     */
+    public void setDetectors(Detector faceDetector, Detector bodyDetector) {
+        if (faceDetector != null) {
+            setFaceDetector(faceDetector);
+        }
+        if (bodyDetector != null) {
+            setBodyDetector(bodyDetector);
+        }
+    }
+
+    /**
+     * Switches the face detector from the next frame on. The pipeline takes over the detector and releases it
+     * when it is replaced or the pipeline is released.
+     */
+    public void setFaceDetector(Detector detector) {
+        if (detector == null) {
+            throw new IllegalArgumentException("detector must not be null");
+        }
+        Detector replaced = mPendingFaceDetector.getAndSet(detector);
+        if (replaced != null && replaced != detector) {
+            replaced.release();
+        }
+    }
+
+    public void setBodyDetector(Detector detector) {
+        if (detector == null) {
+            throw new IllegalArgumentException("detector must not be null");
+        }
+        Detector replaced = mPendingBodyDetector.getAndSet(detector);
+        if (replaced != null && replaced != detector) {
+            replaced.release();
+        }
+    }
+
+    /**
+     * @return the face detector in use, or null before one was set and a frame processed
+     */
+    public Detector getFaceDetector() {
+        return mFaceDetector;
+    }
+
+    public Detector getBodyDetector() {
+        return mBodyDetector;
+    }
+
+    public boolean hasDetectors() {
+        return mFaceDetector != null || mBodyDetector != null
+                || mPendingFaceDetector.get() != null || mPendingBodyDetector.get() != null;
+    }
+
+    /**
+     * Processes the frame currently held by the converter.
+     *
+     * @return false if the converter has no frame yet, in which case there is no output
+     */
+    public boolean process(FrameConverter converter) {
+        if (!converter.hasFrame()) {
+            return false;
+        }
+        long processStart = System.nanoTime();
+        int pvWidth = converter.getWidth();
+        int pvHeight = converter.getHeight();
+        if (mImageMat == null) {
+            mImageMat = trackMat(new Mat());
+            mMaskMat = trackMat(new Mat());
+            mInpaintInMat = trackMat(new Mat());
+            mInpaintOutMat = trackMat(new Mat());
+            mUnfilledMaskMat = trackMat(new Mat());
+        }
+        boolean inpaintingOn = mInpaintingOn;
+        boolean colorNeeded = mOutputEnable || inpaintingOn;
+        Mat luma = converter.getLuma();
+        long t = processStart;
+        if (luma == null) {
+            converter.toRgba(mImageMat);
+            t = mStageTimer.record(StageTimer.CONVERSION, t);
+        }
+        FrameGeometry geometry = mGeometry;
+        if (geometry != mFrameGeometry) {
+            mDetectionStage.setRotation(geometry.getDisplayOrientation());
+            mFrameGeometry = geometry;
+            mTracker.requestKeyframe();
+            mMotionGate.reset();
+        }
+        QualityGovernor.Level level = mQualityGovernorEnable ? mGovernedLevel : null;
+        mFrameLevel = level;
+        int detectionWidth = level != null ? level.getDetectionWidth() : mDetectionWidth;
+        if (detectionWidth != mDetectionStage.getDetectionWidth()) {
+            // Tracks and their templates are in detection pixels of the previous width
+            mDetectionStage.setDetectionWidth(detectionWidth);
+            mTracker.requestKeyframe();
+            mMotionGate.reset();
+        }
+        if (mResetRequested) {
+            mResetRequested = false;
+            mTracker.requestKeyframe();
+            mMotionGate.reset();
+            mRoiInpainter.clearCache();
+            mBackgroundPlate.reset();
+        }
+        Detector pendingFaceDetector = mPendingFaceDetector.getAndSet(null);
+        if (pendingFaceDetector != null) {
+            replaceDetector(mFaceDetectorIndex, pendingFaceDetector);
+            mFaceDetector = pendingFaceDetector;
+        }
+        Detector pendingBodyDetector = mPendingBodyDetector.getAndSet(null);
+        if (pendingBodyDetector != null) {
+            replaceDetector(mBodyDetectorIndex, pendingBodyDetector);
+            mBodyDetector = pendingBodyDetector;
+        }
+        boolean faceDetectionEnable = mFaceDetectionEnable && mFaceDetector != null;
+        boolean bodyDetectionEnable = mBodyDetectionEnable && mBodyDetector != null;
+        mTracker.setKeyframeInterval(level != null ? level.getKeyframeInterval() : mKeyframeInterval);
+        if (faceDetectionEnable != mTrackedFace || bodyDetectionEnable != mTrackedBody) {
+            mTracker.requestKeyframe();
+            mTrackedFace = faceDetectionEnable;
+            mTrackedBody = bodyDetectionEnable;
+        }
+        mKeyframe = false;
+        if (faceDetectionEnable || bodyDetectionEnable) {
+            if (luma != null) {
+                mDetectionStage.prepareGray(luma);
+            } else {
+                mDetectionStage.prepare(mImageMat);
+            }
+            Mat detectionMat = mDetectionStage.getDetectionMat();
+            t = mStageTimer.record(StageTimer.DETECTION_PREPARE, t);
+            boolean tracked = mTrackingEnable && !mTracker.needsDetection() && mTracker.track(detectionMat);
+            if (tracked) {
+                t = mStageTimer.record(StageTimer.TRACKING, t);
+            } else {
+                detectKeyframe(converter, detectionMat, faceDetectionEnable, bodyDetectionEnable);
+                t = System.nanoTime();
+            }
+        } else {
+            mTracker.startKeyframe();
+        }
+        int targetCount = mTracker.size();
+        mTargets.clear();
+        for (int i = 0; i < targetCount; ++i) {
+            readTrackedRect(i);
+            addTarget(pvWidth, pvHeight, mRectBuffer, mTracker.getType(i));
+        }
+        if (!colorNeeded) {
+            mOutputMat = null;
+            finishFrame(processStart);
+            return true;
+        }
+        if (luma != null) {
+            converter.toRgba(mImageMat);
+            t = mStageTimer.record(StageTimer.CONVERSION, t);
+        }
+        mMaskMat.create(pvHeight, pvWidth, CvType.CV_8UC1);
+        mMaskMat.setTo(MASK_CLEAR);
+        int inpaintingMode = mInpaintingMode;
+        if (level != null && inpaintingMode != INPAINTING_BACKGROUND_PLATE) {
+            // A plate chosen by hand is kept, it is already cheaper than any level
+            inpaintingMode = level.getInpaintingMode();
+        }
+        boolean backgroundPlate = inpaintingOn && inpaintingMode == INPAINTING_BACKGROUND_PLATE;
+        if (backgroundPlate != mBackgroundPlateApplied) {
+            // A plate left from an earlier use of the mode is stale, so it is learned anew
+            mBackgroundPlate.reset();
+            mBackgroundPlateApplied = backgroundPlate;
+        }
+        if (backgroundPlate) {
+            mBackgroundPlate.beginFrame(pvWidth, pvHeight);
+        }
+        if (inpaintingOn && targetCount > 0) {
+            mRoiInpainter.clearRegions();
+            for (int i = 0; i < targetCount; ++i) {
+                readTrackedRect(i);
+                addMask(mRectBuffer);
+                mRoiInpainter.addRegion(mRectBuffer[0], mRectBuffer[1], mRectBuffer[2], mRectBuffer[3]);
+                if (backgroundPlate) {
+                    mBackgroundPlate.excludeRegion(mRectBuffer[0], mRectBuffer[1], mRectBuffer[2], mRectBuffer[3]);
+                }
+            }
+        }
+        t = mStageTimer.record(StageTimer.MASK, t);
+        if (backgroundPlate) {
+            mBackgroundPlate.update(mImageMat);
+        }
+        mOutputMat = mImageMat;
+        if (inpaintingOn && targetCount > 0) {
+            Mat unfilledMask = mMaskMat;
+            if (backgroundPlate && mBackgroundPlate.isReady()) {
+                // Whatever the plate has never seen without a target is inpainted around the filled pixels
+                unfilledMask = mBackgroundPlate.fill(mImageMat, mMaskMat, mUnfilledMaskMat)
+                        ? mUnfilledMaskMat : null;
+            }
+            if (unfilledMask != null && inpaintingMode != INPAINTING_FULL_FRAME) {
+                mRoiInpainter.setTemporalReuse(mInpaintingCacheEnable);
+                mRoiInpainter.inpaint(mImageMat, unfilledMask);
+            } else if (unfilledMask != null) {
+                Imgproc.cvtColor(mImageMat, mInpaintInMat, Imgproc.COLOR_BGRA2BGR);
+                Photo.inpaint(mInpaintInMat, unfilledMask, mInpaintOutMat, 1, Photo.INPAINT_TELEA);
+                mOutputMat = mInpaintOutMat;
+            }
+        }
+        if (inpaintingOn) {
+            mStageTimer.record(StageTimer.INPAINTING, t);
+        }
+        finishFrame(processStart);
+        return true;
+    }
+
+    /**
+     * @return the processed image of the last frame in sensor orientation, RGBA or RGB, owned by the pipeline,
+     *         or null if neither the output nor inpainting was enabled
+     */
+    public Mat getOutput() {
+        return mOutputMat;
+    }
+
+    /**
+     * @return the targets of the last frame relative to the display image, owned by the pipeline
+     */
+    public TargetList getTargets() {
+        return mTargets;
+    }
+
+    public FrameGeometry getGeometry() {
+        return mGeometry;
+    }
+
+    public Mat getMask() {
+        return mMaskMat;
+    }
+
+    /**
+     * @return whether the last frame ran the detectors instead of tracking
+     */
+    public boolean isKeyframe() {
+        return mKeyframe;
+    }
+
+    /**
+     * @return number of faces found by the last detection, skipped keyframes left aside
+     */
+    public int getFaceCount() {
+        return mFaceCount;
+    }
+
+    public int getBodyCount() {
+        return mBodyCount;
+    }
+
+    public boolean isFaceDetectionEnable() {
+        return mFaceDetectionEnable;
+    }
+
+    public boolean isBodyDetectionEnable() {
+        return mBodyDetectionEnable;
+    }
+
+    public boolean isInpaintingOn() {
+        return mInpaintingOn;
+    }
+
+    public boolean isParallelDetectionEnable() {
+        return mParallelDetectionEnable;
+    }
+
+    public long getFaceDetectionLatencyNanos() {
+        return mDetectionExecutor.getLatencyNanos(mFaceDetectorIndex);
+    }
+
+    public long getBodyDetectionLatencyNanos() {
+        return mDetectionExecutor.getLatencyNanos(mBodyDetectorIndex);
+    }
+
+    public long getDetectionLatencyNanos() {
+        return mDetectionExecutor.getFrameLatencyNanos();
+    }
+
+    public long getSequentialDetectionLatencyNanos() {
+        return mDetectionExecutor.getSequentialLatencyNanos();
+    }
+
+    public int getInpaintingMode() {
+        return mInpaintingMode;
+    }
+
+    public boolean isBackgroundPlateReady() {
+        return mBackgroundPlate.isReady();
+    }
+
+    public boolean isInpaintingCacheEnable() {
+        return mInpaintingCacheEnable;
+    }
+
+    public long getInpaintingCacheHitCount() {
+        return mRoiInpainter.getCacheHitCount();
+    }
+
+    public long getInpaintingCacheMissCount() {
+        return mRoiInpainter.getCacheMissCount();
+    }
+
+    /**
+     * @return fraction of inpainted regions that reused the previous result, or 0 before any region was inpainted
+     */
+    public double getInpaintingCacheHitRate() {
+        long hits = mRoiInpainter.getCacheHitCount();
+        long total = hits + mRoiInpainter.getCacheMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public long getInpaintingCacheSavedNanos() {
+        return mRoiInpainter.getCacheSavedNanos();
+    }
+
+    public boolean isTrackingEnable() {
+        return mTrackingEnable;
+    }
+
+    public int getKeyframeInterval() {
+        return mKeyframeInterval;
+    }
+
+    public int getDetectionWidth() {
+        return mDetectionWidth;
+    }
+
+    public DetectorParams getFaceDetectorParams() {
+        return mFaceDetectorParams;
+    }
+
+    public DetectorParams getBodyDetectorParams() {
+        return mBodyDetectorParams;
+    }
+
+    /**
+     * @return latency histograms of the pipeline stages; callers may record their own stages into it
+     */
+    public StageTimer getStageTimer() {
+        return mStageTimer;
+    }
+
+    public boolean isQualityGovernorEnable() {
+        return mQualityGovernorEnable;
+    }
+
+    /**
+     * @return index of the quality level applied by the governor, 0 being the best, or -1 while it is disabled
+     */
+    public int getQualityLevel() {
+        return mQualityLevel;
+    }
+
+    public int getQualityLevelCount() {
+        return mQualityGovernor.getLevelCount();
+    }
+
+    public double getTargetFps() {
+        return mQualityGovernor.getTargetFps();
+    }
+
+    public boolean isOutputEnable() {
+        return mOutputEnable;
+    }
+
+    public boolean isMotionGateEnable() {
+        return mMotionGateEnable;
+    }
+
+    /**
+     * @return the gate, whose thresholds may be changed from any thread
+     */
+    public MotionGate getMotionGate() {
+        return mMotionGate;
+    }
+
+    /**
+     * @return number of keyframes that kept the previous targets because nothing moved
+     */
+    public long getMotionSkippedCount() {
+        return mMotionSkippedCount;
+    }
+
+    /**
+     * @return number of keyframes that ran the detectors only around the changed regions
+     */
+    public long getMotionRegionCount() {
+        return mMotionRegionCount;
+    }
+
+    /**
+     * @return number of keyframes that ran the detectors on the whole frame while the gate was enabled
+     */
+    public long getMotionFullFrameCount() {
+        return mMotionFullFrameCount;
+    }
+
+    /**
+     * @return fraction of gated keyframes whose detection was skipped, or 0 before any
+     */
+    public double getMotionSkipRatio() {
+        long skipped = mMotionSkippedCount;
+        long total = skipped + mMotionRegionCount + mMotionFullFrameCount;
+        return total == 0 ? 0 : (double) skipped / total;
+    }
+
+    /**
+     * @return detector time saved by the gate, estimated against the smoothed cost of a full frame detection
+     */
+    public long getMotionSavedNanos() {
+        return mMotionSavedNanos;
+    }
+
+    public int getMatAllocationCount() {
+        return mMatAllocationCount;
+    }
+
+    public void setFaceDetectionEnable(boolean b) {
+        mFaceDetectionEnable = b;
+    }
+
+    public void setBodyDetectionEnable(boolean b) {
+        mBodyDetectionEnable = b;
+    }
+
+    public void setInpaintingOn(boolean b) {
+        mInpaintingOn = b;
+    }
+
+    public void setParallelDetectionEnable(boolean b) {
+        mParallelDetectionEnable = b;
+    }
+
+    public void setInpaintingMode(int mode) {
+        if (mode != INPAINTING_FULL_FRAME && mode != INPAINTING_ROI && mode != INPAINTING_BACKGROUND_PLATE) {
+            throw new IllegalArgumentException("Unknown inpainting mode: " + mode);
+        }
+        mInpaintingMode = mode;
+    }
+
+    public void setInpaintingCacheEnable(boolean b) {
+        mInpaintingCacheEnable = b;
+    }
+
+    public void setTrackingEnable(boolean b) {
+        mTrackingEnable = b;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframeInterval must be positive: " + keyframeInterval);
+        }
+        mKeyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * A new width makes the next frame a keyframe, since the tracked boxes cannot be carried over to it.
+     */
+    public void setDetectionWidth(int detectionWidth) {
+        if (detectionWidth <= 0) {
+            throw new IllegalArgumentException("detectionWidth must be positive: " + detectionWidth);
+        }
+        mDetectionWidth = detectionWidth;
+    }
+
+    /**
+     * Disabling the output skips the color conversion of frames that are not inpainted either, for consumers that
+     * only need the targets. Detection is unaffected.
+     */
+    public void setOutputEnable(boolean b) {
+        mOutputEnable = b;
+    }
+
+    /**
+     * Enabling starts over with a full frame detection, since the gate has no reference frame yet.
+     */
+    public void setMotionGateEnable(boolean b) {
+        mMotionGateEnable = b;
+    }
+
+    public void setFaceDetectorParams(DetectorParams params) {
+        mFaceDetectorParams = params;
+    }
+
+    public void setBodyDetectorParams(DetectorParams params) {
+        mBodyDetectorParams = params;
+    }
+
+    /**
+     * Takes effect on the next frame, e.g. after switching between the front and back camera.
+     */
+    public void setGeometry(FrameGeometry geometry) {
+        mGeometry = geometry;
+    }
+
+    /**
+     * Makes the next frame start over: targets are detected again instead of tracked, and cached inpainting
+     * and the learned background plate are dropped. Buffers are kept and only resized if the frame size changed.
+     */
+    public void requestReset() {
+        mResetRequested = true;
+    }
+
+    /**
+     * While enabled, the settings of the governor's current level are used instead of the detection width,
+     * keyframe interval, detector parameters and inpainting mode. Their setters and getters keep the manual
+     * settings meanwhile, which are used again from the next frame on once the governor is disabled.
+     */
+    public void setQualityGovernorEnable(boolean b) {
+        mQualityGovernorEnable = b;
+    }
+
+    public synchronized void setTargetFps(double targetFps) {
+        mQualityGovernor.setTargetFps(targetFps);
+    }
+
+    /**
+     * Releases every native buffer and the detectors the pipeline took over. The pipeline can be used again
+     * afterwards and reallocates on the next frame, but it has no detectors until new ones are set, so
+     * {@link #hasDetectors} returns false.
+     */
+    public void release() {
+        if (mImageMat != null) {
+            mImageMat.release();
+            mImageMat = null;
+        }
+        if (mMaskMat != null) {
+            mMaskMat.release();
+            mMaskMat = null;
+        }
+        if (mInpaintInMat != null) {
+            mInpaintInMat.release();
+            mInpaintInMat = null;
+        }
+        if (mInpaintOutMat != null) {
+            mInpaintOutMat.release();
+            mInpaintOutMat = null;
+        }
+        if (mUnfilledMaskMat != null) {
+            mUnfilledMaskMat.release();
+            mUnfilledMaskMat = null;
+        }
+        mOutputMat = null;
+        mDetectionExecutor.release();
+        mFaceDetector = null;
+        mBodyDetector = null;
+        releasePending(mPendingFaceDetector);
+        releasePending(mPendingBodyDetector);
+        mDetectionStage.release();
+        mMotionGate.release();
+        mTracker.release();
+        mRoiInpainter.release();
+        mBackgroundPlate.release();
+        mTargets.clear();
+    }
+
+    private void detectKeyframe(FrameConverter converter, Mat detectionMat, boolean faceDetectionEnable,
+            boolean bodyDetectionEnable) {
+        boolean motionGateEnable = mMotionGateEnable;
+        if (motionGateEnable != mMotionGateApplied) {
+            mMotionGate.reset();
+            mMotionGateApplied = motionGateEnable;
+        }
+        int motion = MotionGate.MOTION_FULL_FRAME;
+        if (motionGateEnable) {
+            long start = System.nanoTime();
+            Mat luma = converter.getLuma();
+            motion = mMotionGate.update(luma != null ? luma : mDetectionStage.getGrayMat());
+            mStageTimer.record(StageTimer.MOTION, start);
+            if (mTracker.isKeyframeRequested()) {
+                motion = MotionGate.MOTION_FULL_FRAME;
+            }
+        }
+        mDetectionExecutor.setEnabled(mFaceDetectorIndex, faceDetectionEnable);
+        mDetectionExecutor.setEnabled(mBodyDetectorIndex, bodyDetectionEnable);
+        QualityGovernor.Level level = mFrameLevel;
+        mDetectionExecutor.setParams(mFaceDetectorIndex,
+                level != null ? level.getFaceDetectorParams() : mFaceDetectorParams);
+        mDetectionExecutor.setParams(mBodyDetectorIndex,
+                level != null ? level.getBodyDetectorParams() : mBodyDetectorParams);
+        mDetectionExecutor.setParallel(mParallelDetectionEnable);
+        if (motion == MotionGate.MOTION_NONE) {
+            mTracker.skipKeyframe();
+            ++mMotionSkippedCount;
+            mMotionSavedNanos += (long) mFullDetectionNanos;
+            return;
+        }
+        long faceNanos = 0;
+        long bodyNanos = 0;
+        long detectionNanos = 0;
+        int faceCount = 0;
+        int bodyCount = 0;
+        if (motion == MotionGate.MOTION_REGIONS) {
+            int regionCount = mMotionGate.getRegionCount();
+            for (int i = 0; i < regionCount; ++i) {
+                mMotionGate.getRegion(i, mRectBuffer);
+                mDetectionStage.mapFromSource(mRectBuffer);
+                System.arraycopy(mRectBuffer, 0, mRegionBuffer, i * 4, 4);
+            }
+            mTracker.startPartialKeyframe(mRegionBuffer, regionCount);
+            for (int i = 0; i < regionCount; ++i) {
+                int o = i * 4;
+                int x = mRegionBuffer[o];
+                int y = mRegionBuffer[o + 1];
+                int w = mRegionBuffer[o + 2];
+                int h = mRegionBuffer[o + 3];
+                if (w <= 0 || h <= 0) {
+                    continue;
+                }
+                Mat regionMat = detectionMat.submat(y, y + h, x, x + w);
+                try {
+                    mDetectionExecutor.run(regionMat, mDetectionStage.getScale());
+                } finally {
+                    regionMat.release();
+                }
+                faceNanos += mDetectionExecutor.getLatencyNanos(mFaceDetectorIndex);
+                bodyNanos += mDetectionExecutor.getLatencyNanos(mBodyDetectorIndex);
+                detectionNanos += mDetectionExecutor.getFrameLatencyNanos();
+                faceCount += addTracks(detectionMat, mFaceDetectorIndex, TARGET_FACE, x, y);
+                bodyCount += addTracks(detectionMat, mBodyDetectorIndex, TARGET_BODY, x, y);
+            }
+            ++mMotionRegionCount;
+            mMotionSavedNanos += Math.max(0, (long) mFullDetectionNanos - detectionNanos);
+        } else {
+            mDetectionExecutor.run(detectionMat, mDetectionStage.getScale());
+            faceNanos = mDetectionExecutor.getLatencyNanos(mFaceDetectorIndex);
+            bodyNanos = mDetectionExecutor.getLatencyNanos(mBodyDetectorIndex);
+            detectionNanos = mDetectionExecutor.getFrameLatencyNanos();
+            mFullDetectionNanos = mFullDetectionNanos == 0 ? detectionNanos
+                    : mFullDetectionNanos + DETECTION_COST_SMOOTHING * (detectionNanos - mFullDetectionNanos);
+            mTracker.startKeyframe();
+            faceCount = addTracks(detectionMat, mFaceDetectorIndex, TARGET_FACE, 0, 0);
+            bodyCount = addTracks(detectionMat, mBodyDetectorIndex, TARGET_BODY, 0, 0);
+            if (motionGateEnable) {
+                ++mMotionFullFrameCount;
+            }
+        }
+        if (motionGateEnable) {
+            mMotionGate.acceptFrame();
+        }
+        if (faceDetectionEnable) {
+            mStageTimer.recordNanos(StageTimer.FACE_DETECTION, faceNanos);
+        }
+        if (bodyDetectionEnable) {
+            mStageTimer.recordNanos(StageTimer.BODY_DETECTION, bodyNanos);
+        }
+        mFaceCount = faceCount;
+        mBodyCount = bodyCount;
+        mKeyframe = true;
+    }
+
+    /**
+     * Adds the results of a detector slot as tracks, offset by the origin of the region they were detected in.
+     *
+     * @return number of results
+     */
+    private int addTracks(Mat detectionMat, int detectorIndex, int targetType, int offsetX, int offsetY) {
+        int count = mDetectionExecutor.getResultCount(detectorIndex);
+        MatOfRect mor = mDetectionExecutor.getResult(detectorIndex);
+        for (int i = 0; i < count; ++i) {
+            mor.get(i, 0, mRectBuffer);
+            mRectBuffer[0] += offsetX;
+            mRectBuffer[1] += offsetY;
+            mTracker.addTrack(detectionMat, targetType, mRectBuffer);
+        }
+        return count;
+    }
+
+    private void finishFrame(long processStart) {
+        long processNanos = System.nanoTime() - processStart;
+        mStageTimer.recordNanos(StageTimer.PROCESS, processNanos);
+        governQuality(processNanos);
+    }
+
+    private void replaceDetector(int index, Detector detector) {
+        Detector previous = mDetectionExecutor.setDetector(index, detector);
+        if (previous != null && previous != detector) {
+            previous.release();
+        }
+        mTracker.requestKeyframe();
+    }
+
+    private static void releasePending(AtomicReference<Detector> pending) {
+        Detector detector = pending.getAndSet(null);
+        if (detector != null) {
+            detector.release();
+        }
+    }
+
+    private synchronized void governQuality(long processNanos) {
+        if (!mQualityGovernorEnable) {
+            if (mQualityLevel >= 0) {
+                mQualityGovernor.reset();
+                mQualityLevel = -1;
+                mGovernedLevel = null;
+            }
+            return;
+        }
+        mQualityGovernor.onFrame(processNanos);
+        int level = mQualityGovernor.getLevelIndex();
+        if (level != mQualityLevel) {
+            mGovernedLevel = mQualityGovernor.getLevel();
+            mQualityLevel = level;
+        }
+    }
+
+    private void readTrackedRect(int index) {
+        mTracker.getRect(index, mRectBuffer);
+        mDetectionStage.mapToSource(mRectBuffer);
+    }
+
+    private void addTarget(int pvWidth, int pvHeight, int[] rect, int targetType) {
+        int[] displayRect = mDisplayRectBuffer;
+        System.arraycopy(rect, 0, displayRect, 0, 4);
+        FrameGeometry geometry = mFrameGeometry;
+        geometry.toDisplay(displayRect, pvWidth, pvHeight);
+        int displayWidth = geometry.getDisplayWidth(pvWidth, pvHeight);
+        int displayHeight = geometry.getDisplayHeight(pvWidth, pvHeight);
+        float left = (float) displayRect[0] / displayWidth;
+        float top = (float) displayRect[1] / displayHeight;
+        float right = left + ((float) displayRect[2] / displayWidth);
+        float bottom = top + ((float) displayRect[3] / displayHeight);
+        mTargets.add(targetType, left, top, right, bottom);
+    }
+
+    private void addMask(int[] rect) {
+        int x = rect[0];
+        int y = rect[1];
+        int w = rect[2];
+        int h = rect[3];
+        mMaskCenter.x = x + w / 2;
+        mMaskCenter.y = y + h / 2;
+        mMaskAxes.width = w / 2;
+        mMaskAxes.height = h / 2;
+        Imgproc.ellipse(mMaskMat, mMaskCenter, mMaskAxes, 0, 0, 360, MASK_FILL, -1);
+    }
+
+    private <T extends Mat> T trackMat(T mat) {
+        ++mMatAllocationCount;
+        return mat;
+    }
+}
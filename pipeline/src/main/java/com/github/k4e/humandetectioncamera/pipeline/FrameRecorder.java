@@ -0,0 +1,357 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.videoio.VideoWriter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Records processed frames to a Motion JPEG AVI file on a background encoder thread.
+ * {@link #submit} copies the frame into one of a fixed number of preallocated slots and queues it without ever
+ * blocking; when every slot is taken the frame is dropped according to the drop policy.
+ * Next to the video a text sidecar holds one line per written frame:
+ * {@code index timestampNanos targetCount} followed by {@code type left top right bottom} for each target,
+ * with boxes normalized to the display image as in {@link TargetList}.
+ * Frames are written in display orientation when a {@link FrameGeometry} is set.
+ * Frames of another size than the first one are scaled to it, since an AVI file has a single frame size.
+ */
+public class FrameRecorder {
+
+    /** A frame arriving at a full queue is dropped. */
+    public static final int DROP_NEWEST = 0;
+    /** The oldest queued frame is dropped to make room for the arriving one. */
+    public static final int DROP_OLDEST = 1;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+    public static final String SIDECAR_SUFFIX = ".frames.txt";
+    private final File mVideoFile;
+    private final File mSidecarFile;
+    private final double mFps;
+    private final int mDropPolicy;
+    private final int mQueueCapacity;
+    private final BlockingQueue<Slot> mFreeSlots;
+    private final BlockingQueue<Slot> mQueuedSlots;
+    private final Slot mEndOfStream;
+    private final Thread mEncoderThread;
+    private volatile FrameGeometry mGeometry;
+    private volatile boolean mStarted;
+    private volatile boolean mClosed;
+    private volatile IOException mError;
+    private volatile long mSubmittedCount;
+    private volatile long mDroppedCount;
+    private volatile long mWrittenCount;
+    private volatile int mMaxQueueDepth;
+    private volatile long mEncodeNanos;
+    private volatile long mFirstWriteNanos;
+    private volatile long mLastWriteNanos;
+    private long mFrameIndex;
+
+    /**
+     * @param videoFile destination of the video, normally with the .avi extension
+     * @param fps frame rate stored in the file; the real capture times are in the sidecar
+     * @param queueCapacity number of frames that may wait while the encoder writes another one
+     * @param dropPolicy {@link #DROP_NEWEST} or {@link #DROP_OLDEST}
+     */
+    public FrameRecorder(File videoFile, double fps, int queueCapacity, int dropPolicy) {
+        if (!(fps > 0)) {
+            throw new IllegalArgumentException("fps must be positive: " + fps);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        }
+        if (dropPolicy != DROP_NEWEST && dropPolicy != DROP_OLDEST) {
+            throw new IllegalArgumentException("Unknown drop policy: " + dropPolicy);
+        }
+        mVideoFile = videoFile;
+        mSidecarFile = new File(videoFile.getPath() + SIDECAR_SUFFIX);
+        mFps = fps;
+        mDropPolicy = dropPolicy;
+        mQueueCapacity = queueCapacity;
+        // One slot more than the queue holds, so the encoder can work on a frame while the queue is full,
+        // and room for the end of stream marker even if every slot is queued
+        mFreeSlots = new ArrayBlockingQueue<>(queueCapacity + 1);
+        mQueuedSlots = new ArrayBlockingQueue<>(queueCapacity + 2);
+        for (int i = 0; i <= queueCapacity; ++i) {
+            mFreeSlots.add(new Slot());
+        }
+        mEndOfStream = new Slot();
+        mEncoderThread = new Thread(new Runnable() {
+            @Override public void run() {
+                encode();
+            }
+        }, "FrameRecorder");
+        mEncoderThread.setPriority(Thread.NORM_PRIORITY - 1);
+    }
+
+    /**
+     * Sets how frames are turned upright before they are written. Takes effect from the next frame the encoder
+     * picks up, so a camera switch can update it while recording.
+     */
+    public void setGeometry(FrameGeometry geometry) {
+        mGeometry = geometry;
+    }
+
+    public void start() {
+        if (mStarted) {
+            throw new IllegalStateException("Already started");
+        }
+        mStarted = true;
+        mEncoderThread.start();
+    }
+
+    /**
+     * Queues a copy of a frame for writing. Never waits for the encoder and does not allocate once every slot has
+     * held a frame of the same size; may be called before {@link #start()}.
+     *
+     * @param frame RGBA or RGB image in sensor orientation
+     * @param targets targets of the frame, or null
+     * @param timestampNanos capture time of the frame
+     * @return false if this frame was dropped or the recorder is closed
+     */
+    public synchronized boolean submit(Mat frame, TargetList targets, long timestampNanos) {
+        if (mClosed) {
+            return false;
+        }
+        ++mSubmittedCount;
+        if (mError != null) {
+            ++mDroppedCount;
+            return false;
+        }
+        Slot slot = mFreeSlots.poll();
+        if (slot == null && mDropPolicy == DROP_OLDEST) {
+            slot = mQueuedSlots.poll();
+        }
+        if (slot == null) {
+            ++mDroppedCount;
+            return false;
+        }
+        boolean replacing = slot.mTimestampNanos != Slot.EMPTY;
+        frame.copyTo(slot.mFrame);
+        slot.mTargets.clear();
+        if (targets != null) {
+            slot.mTargets.copyFrom(targets);
+        }
+        slot.mTimestampNanos = timestampNanos;
+        mQueuedSlots.add(slot);
+        if (replacing) {
+            ++mDroppedCount;
+            return true;
+        }
+        int depth = mQueuedSlots.size();
+        if (depth > mMaxQueueDepth) {
+            mMaxQueueDepth = depth;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the queued frames, stops the encoder and closes both files.
+     *
+     * @throws IOException if the files could not be written
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+        }
+        if (mStarted) {
+            // The queue always has room for the marker, see the constructor
+            mQueuedSlots.add(mEndOfStream);
+            boolean interrupted = false;
+            while (mEncoderThread.isAlive()) {
+                try {
+                    mEncoderThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Slot slot;
+        while ((slot = mFreeSlots.poll()) != null) {
+            slot.mFrame.release();
+        }
+        while ((slot = mQueuedSlots.poll()) != null) {
+            slot.mFrame.release();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    public File getVideoFile() {
+        return mVideoFile;
+    }
+
+    public File getSidecarFile() {
+        return mSidecarFile;
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * @return the error that stopped the encoder, or null
+     */
+    public IOException getError() {
+        return mError;
+    }
+
+    public long getSubmittedFrameCount() {
+        return mSubmittedCount;
+    }
+
+    public long getDroppedFrameCount() {
+        return mDroppedCount;
+    }
+
+    public long getWrittenFrameCount() {
+        return mWrittenCount;
+    }
+
+    /**
+     * @return number of frames waiting for the encoder
+     */
+    public int getQueueDepth() {
+        return mQueuedSlots.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth;
+    }
+
+    public int getQueueCapacity() {
+        return mQueueCapacity;
+    }
+
+    /**
+     * @return mean time the encoder spent on a frame, including conversion and the sidecar line
+     */
+    public long getMeanEncodeNanos() {
+        long written = mWrittenCount;
+        return written == 0 ? 0 : mEncodeNanos / written;
+    }
+
+    /**
+     * @return frames written per second since the first write
+     */
+    public double getWriteFps() {
+        long elapsed = mLastWriteNanos - mFirstWriteNanos;
+        long written = mWrittenCount;
+        return written < 2 || elapsed <= 0 ? 0 : (written - 1) * 1e9 / elapsed;
+    }
+
+    /**
+     * @return bytes of video written per second since the first write
+     */
+    public double getWriteBytesPerSecond() {
+        long elapsed = mLastWriteNanos - mFirstWriteNanos;
+        return elapsed <= 0 ? 0 : mVideoFile.length() * 1e9 / elapsed;
+    }
+
+    private void encode() {
+        VideoWriter writer = null;
+        Writer sidecar = null;
+        Mat bgr = new Mat();
+        Mat upright = new Mat();
+        Mat scaled = new Mat();
+        Size size = null;
+        try {
+            sidecar = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(mSidecarFile), "UTF-8"));
+            sidecar.write("# index timestampNanos targetCount [type left top right bottom]...\n");
+            StringBuilder line = new StringBuilder();
+            while (true) {
+                Slot slot = mQueuedSlots.take();
+                if (slot == mEndOfStream) {
+                    break;
+                }
+                long start = System.nanoTime();
+                Imgproc.cvtColor(slot.mFrame, bgr,
+                        slot.mFrame.channels() == 4 ? Imgproc.COLOR_RGBA2BGR : Imgproc.COLOR_RGB2BGR);
+                FrameGeometry geometry = mGeometry;
+                Mat out = bgr;
+                if (geometry != null) {
+                    geometry.toDisplay(bgr, upright);
+                    out = upright;
+                }
+                if (writer == null) {
+                    size = out.size();
+                    writer = new VideoWriter(mVideoFile.getPath(), VideoWriter.fourcc('M', 'J', 'P', 'G'),
+                            mFps, size, true);
+                    if (!writer.isOpened()) {
+                        throw new IOException("Cannot open " + mVideoFile + " for writing");
+                    }
+                } else if (out.cols() != (int) size.width || out.rows() != (int) size.height) {
+                    Imgproc.resize(out, scaled, size);
+                    out = scaled;
+                }
+                writer.write(out);
+                appendSidecarLine(line, mFrameIndex++, slot);
+                sidecar.append(line);
+                slot.mTimestampNanos = Slot.EMPTY;
+                mFreeSlots.add(slot);
+                long end = System.nanoTime();
+                mEncodeNanos += end - start;
+                if (mWrittenCount == 0) {
+                    mFirstWriteNanos = end;
+                }
+                mLastWriteNanos = end;
+                ++mWrittenCount;
+            }
+        } catch (IOException e) {
+            mError = e;
+        } catch (InterruptedException e) {
+            mError = new IOException("Interrupted while recording", e);
+        } finally {
+            if (writer != null) {
+                writer.release();
+            }
+            if (sidecar != null) {
+                try {
+                    sidecar.close();
+                } catch (IOException e) {
+                    if (mError == null) {
+                        mError = e;
+                    }
+                }
+            }
+            bgr.release();
+            upright.release();
+            scaled.release();
+        }
+    }
+
+    private static void appendSidecarLine(StringBuilder line, long index, Slot slot) {
+        TargetList targets = slot.mTargets;
+        line.setLength(0);
+        line.append(index).append(' ').append(slot.mTimestampNanos).append(' ').append(targets.size());
+        for (int i = 0; i < targets.size(); ++i) {
+            line.append(' ').append(targets.getType(i))
+                    .append(' ').append(targets.getLeft(i))
+                    .append(' ').append(targets.getTop(i))
+                    .append(' ').append(targets.getRight(i))
+                    .append(' ').append(targets.getBottom(i));
+        }
+        line.append('\n');
+    }
+
+    private static class Slot {
+        static final long EMPTY = Long.MIN_VALUE;
+        final Mat mFrame = new Mat();
+        final TargetList mTargets = new TargetList(8);
+        volatile long mTimestampNanos = EMPTY;
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Size;
+import org.opencv.objdetect.HOGDescriptor;
+
+/**
+ * {@link Detector} of upright people with OpenCV's HOG descriptor and its default people SVM.
+ * It finds bodies far more reliably than the Haar full-body cascade, but only people at least as large as the
+ * 64x128 window in the detection image, so it needs a detection width of about 240 or more.
+ * Of {@link DetectorParams} the scale factor is the pyramid step, min neighbors is the grouping threshold, and
+ * min and max size bound the height of the results.
+ */
+public class HogDetector implements Detector {
+
+    public static final String NAME = "hog";
+    public static final int DEFAULT_WIN_STRIDE = 8;
+    public static final double DEFAULT_HIT_THRESHOLD = 0;
+    private final HOGDescriptor mHog;
+    private final MatOfDouble mWeights;
+    private final Size mWinStride;
+    private final Size mPadding;
+    private final double mHitThreshold;
+    private final int mWinWidth;
+    private final int mWinHeight;
+    private final int[] mRect;
+
+    public HogDetector() {
+        this(DEFAULT_WIN_STRIDE, DEFAULT_HIT_THRESHOLD);
+    }
+
+    /**
+     * @param winStride step of the detection window in pixels; larger is faster and misses more
+     * @param hitThreshold SVM score a window needs; raise it to reject weak detections
+     */
+    public HogDetector(int winStride, double hitThreshold) {
+        if (winStride <= 0) {
+            throw new IllegalArgumentException("winStride must be positive: " + winStride);
+        }
+        mHog = new HOGDescriptor();
+        mHog.setSVMDetector(HOGDescriptor.getDefaultPeopleDetector());
+        mWeights = new MatOfDouble();
+        mWinStride = new Size(winStride, winStride);
+        mPadding = new Size();
+        mHitThreshold = hitThreshold;
+        Size winSize = mHog.get_winSize();
+        mWinWidth = (int) winSize.width;
+        mWinHeight = (int) winSize.height;
+        mRect = new int[4];
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public int detect(Mat detectionMat, double scale, DetectorParams params, MatOfRect out) {
+        if (detectionMat.cols() < mWinWidth || detectionMat.rows() < mWinHeight) {
+            return 0;
+        }
+        mHog.detectMultiScale(detectionMat, out, mWeights, mHitThreshold, mWinStride, mPadding,
+                params.getScaleFactor(), params.getMinNeighbors(), false);
+        long minHeight = Math.round(params.getMinSize() * scale);
+        long maxHeight = params.getMaxSize() > 0 ? Math.round(params.getMaxSize() * scale) : Long.MAX_VALUE;
+        int count = 0;
+        int found = out.rows();
+        for (int i = 0; i < found; ++i) {
+            out.get(i, 0, mRect);
+            if (mRect[3] < minHeight || mRect[3] > maxHeight) {
+                continue;
+            }
+            if (count != i) {
+                out.put(count, 0, mRect);
+            }
+            ++count;
+        }
+        return count;
+    }
+
+    @Override
+    public void release() {
+        mWeights.release();
+    }
+}
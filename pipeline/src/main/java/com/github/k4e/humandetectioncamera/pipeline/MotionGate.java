@@ -0,0 +1,305 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Decides from a tiny luma thumbnail whether the detectors need to run again. Each frame is compared with the
+ * thumbnail of the frame the targets were last detected on, so slow changes add up instead of slipping under
+ * the threshold frame by frame. Changed pixels are grouped into a few bounding boxes, reported in source
+ * frame pixels with a margin and without overlap, so detection can be limited to where something happened.
+ * Not thread safe except for the setters; feed it from the processing thread.
+ */
+public class MotionGate {
+
+    public static final int MOTION_NONE = 0;
+    public static final int MOTION_REGIONS = 1;
+    public static final int MOTION_FULL_FRAME = 2;
+    public static final int DEFAULT_WIDTH = 80;
+    public static final int DEFAULT_PIXEL_THRESHOLD = 24;
+    public static final double DEFAULT_MIN_CHANGED_FRACTION = 0.002;
+    public static final double DEFAULT_MARGIN = 0.25;
+    public static final double DEFAULT_MAX_REGION_FRACTION = 0.5;
+    public static final int MAX_REGIONS = 4;
+    private static final int STAT_VALUES = 5;
+    private final int mWidth;
+    private final Mat mSmallMat;
+    private final Mat mReferenceMat;
+    private final Mat mDiffMat;
+    private final Mat mLabelsMat;
+    private final Mat mStatsMat;
+    private final Mat mCentroidsMat;
+    private final Mat mKernel;
+    private final Size mSmallSize;
+    private final int[] mRegions;
+    private volatile int mPixelThreshold;
+    private volatile double mMinChangedFraction;
+    private volatile double mMargin;
+    private volatile double mMaxRegionFraction;
+    private int[] mStats;
+    private boolean mHasReference;
+    private int mRegionCount;
+    private double mChangedFraction;
+
+    /**
+     * @param width width of the thumbnail the frames are compared at
+     */
+    public MotionGate(int width) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive: " + width);
+        }
+        mWidth = width;
+        mSmallMat = new Mat();
+        mReferenceMat = new Mat();
+        mDiffMat = new Mat();
+        mLabelsMat = new Mat();
+        mStatsMat = new Mat();
+        mCentroidsMat = new Mat();
+        mKernel = Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(3, 3));
+        mSmallSize = new Size();
+        mRegions = new int[MAX_REGIONS * 4];
+        mStats = new int[0];
+        setPixelThreshold(DEFAULT_PIXEL_THRESHOLD);
+        setMinChangedFraction(DEFAULT_MIN_CHANGED_FRACTION);
+        setMargin(DEFAULT_MARGIN);
+        setMaxRegionFraction(DEFAULT_MAX_REGION_FRACTION);
+    }
+
+    /**
+     * @param pixelThreshold luma difference from which a thumbnail pixel counts as changed
+     */
+    public void setPixelThreshold(int pixelThreshold) {
+        if (pixelThreshold < 0 || pixelThreshold > 255) {
+            throw new IllegalArgumentException("pixelThreshold must be in [0, 255]: " + pixelThreshold);
+        }
+        mPixelThreshold = pixelThreshold;
+    }
+
+    public int getPixelThreshold() {
+        return mPixelThreshold;
+    }
+
+    /**
+     * @param minChangedFraction share of changed thumbnail pixels below which the scene counts as static
+     */
+    public void setMinChangedFraction(double minChangedFraction) {
+        if (!(minChangedFraction >= 0 && minChangedFraction <= 1)) {
+            throw new IllegalArgumentException("minChangedFraction must be in [0, 1]: " + minChangedFraction);
+        }
+        mMinChangedFraction = minChangedFraction;
+    }
+
+    public double getMinChangedFraction() {
+        return mMinChangedFraction;
+    }
+
+    /**
+     * @param margin added on every side of a region, as a fraction of its larger side, so that a target only
+     *               partly moving is still seen whole by the detectors
+     */
+    public void setMargin(double margin) {
+        if (!(margin >= 0)) {
+            throw new IllegalArgumentException("margin must not be negative: " + margin);
+        }
+        mMargin = margin;
+    }
+
+    public double getMargin() {
+        return mMargin;
+    }
+
+    /**
+     * @param maxRegionFraction share of the frame the regions may cover before the whole frame is reported
+     */
+    public void setMaxRegionFraction(double maxRegionFraction) {
+        if (!(maxRegionFraction >= 0 && maxRegionFraction <= 1)) {
+            throw new IllegalArgumentException("maxRegionFraction must be in [0, 1]: " + maxRegionFraction);
+        }
+        mMaxRegionFraction = maxRegionFraction;
+    }
+
+    public double getMaxRegionFraction() {
+        return mMaxRegionFraction;
+    }
+
+    /**
+     * Compares a frame with the reference frame.
+     *
+     * @param luma 8-bit luma of the source frame
+     * @return {@link #MOTION_NONE}, {@link #MOTION_REGIONS} with the regions in {@link #getRegion}, or
+     *         {@link #MOTION_FULL_FRAME} when there is no reference or the change is too large to be worth limiting
+     */
+    public int update(Mat luma) {
+        int width = luma.cols();
+        int height = luma.rows();
+        mSmallSize.width = Math.min(mWidth, width);
+        mSmallSize.height = Math.max(1, Math.round(height * mSmallSize.width / width));
+        Imgproc.resize(luma, mSmallMat, mSmallSize, 0, 0, Imgproc.INTER_AREA);
+        mRegionCount = 0;
+        if (!mHasReference || mReferenceMat.cols() != mSmallMat.cols() || mReferenceMat.rows() != mSmallMat.rows()) {
+            mChangedFraction = 1;
+            return MOTION_FULL_FRAME;
+        }
+        Core.absdiff(mSmallMat, mReferenceMat, mDiffMat);
+        Imgproc.threshold(mDiffMat, mDiffMat, mPixelThreshold, 255, Imgproc.THRESH_BINARY);
+        int smallWidth = mSmallMat.cols();
+        int smallHeight = mSmallMat.rows();
+        mChangedFraction = (double) Core.countNonZero(mDiffMat) / (smallWidth * smallHeight);
+        if (mChangedFraction == 0 || mChangedFraction < mMinChangedFraction) {
+            return MOTION_NONE;
+        }
+        // Joins the fragments of one moving object before grouping
+        Imgproc.dilate(mDiffMat, mDiffMat, mKernel);
+        int labels = Imgproc.connectedComponentsWithStats(mDiffMat, mLabelsMat, mStatsMat, mCentroidsMat, 8,
+                CvType.CV_32S);
+        int count = labels * STAT_VALUES;
+        if (mStats.length < count) {
+            mStats = new int[count];
+        }
+        mStatsMat.get(0, 0, mStats);
+        if (labels - 1 > MAX_REGIONS) {
+            mergeAll(labels);
+        } else {
+            for (int label = 1; label < labels; ++label) {
+                int o = label * STAT_VALUES;
+                addRegion(mStats[o + Imgproc.CC_STAT_LEFT], mStats[o + Imgproc.CC_STAT_TOP],
+                        mStats[o + Imgproc.CC_STAT_WIDTH], mStats[o + Imgproc.CC_STAT_HEIGHT]);
+            }
+        }
+        double scale = (double) width / smallWidth;
+        for (int i = 0; i < mRegionCount; ++i) {
+            toSource(i, scale, width, height);
+        }
+        mergeOverlapping();
+        long area = 0;
+        for (int i = 0; i < mRegionCount; ++i) {
+            area += (long) mRegions[i * 4 + 2] * mRegions[i * 4 + 3];
+        }
+        if (area > mMaxRegionFraction * width * height) {
+            mRegionCount = 0;
+            return MOTION_FULL_FRAME;
+        }
+        return MOTION_REGIONS;
+    }
+
+    /**
+     * Makes the frame passed to the last {@link #update} the reference, after the targets were detected on it.
+     */
+    public void acceptFrame() {
+        mSmallMat.copyTo(mReferenceMat);
+        mHasReference = !mReferenceMat.empty();
+    }
+
+    /**
+     * Forgets the reference, so the next frame is reported as {@link #MOTION_FULL_FRAME}.
+     */
+    public void reset() {
+        mHasReference = false;
+    }
+
+    public int getRegionCount() {
+        return mRegionCount;
+    }
+
+    /**
+     * @param rect receives {x, y, width, height} of the region in source frame pixels, margin included
+     */
+    public void getRegion(int index, int[] rect) {
+        System.arraycopy(mRegions, index * 4, rect, 0, 4);
+    }
+
+    /**
+     * @return share of thumbnail pixels that changed at the last {@link #update}
+     */
+    public double getChangedFraction() {
+        return mChangedFraction;
+    }
+
+    /**
+     * Releases the buffers and forgets the reference frame; the gate can be used again afterwards.
+     * The structuring element is kept, since it is final and would otherwise be empty on the next update.
+     */
+    public void release() {
+        mSmallMat.release();
+        mReferenceMat.release();
+        mDiffMat.release();
+        mLabelsMat.release();
+        mStatsMat.release();
+        mCentroidsMat.release();
+        mHasReference = false;
+    }
+
+    private void mergeAll(int labels) {
+        int left = Integer.MAX_VALUE;
+        int top = Integer.MAX_VALUE;
+        int right = 0;
+        int bottom = 0;
+        for (int label = 1; label < labels; ++label) {
+            int o = label * STAT_VALUES;
+            left = Math.min(left, mStats[o + Imgproc.CC_STAT_LEFT]);
+            top = Math.min(top, mStats[o + Imgproc.CC_STAT_TOP]);
+            right = Math.max(right, mStats[o + Imgproc.CC_STAT_LEFT] + mStats[o + Imgproc.CC_STAT_WIDTH]);
+            bottom = Math.max(bottom, mStats[o + Imgproc.CC_STAT_TOP] + mStats[o + Imgproc.CC_STAT_HEIGHT]);
+        }
+        addRegion(left, top, right - left, bottom - top);
+    }
+
+    private void addRegion(int x, int y, int w, int h) {
+        int o = mRegionCount * 4;
+        mRegions[o] = x;
+        mRegions[o + 1] = y;
+        mRegions[o + 2] = w;
+        mRegions[o + 3] = h;
+        ++mRegionCount;
+    }
+
+    /**
+     * Replaces overlapping regions by their union until none overlap, so no area is detected twice.
+     */
+    private void mergeOverlapping() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < mRegionCount && !merged; ++i) {
+                for (int j = i + 1; j < mRegionCount && !merged; ++j) {
+                    int a = i * 4;
+                    int b = j * 4;
+                    if (mRegions[a] < mRegions[b] + mRegions[b + 2] && mRegions[b] < mRegions[a] + mRegions[a + 2]
+                            && mRegions[a + 1] < mRegions[b + 1] + mRegions[b + 3]
+                            && mRegions[b + 1] < mRegions[a + 1] + mRegions[a + 3]) {
+                        int left = Math.min(mRegions[a], mRegions[b]);
+                        int top = Math.min(mRegions[a + 1], mRegions[b + 1]);
+                        int right = Math.max(mRegions[a] + mRegions[a + 2], mRegions[b] + mRegions[b + 2]);
+                        int bottom = Math.max(mRegions[a + 1] + mRegions[a + 3], mRegions[b + 1] + mRegions[b + 3]);
+                        mRegions[a] = left;
+                        mRegions[a + 1] = top;
+                        mRegions[a + 2] = right - left;
+                        mRegions[a + 3] = bottom - top;
+                        --mRegionCount;
+                        System.arraycopy(mRegions, mRegionCount * 4, mRegions, b, 4);
+                        merged = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Scales a region from thumbnail to source pixels in place, adding the margin and clamping to the frame.
+     */
+    private void toSource(int index, double scale, int width, int height) {
+        int o = index * 4;
+        double margin = Math.max(mRegions[o + 2], mRegions[o + 3]) * scale * mMargin;
+        int left = Math.max(0, (int) Math.floor(mRegions[o] * scale - margin));
+        int top = Math.max(0, (int) Math.floor(mRegions[o + 1] * scale - margin));
+        int right = Math.min(width, (int) Math.ceil((mRegions[o] + mRegions[o + 2]) * scale + margin));
+        int bottom = Math.min(height, (int) Math.ceil((mRegions[o + 1] + mRegions[o + 3]) * scale + margin));
+        mRegions[o] = left;
+        mRegions[o + 1] = top;
+        mRegions[o + 2] = right - left;
+        mRegions[o + 3] = bottom - top;
+    }
+}
@@ -0,0 +1,76 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Converts NV21 frames into RGBA in one pass with no intermediate codec.
+ * The Y plane heading the buffer is exposed as a view, so luma consumers need no conversion at all.
+ */
+public class Nv21FrameConverter implements FrameConverter {
+
+    private int mWidth;
+    private int mHeight;
+    private Mat mYuvMat;
+    private Mat mLumaMat;
+
+    @Override
+    public void put(byte[] data, int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        int rows = height + height / 2;
+        if (mYuvMat == null || mYuvMat.rows() != rows || mYuvMat.cols() != width) {
+            release();
+            mYuvMat = new Mat(rows, width, CvType.CV_8UC1);
+            mLumaMat = mYuvMat.submat(0, height, 0, width);
+        }
+        mYuvMat.put(0, 0, data);
+    }
+
+    @Override
+    public boolean hasFrame() {
+        return mYuvMat != null;
+    }
+
+    @Override
+    public void toRgba(Mat dst) {
+        if (!hasFrame()) {
+            return;
+        }
+        Imgproc.cvtColor(mYuvMat, dst, Imgproc.COLOR_YUV2RGBA_NV21, 4);
+    }
+
+    @Override
+    public Mat getLuma() {
+        return mLumaMat;
+    }
+
+    @Override
+    public void convert(byte[] data, int width, int height, Mat dst) {
+        put(data, width, height);
+        toRgba(dst);
+    }
+
+    @Override
+    public int getWidth() {
+        return mWidth;
+    }
+
+    @Override
+    public int getHeight() {
+        return mHeight;
+    }
+
+    @Override
+    public void release() {
+        if (mLumaMat != null) {
+            mLumaMat.release();
+            mLumaMat = null;
+        }
+        if (mYuvMat != null) {
+            mYuvMat.release();
+            mYuvMat = null;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the enabled detectors of a frame at the same time on a bounded thread pool and joins their results.
+ * Every slot owns its {@link Detector} and result buffer, so the only shared input is the
+ * read-only detection image.
+ */
+public class ParallelDetectionExecutor {
+
+    private final List<DetectionJob> mJobs;
+    private final Object mLock;
+    private final int mThreadCount;
+    private ThreadPoolExecutor mPool;
+    private int mPendingJobs;
+    private boolean mParallel;
+    private long mLastFrameNanos;
+
+    public ParallelDetectionExecutor(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be positive: " + threadCount);
+        }
+        mJobs = new ArrayList<>();
+        mLock = new Object();
+        mThreadCount = threadCount;
+        mParallel = true;
+    }
+
+    /**
+     * @param detector the detector of the slot, or null to fill it later with {@link #setDetector}
+     * @return index of the slot, used by the other methods
+     */
+    public int addDetector(Detector detector, DetectorParams params) {
+        mJobs.add(new DetectionJob(detector, params));
+        return mJobs.size() - 1;
+    }
+
+    /**
+     * Replaces the detector of a slot; must not be called while {@link #run} is in progress.
+     *
+     * @return the previous detector, or null
+     */
+    public Detector setDetector(int index, Detector detector) {
+        DetectionJob job = mJobs.get(index);
+        Detector previous = job.mDetector;
+        job.mDetector = detector;
+        return previous;
+    }
+
+    public Detector getDetector(int index) {
+        return mJobs.get(index).mDetector;
+    }
+
+    public void setParams(int index, DetectorParams params) {
+        mJobs.get(index).mParams = params;
+    }
+
+    public void setEnabled(int index, boolean enabled) {
+        mJobs.get(index).mEnabled = enabled;
+    }
+
+    public void setParallel(boolean parallel) {
+        mParallel = parallel;
+    }
+
+    public boolean isParallel() {
+        return mParallel;
+    }
+
+    public void run(Mat detectionMat, double scale) {
+        long start = System.nanoTime();
+        DetectionJob callerJob = null;
+        int submitted = 0;
+        for (int i = 0; i < mJobs.size(); ++i) {
+            DetectionJob job = mJobs.get(i);
+            job.reset(detectionMat, scale);
+            if (!job.mEnabled || job.mDetector == null) {
+                continue;
+            }
+            if (callerJob == null) {
+                callerJob = job;
+            } else if (mParallel) {
+                job.mSubmitted = true;
+                ++submitted;
+            } else {
+                job.run();
+            }
+        }
+        if (submitted > 0) {
+            synchronized (mLock) {
+                mPendingJobs = submitted;
+            }
+            ThreadPoolExecutor pool = obtainPool();
+            for (int i = 0; i < mJobs.size(); ++i) {
+                DetectionJob job = mJobs.get(i);
+                if (job.mSubmitted) {
+                    pool.execute(job);
+                }
+            }
+        }
+        if (callerJob != null) {
+            callerJob.run();
+        }
+        if (submitted > 0) {
+            awaitJobs();
+        }
+        mLastFrameNanos = System.nanoTime() - start;
+        for (int i = 0; i < mJobs.size(); ++i) {
+            DetectionJob job = mJobs.get(i);
+            if (job.mError != null) {
+                RuntimeException e = job.mError;
+                job.mError = null;
+                throw e;
+            }
+        }
+    }
+
+    public MatOfRect getResult(int index) {
+        return mJobs.get(index).mResult;
+    }
+
+    public int getResultCount(int index) {
+        return mJobs.get(index).mResultCount;
+    }
+
+    public long getLatencyNanos(int index) {
+        return mJobs.get(index).mLatencyNanos;
+    }
+
+    public long getFrameLatencyNanos() {
+        return mLastFrameNanos;
+    }
+
+    /**
+     * @return what the last frame would have taken with the detectors run one after the other
+     */
+    public long getSequentialLatencyNanos() {
+        long sum = 0;
+        for (int i = 0; i < mJobs.size(); ++i) {
+            sum += mJobs.get(i).mLatencyNanos;
+        }
+        return sum;
+    }
+
+    /**
+     * Shuts the pool down and releases the result buffers and the detectors, which are removed from their slots.
+     * The slots stay and can be given new detectors with {@link #setDetector}.
+     */
+    public void release() {
+        shutdown();
+        for (int i = 0; i < mJobs.size(); ++i) {
+            DetectionJob job = mJobs.get(i);
+            job.mResult.release();
+            if (job.mDetector != null) {
+                job.mDetector.release();
+                job.mDetector = null;
+            }
+        }
+    }
+
+    public void shutdown() {
+        if (mPool != null) {
+            mPool.shutdown();
+            mPool = null;
+        }
+    }
+
+    private ThreadPoolExecutor obtainPool() {
+        if (mPool == null) {
+            mPool = new ThreadPoolExecutor(mThreadCount, mThreadCount, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, mJobs.size())));
+        }
+        return mPool;
+    }
+
+    private void awaitJobs() {
+        synchronized (mLock) {
+            boolean interrupted = false;
+            while (mPendingJobs > 0) {
+                try {
+                    mLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void onJobFinished() {
+        synchronized (mLock) {
+            --mPendingJobs;
+            mLock.notifyAll();
+        }
+    }
+
+    private class DetectionJob implements Runnable {
+
+        private Detector mDetector;
+        private final MatOfRect mResult;
+        private volatile DetectorParams mParams;
+        private volatile boolean mEnabled;
+        private Mat mDetectionMat;
+        private double mScale;
+        private boolean mSubmitted;
+        private int mResultCount;
+        private long mLatencyNanos;
+        private RuntimeException mError;
+
+        DetectionJob(Detector detector, DetectorParams params) {
+            mDetector = detector;
+            mParams = params;
+            mResult = new MatOfRect();
+        }
+
+        void reset(Mat detectionMat, double scale) {
+            mDetectionMat = detectionMat;
+            mScale = scale;
+            mSubmitted = false;
+            mResultCount = 0;
+            mLatencyNanos = 0;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                mResultCount = mDetector.detect(mDetectionMat, mScale, mParams, mResult);
+            } catch (RuntimeException e) {
+                mError = e;
+            } finally {
+                mLatencyNanos = System.nanoTime() - start;
+                if (mSubmitted) {
+                    onJobFinished();
+                }
+            }
+        }
+    }
+}
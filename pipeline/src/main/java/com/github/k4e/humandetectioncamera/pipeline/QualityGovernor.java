@@ -0,0 +1,184 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+/**
+ * Picks a quality level from the measured per-frame processing time so that a target frame rate is held.
+ * Levels are ordered from the best quality to the cheapest. The governor steps down quickly when the smoothed
+ * frame time exceeds the budget, and steps up only after the frame time has stayed well below the budget for a
+ * while, so it does not oscillate between two neighbouring levels.
+ * Not thread safe; feed it from the processing thread.
+ * <p>
+ * Levels never switch to {@link FramePipeline#INPAINTING_BACKGROUND_PLATE}: the plate only suits a fixed camera
+ * and needs frames to warm up, so it is used only when chosen by hand.
+ */
+public class QualityGovernor {
+
+    public static final double DEFAULT_TARGET_FPS = 15;
+    private static final Level[] DEFAULT_LEVELS = {
+            new Level("high", 480, 3, DetectorParams.DEFAULT_FACE, DetectorParams.DEFAULT_BODY,
+                    FramePipeline.INPAINTING_ROI),
+            new Level("medium", 360, 5, new DetectorParams(1.15, 3, 24, 0), new DetectorParams(1.15, 3, 48, 0),
+                    FramePipeline.INPAINTING_ROI),
+            new Level("low", 240, 8, new DetectorParams(1.2, 3, 32, 0), new DetectorParams(1.2, 3, 64, 0),
+                    FramePipeline.INPAINTING_ROI),
+            new Level("minimum", 160, 12, new DetectorParams(1.3, 2, 40, 0), new DetectorParams(1.3, 2, 80, 0),
+                    FramePipeline.INPAINTING_ROI),
+    };
+    static final double SMOOTHING = 0.2;
+    static final double DEGRADE_RATIO = 1.0;
+    static final double UPGRADE_RATIO = 0.6;
+    static final int DEGRADE_FRAMES = 5;
+    static final int UPGRADE_FRAMES = 30;
+    private final Level[] mLevels;
+    private double mTargetFps;
+    private long mBudgetNanos;
+    private int mLevelIndex;
+    private double mSmoothedNanos;
+    private int mOverBudgetFrames;
+    private int mUnderBudgetFrames;
+
+    public QualityGovernor(Level[] levels, double targetFps) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("At least one level is required");
+        }
+        mLevels = levels.clone();
+        setTargetFps(targetFps);
+    }
+
+    /**
+     * @return a copy of the levels the pipeline is governed with by default
+     */
+    public static Level[] getDefaultLevels() {
+        return DEFAULT_LEVELS.clone();
+    }
+
+    public void setTargetFps(double targetFps) {
+        if (!(targetFps > 0)) {
+            throw new IllegalArgumentException("targetFps must be positive: " + targetFps);
+        }
+        mTargetFps = targetFps;
+        mBudgetNanos = (long) (1e9 / targetFps);
+        mOverBudgetFrames = 0;
+        mUnderBudgetFrames = 0;
+    }
+
+    public double getTargetFps() {
+        return mTargetFps;
+    }
+
+    /**
+     * Feeds the processing time of one frame.
+     *
+     * @return whether the level changed
+     */
+    public boolean onFrame(long processingNanos) {
+        mSmoothedNanos = mSmoothedNanos == 0
+                ? processingNanos : mSmoothedNanos + (processingNanos - mSmoothedNanos) * SMOOTHING;
+        if (mSmoothedNanos > mBudgetNanos * DEGRADE_RATIO) {
+            mUnderBudgetFrames = 0;
+            if (++mOverBudgetFrames >= DEGRADE_FRAMES && mLevelIndex < mLevels.length - 1) {
+                changeLevel(mLevelIndex + 1);
+                return true;
+            }
+        } else if (mSmoothedNanos < mBudgetNanos * UPGRADE_RATIO) {
+            mOverBudgetFrames = 0;
+            if (++mUnderBudgetFrames >= UPGRADE_FRAMES && mLevelIndex > 0) {
+                changeLevel(mLevelIndex - 1);
+                return true;
+            }
+        } else {
+            mOverBudgetFrames = 0;
+            mUnderBudgetFrames = 0;
+        }
+        return false;
+    }
+
+    public int getLevelIndex() {
+        return mLevelIndex;
+    }
+
+    public Level getLevel() {
+        return mLevels[mLevelIndex];
+    }
+
+    public int getLevelCount() {
+        return mLevels.length;
+    }
+
+    public long getSmoothedNanos() {
+        return (long) mSmoothedNanos;
+    }
+
+    /**
+     * Returns to the best level and forgets the measured history.
+     */
+    public void reset() {
+        mLevelIndex = 0;
+        mSmoothedNanos = 0;
+        mOverBudgetFrames = 0;
+        mUnderBudgetFrames = 0;
+    }
+
+    /**
+     * The smoothed time is kept across a change on purpose: a step down must first bring it under the upgrade
+     * threshold before the governor considers stepping back up.
+     */
+    private void changeLevel(int levelIndex) {
+        mLevelIndex = levelIndex;
+        mOverBudgetFrames = 0;
+        mUnderBudgetFrames = 0;
+    }
+
+    /**
+     * Settings applied to the pipeline at one quality level.
+     */
+    public static class Level {
+
+        private final String mName;
+        private final int mDetectionWidth;
+        private final int mKeyframeInterval;
+        private final DetectorParams mFaceDetectorParams;
+        private final DetectorParams mBodyDetectorParams;
+        private final int mInpaintingMode;
+
+        public Level(String name, int detectionWidth, int keyframeInterval, DetectorParams faceDetectorParams,
+                     DetectorParams bodyDetectorParams, int inpaintingMode) {
+            if (detectionWidth <= 0 || keyframeInterval < 1) {
+                throw new IllegalArgumentException("detectionWidth and keyframeInterval must be positive");
+            }
+            if (inpaintingMode != FramePipeline.INPAINTING_FULL_FRAME
+                    && inpaintingMode != FramePipeline.INPAINTING_ROI) {
+                throw new IllegalArgumentException("Unsupported inpainting mode for a level: " + inpaintingMode);
+            }
+            mName = name;
+            mDetectionWidth = detectionWidth;
+            mKeyframeInterval = keyframeInterval;
+            mFaceDetectorParams = faceDetectorParams;
+            mBodyDetectorParams = bodyDetectorParams;
+            mInpaintingMode = inpaintingMode;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public int getDetectionWidth() {
+            return mDetectionWidth;
+        }
+
+        public int getKeyframeInterval() {
+            return mKeyframeInterval;
+        }
+
+        public DetectorParams getFaceDetectorParams() {
+            return mFaceDetectorParams;
+        }
+
+        public DetectorParams getBodyDetectorParams() {
+            return mBodyDetectorParams;
+        }
+
+        public int getInpaintingMode() {
+            return mInpaintingMode;
+        }
+    }
+}
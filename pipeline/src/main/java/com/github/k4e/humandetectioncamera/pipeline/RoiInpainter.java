@@ -0,0 +1,306 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.photo.Photo;
+
+import java.util.Arrays;
+
+/**
+ * Inpaints only padded regions around the masked blobs instead of the whole frame.
+ * Overlapping regions are merged first, so every masked pixel is reconstructed exactly once,
+ * and the cost scales with the masked area rather than with the frame resolution.
+ * With temporal reuse enabled, a region whose bounds, mask and unmasked surroundings match the last
+ * reconstruction takes the previous result instead of being inpainted again.
+ */
+public class RoiInpainter {
+
+    public static final int DEFAULT_PADDING = 8;
+    public static final double DEFAULT_RADIUS = 1.0;
+    public static final double DEFAULT_CONTEXT_TOLERANCE = 8;
+    public static final double DEFAULT_MAX_CHANGED_RATIO = 0.005;
+    private static final int INITIAL_REGION_CAPACITY = 16;
+    private final int mPadding;
+    private final double mRadius;
+    private final Rect mRoi;
+    private final Mat mPatchIn;
+    private final Mat mPatchOut;
+    private int[] mRegions;
+    private int mRegionCount;
+    private boolean mTemporalReuse;
+    private double mContextTolerance;
+    private double mMaxChangedRatio;
+    private final Mat mPrevGray;
+    private final Mat mPrevMask;
+    private final Mat mPrevOutput;
+    private final Mat mGrayPatch;
+    private final Mat mDiffPatch;
+    private int[] mPrevRegions;
+    private int mPrevRegionCount;
+    private double mTeleaNanosPerPixel;
+    private long mHitCount;
+    private long mMissCount;
+    private long mSavedNanos;
+
+    public RoiInpainter(int padding, double radius) {
+        if (padding < 0) {
+            throw new IllegalArgumentException("padding must not be negative: " + padding);
+        }
+        mPadding = padding;
+        mRadius = radius;
+        mRoi = new Rect();
+        mPatchIn = new Mat();
+        mPatchOut = new Mat();
+        mRegions = new int[INITIAL_REGION_CAPACITY * 4];
+        mContextTolerance = DEFAULT_CONTEXT_TOLERANCE;
+        mMaxChangedRatio = DEFAULT_MAX_CHANGED_RATIO;
+        mPrevGray = new Mat();
+        mPrevMask = new Mat();
+        mPrevOutput = new Mat();
+        mGrayPatch = new Mat();
+        mDiffPatch = new Mat();
+        mPrevRegions = new int[INITIAL_REGION_CAPACITY * 4];
+    }
+
+    public void setTemporalReuse(boolean temporalReuse) {
+        if (mTemporalReuse != temporalReuse) {
+            clearCache();
+        }
+        mTemporalReuse = temporalReuse;
+    }
+
+    public boolean isTemporalReuse() {
+        return mTemporalReuse;
+    }
+
+    /**
+     * @param tolerance gray level difference below which an unmasked pixel counts as unchanged
+     * @param maxChangedRatio fraction of a region's unmasked pixels that may change before it is inpainted again
+     */
+    public void setReuseThresholds(double tolerance, double maxChangedRatio) {
+        if (tolerance < 0 || maxChangedRatio < 0) {
+            throw new IllegalArgumentException("Thresholds must not be negative: " + tolerance + ", " + maxChangedRatio);
+        }
+        mContextTolerance = tolerance;
+        mMaxChangedRatio = maxChangedRatio;
+    }
+
+    public void clearCache() {
+        mPrevRegionCount = 0;
+    }
+
+    public long getCacheHitCount() {
+        return mHitCount;
+    }
+
+    public long getCacheMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return estimated inpainting time avoided by reused regions, after subtracting the cost of the comparisons
+     */
+    public long getCacheSavedNanos() {
+        return mSavedNanos;
+    }
+
+    public void clearRegions() {
+        mRegionCount = 0;
+    }
+
+    /**
+     * Adds the bounding box of a masked blob. The box is padded and clipped when {@link #inpaint} runs.
+     */
+    public void addRegion(int x, int y, int w, int h) {
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        if ((mRegionCount + 1) * 4 > mRegions.length) {
+            mRegions = Arrays.copyOf(mRegions, mRegions.length * 2);
+        }
+        int o = mRegionCount * 4;
+        mRegions[o] = x;
+        mRegions[o + 1] = y;
+        mRegions[o + 2] = x + w;
+        mRegions[o + 3] = y + h;
+        ++mRegionCount;
+    }
+
+    public int getRegionCount() {
+        return mRegionCount;
+    }
+
+    /**
+     * Inpaints the masked pixels of an RGBA image in place.
+     *
+     * @return number of regions inpainted after merging
+     */
+    public int inpaint(Mat rgba, Mat mask) {
+        padAndClip(rgba.cols(), rgba.rows());
+        coalesce();
+        if (mTemporalReuse) {
+            prepareCache(rgba);
+        }
+        for (int i = 0; i < mRegionCount; ++i) {
+            int o = i * 4;
+            mRoi.x = mRegions[o];
+            mRoi.y = mRegions[o + 1];
+            mRoi.width = mRegions[o + 2] - mRegions[o];
+            mRoi.height = mRegions[o + 3] - mRegions[o + 1];
+            Mat imageRoi = rgba.submat(mRoi);
+            Mat maskRoi = mask.submat(mRoi);
+            if (mTemporalReuse) {
+                inpaintCached(i, imageRoi, maskRoi);
+            } else {
+                inpaintRegion(imageRoi, maskRoi);
+            }
+            imageRoi.release();
+            maskRoi.release();
+        }
+        if (mTemporalReuse) {
+            if (mPrevRegions.length < mRegions.length) {
+                mPrevRegions = new int[mRegions.length];
+            }
+            System.arraycopy(mRegions, 0, mPrevRegions, 0, mRegionCount * 4);
+            mPrevRegionCount = mRegionCount;
+        }
+        return mRegionCount;
+    }
+
+    public void release() {
+        mPatchIn.release();
+        mPatchOut.release();
+        mPrevGray.release();
+        mPrevMask.release();
+        mPrevOutput.release();
+        mGrayPatch.release();
+        mDiffPatch.release();
+        mRegionCount = 0;
+        mPrevRegionCount = 0;
+    }
+
+    private void inpaintRegion(Mat imageRoi, Mat maskRoi) {
+        Imgproc.cvtColor(imageRoi, mPatchIn, Imgproc.COLOR_RGBA2RGB);
+        Photo.inpaint(mPatchIn, maskRoi, mPatchOut, mRadius, Photo.INPAINT_TELEA);
+        Imgproc.cvtColor(mPatchOut, imageRoi, Imgproc.COLOR_RGB2RGBA);
+    }
+
+    private void prepareCache(Mat rgba) {
+        if (mPrevOutput.cols() != rgba.cols() || mPrevOutput.rows() != rgba.rows()
+                || mPrevOutput.type() != rgba.type()) {
+            mPrevOutput.create(rgba.rows(), rgba.cols(), rgba.type());
+            mPrevGray.create(rgba.rows(), rgba.cols(), CvType.CV_8UC1);
+            mPrevMask.create(rgba.rows(), rgba.cols(), CvType.CV_8UC1);
+            mPrevRegionCount = 0;
+        }
+    }
+
+    private void inpaintCached(int index, Mat imageRoi, Mat maskRoi) {
+        long start = System.nanoTime();
+        Imgproc.cvtColor(imageRoi, mGrayPatch, Imgproc.COLOR_RGBA2GRAY);
+        Mat prevGray = mPrevGray.submat(mRoi);
+        Mat prevMask = mPrevMask.submat(mRoi);
+        Mat prevOutput = mPrevOutput.submat(mRoi);
+        int area = mRoi.width * mRoi.height;
+        if (hasPreviousRegion(index) && isUnchanged(maskRoi, prevGray, prevMask, area)) {
+            prevOutput.copyTo(imageRoi, maskRoi);
+            ++mHitCount;
+            mSavedNanos += Math.max(0L, (long) (mTeleaNanosPerPixel * area) - (System.nanoTime() - start));
+        } else {
+            long teleaStart = System.nanoTime();
+            inpaintRegion(imageRoi, maskRoi);
+            double nanosPerPixel = (double) (System.nanoTime() - teleaStart) / area;
+            mTeleaNanosPerPixel = mTeleaNanosPerPixel == 0
+                    ? nanosPerPixel : mTeleaNanosPerPixel * 0.9 + nanosPerPixel * 0.1;
+            mGrayPatch.copyTo(prevGray);
+            maskRoi.copyTo(prevMask);
+            imageRoi.copyTo(prevOutput);
+            ++mMissCount;
+        }
+        prevGray.release();
+        prevMask.release();
+        prevOutput.release();
+    }
+
+    /**
+     * Telea only looks inside the region, so a result can be reused only for exactly the same bounds.
+     */
+    private boolean hasPreviousRegion(int index) {
+        int o = index * 4;
+        for (int j = 0; j < mPrevRegionCount; ++j) {
+            int p = j * 4;
+            if (mPrevRegions[p] == mRegions[o] && mPrevRegions[p + 1] == mRegions[o + 1]
+                    && mPrevRegions[p + 2] == mRegions[o + 2] && mPrevRegions[p + 3] == mRegions[o + 3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isUnchanged(Mat maskRoi, Mat prevGray, Mat prevMask, int area) {
+        Core.absdiff(maskRoi, prevMask, mDiffPatch);
+        if (Core.countNonZero(mDiffPatch) != 0) {
+            return false;
+        }
+        Core.absdiff(mGrayPatch, prevGray, mDiffPatch);
+        Imgproc.threshold(mDiffPatch, mDiffPatch, mContextTolerance, 255, Imgproc.THRESH_BINARY);
+        // Masked pixels belong to the target, not to the context Telea reads from
+        Core.subtract(mDiffPatch, maskRoi, mDiffPatch);
+        return Core.countNonZero(mDiffPatch) <= area * mMaxChangedRatio;
+    }
+
+    private void padAndClip(int width, int height) {
+        int n = 0;
+        for (int i = 0; i < mRegionCount; ++i) {
+            int o = i * 4;
+            int left = Math.max(0, mRegions[o] - mPadding);
+            int top = Math.max(0, mRegions[o + 1] - mPadding);
+            int right = Math.min(width, mRegions[o + 2] + mPadding);
+            int bottom = Math.min(height, mRegions[o + 3] + mPadding);
+            if (right <= left || bottom <= top) {
+                continue;
+            }
+            int d = n * 4;
+            mRegions[d] = left;
+            mRegions[d + 1] = top;
+            mRegions[d + 2] = right;
+            mRegions[d + 3] = bottom;
+            ++n;
+        }
+        mRegionCount = n;
+    }
+
+    private void coalesce() {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < mRegionCount && !merged; ++i) {
+                for (int j = i + 1; j < mRegionCount; ++j) {
+                    if (overlaps(i, j)) {
+                        int a = i * 4;
+                        int b = j * 4;
+                        mRegions[a] = Math.min(mRegions[a], mRegions[b]);
+                        mRegions[a + 1] = Math.min(mRegions[a + 1], mRegions[b + 1]);
+                        mRegions[a + 2] = Math.max(mRegions[a + 2], mRegions[b + 2]);
+                        mRegions[a + 3] = Math.max(mRegions[a + 3], mRegions[b + 3]);
+                        int last = (mRegionCount - 1) * 4;
+                        System.arraycopy(mRegions, last, mRegions, b, 4);
+                        --mRegionCount;
+                        merged = true;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean overlaps(int i, int j) {
+        int a = i * 4;
+        int b = j * 4;
+        return mRegions[a] < mRegions[b + 2] && mRegions[b] < mRegions[a + 2]
+                && mRegions[a + 1] < mRegions[b + 3] && mRegions[b + 1] < mRegions[a + 3];
+    }
+}
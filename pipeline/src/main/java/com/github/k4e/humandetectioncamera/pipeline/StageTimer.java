@@ -0,0 +1,296 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import java.util.Locale;
+
+/**
+ * Latency histograms for every stage of a frame. Each stage keeps a fixed log-linear histogram of microseconds
+ * (four buckets per power of two, so percentiles are within 25%), and recording a sample never allocates.
+ * A stage is expected to be recorded from one thread; readers may query it from any thread.
+ */
+public class StageTimer {
+
+    public static final int UPLOAD = 0;
+    public static final int CONVERSION = 1;
+    public static final int DETECTION_PREPARE = 2;
+    public static final int FACE_DETECTION = 3;
+    public static final int BODY_DETECTION = 4;
+    public static final int TRACKING = 5;
+    public static final int MOTION = 6;
+    public static final int MASK = 7;
+    public static final int INPAINTING = 8;
+    public static final int PROCESS = 9;
+    public static final int RENDER = 10;
+    public static final int DRAW = 11;
+    /** From the arrival of a camera frame until it was posted to the display. */
+    public static final int DISPLAY = 12;
+    /** Interval between two frames of the UI thread, so stalls of the UI thread show up as jank. */
+    public static final int UI_FRAME = 13;
+    public static final int FRAME_INTERVAL = 14;
+    public static final int STAGE_COUNT = 15;
+    private static final String[] NAMES = {
+            "upload", "conversion", "detection prepare", "face detection", "body detection",
+            "tracking", "motion", "mask", "inpainting", "process", "render", "draw", "display", "ui frame",
+            "frame interval" };
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 30;
+    static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    private static final double FPS_SMOOTHING = 0.1;
+    private final Histogram[] mHistograms;
+    private long mLastFrameNanos;
+    private volatile double mFps;
+
+    public StageTimer() {
+        mHistograms = new Histogram[STAGE_COUNT];
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            mHistograms[i] = new Histogram();
+        }
+    }
+
+    public static String getStageName(int stage) {
+        return NAMES[stage];
+    }
+
+    /**
+     * @return start timestamp to pass to {@link #record(int, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time from the given start timestamp until now.
+     *
+     * @return now, so consecutive stages can be chained without another clock read
+     */
+    public long record(int stage, long startNanos) {
+        long now = System.nanoTime();
+        mHistograms[stage].add(now - startNanos);
+        return now;
+    }
+
+    public void recordNanos(int stage, long nanos) {
+        mHistograms[stage].add(nanos);
+    }
+
+    /**
+     * Records the interval since the previous frame was shown and updates the smoothed frame rate.
+     */
+    public void markFrame() {
+        long now = System.nanoTime();
+        if (mLastFrameNanos != 0) {
+            long interval = now - mLastFrameNanos;
+            mHistograms[FRAME_INTERVAL].add(interval);
+            if (interval > 0) {
+                double fps = 1e9 / interval;
+                mFps = mFps == 0 ? fps : mFps + (fps - mFps) * FPS_SMOOTHING;
+            }
+        }
+        mLastFrameNanos = now;
+    }
+
+    public double getFps() {
+        return mFps;
+    }
+
+    public long getCount(int stage) {
+        return mHistograms[stage].getCount();
+    }
+
+    public long getMeanNanos(int stage) {
+        return mHistograms[stage].getMeanNanos();
+    }
+
+    public long getMaxNanos(int stage) {
+        return mHistograms[stage].getMaxNanos();
+    }
+
+    public long getLastNanos(int stage) {
+        return mHistograms[stage].getLastNanos();
+    }
+
+    /**
+     * @param percent in (0, 100]
+     * @return upper bound of the bucket holding the percentile, or 0 without samples
+     */
+    public long getPercentileNanos(int stage, double percent) {
+        return mHistograms[stage].getPercentileNanos(percent);
+    }
+
+    public void reset() {
+        for (int i = 0; i < STAGE_COUNT; ++i) {
+            mHistograms[i].reset();
+        }
+        mLastFrameNanos = 0;
+        mFps = 0;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int sub = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return the smallest value in microseconds that no longer falls into the bucket
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket + 1;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    private static class Histogram {
+
+        private final long[] mBuckets = new long[BUCKET_COUNT];
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+        private long mLastNanos;
+
+        synchronized void add(long nanos) {
+            ++mBuckets[bucketOf(nanos / 1000)];
+            ++mCount;
+            mTotalNanos += nanos;
+            mLastNanos = nanos;
+            if (nanos > mMaxNanos) {
+                mMaxNanos = nanos;
+            }
+        }
+
+        synchronized long getCount() {
+            return mCount;
+        }
+
+        synchronized long getMeanNanos() {
+            return mCount == 0 ? 0 : mTotalNanos / mCount;
+        }
+
+        synchronized long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        synchronized long getLastNanos() {
+            return mLastNanos;
+        }
+
+        synchronized long getPercentileNanos(double percent) {
+            if (percent <= 0 || percent > 100) {
+                throw new IllegalArgumentException("percent must be in (0, 100]: " + percent);
+            }
+            if (mCount == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percent / 100 * mCount);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                seen += mBuckets[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i) * 1000, mMaxNanos);
+                }
+            }
+            return mMaxNanos;
+        }
+
+        synchronized void reset() {
+            for (int i = 0; i < BUCKET_COUNT; ++i) {
+                mBuckets[i] = 0;
+            }
+            mCount = 0;
+            mTotalNanos = 0;
+            mMaxNanos = 0;
+            mLastNanos = 0;
+        }
+    }
+
+    /**
+     * Copy of the statistics of every stage at one point in time.
+     */
+    public static class Snapshot {
+
+        private final double mFps;
+        private final long[] mCounts = new long[STAGE_COUNT];
+        private final long[] mMeans = new long[STAGE_COUNT];
+        private final long[] mP50s = new long[STAGE_COUNT];
+        private final long[] mP95s = new long[STAGE_COUNT];
+        private final long[] mP99s = new long[STAGE_COUNT];
+        private final long[] mMaxes = new long[STAGE_COUNT];
+
+        Snapshot(StageTimer timer) {
+            mFps = timer.getFps();
+            for (int i = 0; i < STAGE_COUNT; ++i) {
+                mCounts[i] = timer.getCount(i);
+                mMeans[i] = timer.getMeanNanos(i);
+                mP50s[i] = timer.getPercentileNanos(i, 50);
+                mP95s[i] = timer.getPercentileNanos(i, 95);
+                mP99s[i] = timer.getPercentileNanos(i, 99);
+                mMaxes[i] = timer.getMaxNanos(i);
+            }
+        }
+
+        public double getFps() {
+            return mFps;
+        }
+
+        public long getCount(int stage) {
+            return mCounts[stage];
+        }
+
+        public long getMeanNanos(int stage) {
+            return mMeans[stage];
+        }
+
+        public long getP50Nanos(int stage) {
+            return mP50s[stage];
+        }
+
+        public long getP95Nanos(int stage) {
+            return mP95s[stage];
+        }
+
+        public long getP99Nanos(int stage) {
+            return mP99s[stage];
+        }
+
+        public long getMaxNanos(int stage) {
+            return mMaxes[stage];
+        }
+
+        /**
+         * @return one line per recorded stage, in milliseconds
+         */
+        public String[] format() {
+            int lines = 1;
+            for (int i = 0; i < STAGE_COUNT; ++i) {
+                if (mCounts[i] > 0) {
+                    ++lines;
+                }
+            }
+            String[] out = new String[lines];
+            out[0] = String.format(Locale.US, "fps %.1f", mFps);
+            int n = 1;
+            for (int i = 0; i < STAGE_COUNT; ++i) {
+                if (mCounts[i] == 0) {
+                    continue;
+                }
+                out[n++] = String.format(Locale.US, "%s: n %d, mean %.2f, p50 %.2f, p95 %.2f, p99 %.2f, max %.2f ms",
+                        NAMES[i], mCounts[i], mMeans[i] / 1e6, mP50s[i] / 1e6, mP95s[i] / 1e6, mP99s[i] / 1e6,
+                        mMaxes[i] / 1e6);
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of detected targets stored in primitive arrays.
+ * Boxes are normalized to the processed frame, so [0, 1] on both axes.
+ */
+public class TargetList {
+
+    private int mSize;
+    private int[] mTypes;
+    private float[] mLefts;
+    private float[] mTops;
+    private float[] mRights;
+    private float[] mBottoms;
+
+    public TargetList(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        mTypes = new int[capacity];
+        mLefts = new float[capacity];
+        mTops = new float[capacity];
+        mRights = new float[capacity];
+        mBottoms = new float[capacity];
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        mSize = 0;
+    }
+
+    public void add(int type, float left, float top, float right, float bottom) {
+        ensureCapacity(mSize + 1);
+        mTypes[mSize] = type;
+        mLefts[mSize] = left;
+        mTops[mSize] = top;
+        mRights[mSize] = right;
+        mBottoms[mSize] = bottom;
+        ++mSize;
+    }
+
+    public int getType(int index) {
+        return mTypes[index];
+    }
+
+    public float getLeft(int index) {
+        return mLefts[index];
+    }
+
+    public float getTop(int index) {
+        return mTops[index];
+    }
+
+    public float getRight(int index) {
+        return mRights[index];
+    }
+
+    public float getBottom(int index) {
+        return mBottoms[index];
+    }
+
+    public void copyFrom(TargetList other) {
+        ensureCapacity(other.mSize);
+        System.arraycopy(other.mTypes, 0, mTypes, 0, other.mSize);
+        System.arraycopy(other.mLefts, 0, mLefts, 0, other.mSize);
+        System.arraycopy(other.mTops, 0, mTops, 0, other.mSize);
+        System.arraycopy(other.mRights, 0, mRights, 0, other.mSize);
+        System.arraycopy(other.mBottoms, 0, mBottoms, 0, other.mSize);
+        mSize = other.mSize;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mTypes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mTypes.length * 2);
+        mTypes = Arrays.copyOf(mTypes, newCapacity);
+        mLefts = Arrays.copyOf(mLefts, newCapacity);
+        mTops = Arrays.copyOf(mTops, newCapacity);
+        mRights = Arrays.copyOf(mRights, newCapacity);
+        mBottoms = Arrays.copyOf(mBottoms, newCapacity);
+    }
+}
@@ -0,0 +1,251 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.Arrays;
+
+/**
+ * Propagates detected boxes between keyframes by template matching inside a window around each box.
+ * Works on the grayscale detection image, so boxes are in detection image coordinates.
+ */
+public class TargetTracker {
+
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 5;
+    public static final double DEFAULT_MIN_CONFIDENCE = 0.6;
+    private static final int MIN_SEARCH_MARGIN = 8;
+    private static final int INITIAL_TRACK_CAPACITY = 16;
+    private int mKeyframeInterval;
+    private double mMinConfidence;
+    private int mFramesSinceKeyframe;
+    private boolean mKeyframeRequested;
+    private int mSize;
+    private int[] mTypes;
+    private int[] mRects;
+    private Mat[] mTemplates;
+    private final Mat mWindowMat;
+    private final Mat mResultMat;
+    private final Size mPatchSize;
+    private final Point mPatchCenter;
+    private float[] mResultBuffer;
+
+    public TargetTracker(int keyframeInterval, double minConfidence) {
+        setKeyframeInterval(keyframeInterval);
+        setMinConfidence(minConfidence);
+        mTypes = new int[INITIAL_TRACK_CAPACITY];
+        mRects = new int[INITIAL_TRACK_CAPACITY * 4];
+        mTemplates = new Mat[INITIAL_TRACK_CAPACITY];
+        mWindowMat = new Mat();
+        mResultMat = new Mat();
+        mPatchSize = new Size();
+        mPatchCenter = new Point();
+        mResultBuffer = new float[0];
+        mKeyframeRequested = true;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframeInterval must be positive: " + keyframeInterval);
+        }
+        mKeyframeInterval = keyframeInterval;
+    }
+
+    public int getKeyframeInterval() {
+        return mKeyframeInterval;
+    }
+
+    public void setMinConfidence(double minConfidence) {
+        mMinConfidence = minConfidence;
+    }
+
+    public double getMinConfidence() {
+        return mMinConfidence;
+    }
+
+    public boolean needsDetection() {
+        return mKeyframeRequested || mFramesSinceKeyframe + 1 >= mKeyframeInterval;
+    }
+
+    public void requestKeyframe() {
+        mKeyframeRequested = true;
+    }
+
+    /**
+     * @return whether the tracks were invalidated, so the next detection has to cover the whole frame
+     */
+    public boolean isKeyframeRequested() {
+        return mKeyframeRequested;
+    }
+
+    public void startKeyframe() {
+        mSize = 0;
+        mFramesSinceKeyframe = 0;
+        mKeyframeRequested = false;
+    }
+
+    /**
+     * Starts a keyframe that only detects inside the given regions: tracks overlapping a region are dropped to be
+     * replaced by the new detections, the others are kept as they are.
+     *
+     * @param regions {x, y, width, height} of each region in detection image coordinates
+     */
+    public void startPartialKeyframe(int[] regions, int regionCount) {
+        int kept = 0;
+        for (int i = 0; i < mSize; ++i) {
+            if (intersectsAny(i, regions, regionCount)) {
+                continue;
+            }
+            if (kept != i) {
+                mTypes[kept] = mTypes[i];
+                System.arraycopy(mRects, i * 4, mRects, kept * 4, 4);
+                Mat template = mTemplates[kept];
+                mTemplates[kept] = mTemplates[i];
+                mTemplates[i] = template;
+            }
+            ++kept;
+        }
+        mSize = kept;
+        mFramesSinceKeyframe = 0;
+        mKeyframeRequested = false;
+    }
+
+    /**
+     * Counts a keyframe whose detection was skipped because nothing changed; the tracks are kept as they are.
+     */
+    public void skipKeyframe() {
+        mFramesSinceKeyframe = 0;
+        mKeyframeRequested = false;
+    }
+
+    public void addTrack(Mat gray, int type, int[] rect) {
+        ensureCapacity(mSize + 1);
+        int x = Math.max(0, rect[0]);
+        int y = Math.max(0, rect[1]);
+        int w = Math.min(rect[2], gray.cols() - x);
+        int h = Math.min(rect[3], gray.rows() - y);
+        if (w <= 0 || h <= 0) {
+            return;
+        }
+        mTypes[mSize] = type;
+        mRects[mSize * 4] = x;
+        mRects[mSize * 4 + 1] = y;
+        mRects[mSize * 4 + 2] = w;
+        mRects[mSize * 4 + 3] = h;
+        if (mTemplates[mSize] == null) {
+            mTemplates[mSize] = new Mat();
+        }
+        extractPatch(gray, x, y, w, h, mTemplates[mSize]);
+        ++mSize;
+    }
+
+    /**
+     * Moves every track to its best match in the given frame.
+     *
+     * @return false if some track fell below the minimum confidence, in which case the caller should detect again
+     */
+    public boolean track(Mat gray) {
+        ++mFramesSinceKeyframe;
+        for (int i = 0; i < mSize; ++i) {
+            int o = i * 4;
+            int w = mRects[o + 2];
+            int h = mRects[o + 3];
+            int marginX = Math.max(MIN_SEARCH_MARGIN, w / 2);
+            int marginY = Math.max(MIN_SEARCH_MARGIN, h / 2);
+            int wx = mRects[o] - marginX;
+            int wy = mRects[o + 1] - marginY;
+            int ww = w + marginX * 2;
+            int wh = h + marginY * 2;
+            extractPatch(gray, wx, wy, ww, wh, mWindowMat);
+            Imgproc.matchTemplate(mWindowMat, mTemplates[i], mResultMat, Imgproc.TM_CCOEFF_NORMED);
+            int cols = mResultMat.cols();
+            int count = cols * mResultMat.rows();
+            if (mResultBuffer.length < count) {
+                mResultBuffer = new float[count];
+            }
+            mResultMat.get(0, 0, mResultBuffer);
+            int best = -1;
+            float bestScore = Float.NEGATIVE_INFINITY;
+            for (int k = 0; k < count; ++k) {
+                if (mResultBuffer[k] > bestScore) {
+                    bestScore = mResultBuffer[k];
+                    best = k;
+                }
+            }
+            if (best < 0 || !(bestScore >= mMinConfidence)) {
+                mKeyframeRequested = true;
+                return false;
+            }
+            int nx = clamp(wx + best % cols, 0, gray.cols() - w);
+            int ny = clamp(wy + best / cols, 0, gray.rows() - h);
+            mRects[o] = nx;
+            mRects[o + 1] = ny;
+            extractPatch(gray, nx, ny, w, h, mTemplates[i]);
+        }
+        return true;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public int getType(int index) {
+        return mTypes[index];
+    }
+
+    public void getRect(int index, int[] rect) {
+        System.arraycopy(mRects, index * 4, rect, 0, 4);
+    }
+
+    public void release() {
+        for (int i = 0; i < mTemplates.length; ++i) {
+            if (mTemplates[i] != null) {
+                mTemplates[i].release();
+            }
+        }
+        mWindowMat.release();
+        mResultMat.release();
+        mSize = 0;
+        mKeyframeRequested = true;
+    }
+
+    private void extractPatch(Mat gray, int x, int y, int w, int h, Mat patch) {
+        mPatchSize.width = w;
+        mPatchSize.height = h;
+        mPatchCenter.x = x + (w - 1) / 2.0;
+        mPatchCenter.y = y + (h - 1) / 2.0;
+        Imgproc.getRectSubPix(gray, mPatchSize, mPatchCenter, patch, CvType.CV_8U);
+    }
+
+    private boolean intersectsAny(int index, int[] regions, int regionCount) {
+        int o = index * 4;
+        int left = mRects[o];
+        int top = mRects[o + 1];
+        int right = left + mRects[o + 2];
+        int bottom = top + mRects[o + 3];
+        for (int i = 0; i < regionCount; ++i) {
+            int r = i * 4;
+            if (left < regions[r] + regions[r + 2] && regions[r] < right
+                    && top < regions[r + 1] + regions[r + 3] && regions[r + 1] < bottom) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mTypes.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mTypes.length * 2);
+        mTypes = Arrays.copyOf(mTypes, newCapacity);
+        mRects = Arrays.copyOf(mRects, newCapacity * 4);
+        mTemplates = Arrays.copyOf(mTemplates, newCapacity);
+    }
+
+    private static int clamp(int v, int min, int max) {
+        return Math.max(min, Math.min(max, v));
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Detector} that gives every calling thread its own instance, made by a factory on the first frame the
+ * thread detects on. Pipelines whose frames are run by whichever thread of a pool is free can share one of these
+ * without sharing scratch buffers or a model such as a cascade, which is not safe to run from two threads.
+ * <p>
+ * The instances belong to the threads, so {@link #release} does nothing and a pipeline releasing it leaves the
+ * other pipelines working; call {@link #releaseInstances} once no thread detects any more.
+ */
+public class ThreadLocalDetector implements Detector {
+
+    public interface Factory {
+        /**
+         * @return a new detector, or null if it cannot be made
+         */
+        Detector create();
+    }
+
+    private final String mName;
+    private final Factory mFactory;
+    private final ThreadLocal<Detector> mDetector;
+    private final List<Detector> mInstances;
+
+    public ThreadLocalDetector(String name, Factory factory) {
+        if (factory == null) {
+            throw new IllegalArgumentException("factory must not be null");
+        }
+        mName = name;
+        mFactory = factory;
+        mDetector = new ThreadLocal<>();
+        mInstances = new ArrayList<>();
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    @Override
+    public int detect(Mat detectionMat, double scale, DetectorParams params, MatOfRect out) {
+        Detector detector = mDetector.get();
+        if (detector == null) {
+            detector = mFactory.create();
+            if (detector == null) {
+                throw new IllegalStateException("Cannot create the " + mName + " detector");
+            }
+            mDetector.set(detector);
+            synchronized (mInstances) {
+                mInstances.add(detector);
+            }
+        }
+        return detector.detect(detectionMat, scale, params, out);
+    }
+
+    /**
+     * @return number of threads that have got their own instance so far
+     */
+    public int getInstanceCount() {
+        synchronized (mInstances) {
+            return mInstances.size();
+        }
+    }
+
+    @Override
+    public void release() {
+    }
+
+    /**
+     * Releases the instance of every thread. Threads detecting afterwards would keep using a released instance,
+     * so this is for when the threads are done, such as after their pool has terminated.
+     */
+    public void releaseInstances() {
+        synchronized (mInstances) {
+            for (Detector detector : mInstances) {
+                detector.release();
+            }
+            mInstances.clear();
+        }
+    }
+}
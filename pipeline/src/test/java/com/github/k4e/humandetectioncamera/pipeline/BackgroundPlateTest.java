@@ -0,0 +1,132 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+public class BackgroundPlateTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int BOX = 40;
+
+    @Test
+    public void fill_restoresBackgroundBehindMovingTarget() {
+        Mat background = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4);
+        Core.setRNGSeed(11);
+        Core.randu(background, 0, 255);
+        Imgproc.GaussianBlur(background, background, new Size(9, 9), 0);
+        BackgroundPlate plate = new BackgroundPlate(BackgroundPlate.DEFAULT_LEARNING_RATE,
+                BackgroundPlate.DEFAULT_WARMUP_FRAMES, BackgroundPlate.DEFAULT_EXCLUSION_PADDING);
+        Mat frame = new Mat();
+        Mat mask = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        int x = 0;
+        for (int i = 0; i < 40; ++i) {
+            x = 10 + i * 5;
+            background.copyTo(frame);
+            Imgproc.rectangle(frame, new Point(x, 100), new Point(x + BOX, 100 + BOX), Scalar.all(0.), -1);
+            plate.beginFrame(WIDTH, HEIGHT);
+            plate.excludeRegion(x, 100, BOX, BOX);
+            plate.update(frame);
+            assertEquals(i + 1 >= BackgroundPlate.DEFAULT_WARMUP_FRAMES, plate.isReady());
+        }
+        mask.setTo(Scalar.all(0.));
+        Imgproc.rectangle(mask, new Point(x, 100), new Point(x + BOX, 100 + BOX), Scalar.all(255.), -1);
+        assertTrue(plate.isFullyCovered());
+        assertFalse(plate.fill(frame, mask, new Mat()));
+
+        Mat diff = new Mat();
+        Core.absdiff(background, frame, diff);
+        Scalar mean = Core.mean(diff);
+        for (int c = 0; c < 3; ++c) {
+            assertTrue("mean diff " + mean, mean.val[c] < 1.0);
+        }
+        plate.release();
+    }
+
+    @Test
+    public void fill_leavesTargetStaticFromFirstFrameUncovered() {
+        Mat background = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4);
+        Core.setRNGSeed(11);
+        Core.randu(background, 0, 255);
+        BackgroundPlate plate = new BackgroundPlate(BackgroundPlate.DEFAULT_LEARNING_RATE, 1,
+                BackgroundPlate.DEFAULT_EXCLUSION_PADDING);
+        Mat frame = new Mat();
+        background.copyTo(frame);
+        Imgproc.rectangle(frame, new Point(100, 100), new Point(100 + BOX, 100 + BOX), Scalar.all(0.), -1);
+        for (int i = 0; i < 5; ++i) {
+            plate.beginFrame(WIDTH, HEIGHT);
+            plate.excludeRegion(100, 100, BOX, BOX);
+            plate.update(frame);
+        }
+        assertTrue(plate.isReady());
+        assertFalse(plate.isFullyCovered());
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        // Half of the mask lies outside the padded box the person has always stood in
+        int left = 100 - BOX;
+        mask.submat(100, 100 + BOX, left, left + 2 * BOX).setTo(Scalar.all(255.));
+        Mat image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, Scalar.all(255.));
+        Mat uncovered = new Mat();
+        assertTrue(plate.fill(image, mask, uncovered));
+
+        int padding = BackgroundPlate.DEFAULT_EXCLUSION_PADDING;
+        int learnedWidth = BOX - padding;
+        assertEquals((2 * BOX - learnedWidth) * BOX, Core.countNonZero(uncovered));
+        Mat learned = image.submat(100, 100 + BOX, left, left + learnedWidth);
+        Mat expected = background.submat(100, 100 + BOX, left, left + learnedWidth);
+        Mat diff = new Mat();
+        Core.absdiff(learned, expected, diff);
+        assertEquals(0, Core.countNonZero(diff.reshape(1)));
+        // The person is not copied back from the plate; the caller inpaints these pixels
+        Mat untouched = image.submat(100, 100 + BOX, left + learnedWidth, left + 2 * BOX);
+        assertEquals(Scalar.all(255.), Core.mean(untouched));
+        plate.release();
+    }
+
+    @Test
+    public void update_learnsPixelOnceTargetLeaves() {
+        Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, Scalar.all(0.));
+        BackgroundPlate plate = new BackgroundPlate(BackgroundPlate.DEFAULT_LEARNING_RATE, 1, 0);
+        plate.beginFrame(WIDTH, HEIGHT);
+        plate.excludeRegion(0, 0, BOX, BOX);
+        plate.update(frame);
+        assertFalse(plate.isFullyCovered());
+        frame.setTo(Scalar.all(200.));
+        plate.beginFrame(WIDTH, HEIGHT);
+        plate.update(frame);
+        assertTrue(plate.isFullyCovered());
+        Mat image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, Scalar.all(0.));
+        Mat mask = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, Scalar.all(255.));
+        assertFalse(plate.fill(image, mask, new Mat()));
+        // Seeded from the frame the pixel was first seen in, not averaged with an empty model
+        assertEquals(200., image.get(BOX / 2, BOX / 2)[0], 0);
+        assertEquals(200. * BackgroundPlate.DEFAULT_LEARNING_RATE, image.get(HEIGHT - 1, WIDTH - 1)[0], 1);
+        plate.release();
+    }
+
+    @Test
+    public void beginFrame_resetsModelOnSizeChange() {
+        BackgroundPlate plate = new BackgroundPlate(BackgroundPlate.DEFAULT_LEARNING_RATE, 1,
+                BackgroundPlate.DEFAULT_EXCLUSION_PADDING);
+        Mat frame = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC4);
+        plate.beginFrame(WIDTH, HEIGHT);
+        plate.update(frame);
+        assertTrue(plate.isReady());
+        plate.beginFrame(HEIGHT, WIDTH);
+        assertFalse(plate.isReady());
+        plate.release();
+    }
+}
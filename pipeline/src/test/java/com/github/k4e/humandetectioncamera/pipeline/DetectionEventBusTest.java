@@ -0,0 +1,127 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectionEventBusTest {
+
+    @Test
+    public void publish_withoutSubscribersCopiesNothing() {
+        DetectionEventBus bus = new DetectionEventBus(8);
+        assertTrue(bus.publish(1, 0, targets(3)));
+        assertEquals(0, bus.getPublishedFrameCount());
+        DetectionEventBus.Subscription subscription = bus.subscribe();
+        assertEquals(0, subscription.getPendingCount());
+        assertTrue(bus.publish(2, 1, targets(0)));
+        assertEquals(1, subscription.getPendingCount());
+        subscription.close();
+        assertEquals(0, bus.getSubscriberCount());
+    }
+
+    @Test
+    public void poll_deliversFrameRecordThenTargets() {
+        DetectionEventBus bus = new DetectionEventBus(16);
+        DetectionEventBus.Subscription subscription = bus.subscribe();
+        bus.publish(1000, 7, targets(2));
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(2, subscription.poll(handler, 2));
+        assertEquals(1, subscription.poll(handler, 10));
+        assertEquals(0, subscription.poll(handler, 10));
+        assertEquals("1000 7 -1 0.0 0.0 0.0 0.0", handler.mRecords.get(0));
+        assertEquals("1000 7 0 0.0 0.5 0.1 1.0", handler.mRecords.get(1));
+        assertEquals("1000 7 1 0.1 0.5 0.2 1.0", handler.mRecords.get(2));
+    }
+
+    @Test
+    public void publish_dropsWholeFrameBehindSlowSubscriber() {
+        DetectionEventBus bus = new DetectionEventBus(8);
+        DetectionEventBus.Subscription slow = bus.subscribe();
+        DetectionEventBus.Subscription fast = bus.subscribe();
+        RecordingHandler handler = new RecordingHandler();
+        assertTrue(bus.publish(0, 0, targets(3)));
+        fast.poll(handler, 100);
+        assertTrue(bus.publish(1, 1, targets(2)));
+        fast.poll(handler, 100);
+        assertFalse(bus.publish(2, 2, targets(1)));
+        assertEquals(1, bus.getDroppedFrameCount());
+        assertEquals(7, slow.poll(new RecordingHandler(), 100));
+        assertTrue(bus.publish(3, 3, targets(1)));
+        assertEquals(2, fast.poll(handler, 100));
+        assertEquals("3 3 -1 0.0 0.0 0.0 0.0", handler.mRecords.get(7));
+    }
+
+    @Test
+    public void poll_keepsRecordsIntactAcrossThreads() throws InterruptedException {
+        final DetectionEventBus bus = new DetectionEventBus(64);
+        DetectionEventBus.Subscription subscription = bus.subscribe();
+        final int frames = 20000;
+        Thread publisher = new Thread(new Runnable() {
+            @Override public void run() {
+                TargetList list = new TargetList(8);
+                for (int i = 0; i < frames; ++i) {
+                    list.clear();
+                    for (int j = 0; j < i % 5; ++j) {
+                        list.add(j, i, -i, j, -j);
+                    }
+                    bus.publish(i, i, list);
+                }
+            }
+        });
+        final long[] state = { -1, 0, 0 };
+        DetectionEventBus.RecordHandler checker = new DetectionEventBus.RecordHandler() {
+            @Override
+            public void onRecord(long timestampNanos, long frameId, int type, float left, float top, float right,
+                    float bottom) {
+                assertEquals(frameId, timestampNanos);
+                if (type == DetectionEventBus.TYPE_FRAME) {
+                    assertTrue(frameId > state[0]);
+                    assertEquals(state[0] < 0 ? 0 : state[0] % 5, state[1]);
+                    state[0] = frameId;
+                    state[1] = 0;
+                    ++state[2];
+                    return;
+                }
+                assertEquals(frameId, state[0]);
+                assertEquals(state[1], type);
+                assertEquals(frameId, left, 0);
+                assertEquals(-frameId, top, 0);
+                assertEquals(type, right, 0);
+                ++state[1];
+            }
+        };
+        publisher.start();
+        while (publisher.isAlive() || subscription.getPendingCount() > 0) {
+            subscription.poll(checker, 7);
+        }
+        publisher.join();
+        assertEquals(frames, state[2] + bus.getDroppedFrameCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsCapacityNotPowerOfTwo() {
+        new DetectionEventBus(100);
+    }
+
+    private static TargetList targets(int count) {
+        TargetList targets = new TargetList(count);
+        for (int i = 0; i < count; ++i) {
+            targets.add(i % 2, i / 10f, 0.5f, (i + 1) / 10f, 1f);
+        }
+        return targets;
+    }
+
+    private static class RecordingHandler implements DetectionEventBus.RecordHandler {
+        final List<String> mRecords = new ArrayList<>();
+
+        @Override
+        public void onRecord(long timestampNanos, long frameId, int type, float left, float top, float right,
+                float bottom) {
+            mRecords.add(timestampNanos + " " + frameId + " " + type + " " + left + " " + top + " " + right
+                    + " " + bottom);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectionLogSinkTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void close_writesEveryRecordAsCsv() throws IOException {
+        File file = mFolder.newFile("events.csv");
+        assertEquals(DetectionLogSink.FORMAT_CSV, DetectionLogSink.formatOf(file));
+        DetectionEventBus bus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY);
+        DetectionLogSink sink = new DetectionLogSink(bus, file, DetectionLogSink.FORMAT_CSV,
+                DetectionLogSink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        sink.start();
+        publishFrames(bus, 10);
+        sink.close();
+        assertEquals(0, bus.getSubscriberCount());
+        assertEquals(20, sink.getWrittenRecordCount());
+
+        List<String> lines = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            in.close();
+        }
+        assertEquals(21, lines.size());
+        assertEquals(DetectionLogSink.CSV_HEADER, lines.get(0));
+        assertEquals("9000,9,-1,0.0,0.0,0.0,0.0", lines.get(19));
+        assertEquals("9000,9,1,0.25,0.5,0.75,1.0", lines.get(20));
+    }
+
+    @Test
+    public void close_writesBinaryThatReadsBack() throws IOException {
+        File file = mFolder.newFile("events.bin");
+        DetectionEventBus bus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY);
+        DetectionLogSink sink = new DetectionLogSink(bus, file, DetectionLogSink.formatOf(file), 1);
+        sink.start();
+        publishFrames(bus, 100);
+        sink.close();
+        assertEquals(8 + 200 * 33, file.length());
+        final List<float[]> targets = new ArrayList<>();
+        long count = DetectionLogSink.readBinary(file, new DetectionEventBus.RecordHandler() {
+            @Override
+            public void onRecord(long timestampNanos, long frameId, int type, float left, float top, float right,
+                    float bottom) {
+                assertEquals(frameId * 1000, timestampNanos);
+                if (type != DetectionEventBus.TYPE_FRAME) {
+                    targets.add(new float[] { type, left, top, right, bottom });
+                }
+            }
+        });
+        assertEquals(200, count);
+        assertEquals(100, targets.size());
+        assertArrayEquals(new float[] { 1, 0.25f, 0.5f, 0.75f, 1f }, targets.get(99), 0);
+    }
+
+    @Test
+    public void start_logsOnlyLaterFrames() throws IOException {
+        DetectionEventBus bus = new DetectionEventBus(16);
+        DetectionEventBus.Subscription other = bus.subscribe();
+        publishFrames(bus, 3);
+        DetectionLogSink sink = new DetectionLogSink(bus, mFolder.newFile("events.csv"), DetectionLogSink.FORMAT_CSV,
+                DetectionLogSink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+        sink.start();
+        sink.close();
+        assertEquals(0, sink.getWrittenRecordCount());
+        assertEquals(6, other.getPendingCount());
+    }
+
+    private static void publishFrames(DetectionEventBus bus, int frames) {
+        TargetList targets = new TargetList(1);
+        targets.add(FramePipeline.TARGET_BODY, 0.25f, 0.5f, 0.75f, 1f);
+        for (int i = 0; i < frames; ++i) {
+            assertTrue(bus.publish(i * 1000L, i, targets));
+        }
+    }
+}
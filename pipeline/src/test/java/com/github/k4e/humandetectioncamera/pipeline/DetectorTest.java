@@ -0,0 +1,100 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class DetectorTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final String FACE_CASCADE = "../app/src/main/assets/haarcascades/haarcascade_frontalface_alt.xml";
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cascadeDetector_rejectsEmptyClassifier() {
+        new CascadeDetector(CascadeDetector.LBP, new CascadeClassifier());
+    }
+
+    @Test
+    public void cascadeDetector_loadReturnsNullForMissingFile() {
+        assertNull(CascadeDetector.load(CascadeDetector.LBP, "no/such/cascade.xml"));
+    }
+
+    @Test
+    public void detectors_findNothingOnNoise() {
+        assumeTrue(new File(FACE_CASCADE).isFile());
+        Mat noise = new Mat(320, 240, CvType.CV_8UC1);
+        Core.setRNGSeed(7);
+        Core.randu(noise, 0, 256);
+        MatOfRect out = new MatOfRect();
+        Detector[] detectors = { CascadeDetector.load(CascadeDetector.HAAR, FACE_CASCADE), new HogDetector() };
+        for (Detector detector : detectors) {
+            assertEquals(detector.getName(), 0, detector.detect(noise, 0.5, DetectorParams.DEFAULT_BODY, out));
+            detector.release();
+        }
+        out.release();
+        noise.release();
+    }
+
+    @Test
+    public void hogDetector_skipsImageSmallerThanWindow() {
+        HogDetector detector = new HogDetector();
+        Mat small = Mat.zeros(100, 200, CvType.CV_8UC1);
+        MatOfRect out = new MatOfRect();
+        assertEquals(0, detector.detect(small, 1.0, DetectorParams.DEFAULT_BODY, out));
+        assertEquals(0, out.rows());
+        detector.release();
+        small.release();
+        out.release();
+    }
+
+    @Test
+    public void threadLocalDetector_runsEachThreadOnItsOwnInstance() throws InterruptedException {
+        final Set<Detector> created = Collections.newSetFromMap(new IdentityHashMap<Detector, Boolean>());
+        final ThreadLocalDetector detector = new ThreadLocalDetector(HogDetector.NAME,
+                new ThreadLocalDetector.Factory() {
+                    @Override public Detector create() {
+                        Detector instance = new HogDetector();
+                        synchronized (created) {
+                            created.add(instance);
+                        }
+                        return instance;
+                    }
+                });
+        final Mat small = Mat.zeros(100, 200, CvType.CV_8UC1);
+        Runnable detectTwice = new Runnable() {
+            @Override public void run() {
+                MatOfRect out = new MatOfRect();
+                detector.detect(small, 1.0, DetectorParams.DEFAULT_BODY, out);
+                detector.detect(small, 1.0, DetectorParams.DEFAULT_BODY, out);
+                out.release();
+            }
+        };
+        detectTwice.run();
+        Thread other = new Thread(detectTwice);
+        other.start();
+        other.join();
+        assertEquals(2, detector.getInstanceCount());
+        assertEquals(2, created.size());
+        detector.release();
+        assertEquals(2, detector.getInstanceCount());
+        detector.releaseInstances();
+        assertEquals(0, detector.getInstanceCount());
+        small.release();
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+public class FrameGeometryTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int[] ORIENTATIONS = { 0, 90, 180, 270 };
+    private static final int[] RECT = { 5, 7, 20, 11 };
+
+    @Test
+    public void toDisplay_rectMatchesRotatedImage() {
+        for (int orientation : ORIENTATIONS) {
+            for (boolean front : new boolean[] { false, true }) {
+                FrameGeometry geometry = new FrameGeometry(orientation, front);
+                Mat sensor = paintRect(WIDTH, HEIGHT, RECT);
+                Mat display = new Mat();
+                geometry.toDisplay(sensor, display);
+                assertEquals(geometry.getDisplayWidth(WIDTH, HEIGHT), display.cols());
+                assertEquals(geometry.getDisplayHeight(WIDTH, HEIGHT), display.rows());
+                int[] rect = RECT.clone();
+                geometry.toDisplay(rect, WIDTH, HEIGHT);
+                assertRect(orientation, front, boundingRect(display), rect);
+                sensor.release();
+                display.release();
+            }
+        }
+    }
+
+    @Test
+    public void toSensor_invertsToDisplay() {
+        for (int orientation : ORIENTATIONS) {
+            for (boolean front : new boolean[] { false, true }) {
+                FrameGeometry geometry = new FrameGeometry(orientation, front);
+                int[] rect = RECT.clone();
+                geometry.toDisplay(rect, WIDTH, HEIGHT);
+                geometry.toSensor(rect, WIDTH, HEIGHT);
+                assertRect(orientation, front, RECT, rect);
+            }
+        }
+    }
+
+    @Test
+    public void isSwapped_onlyForQuarterTurns() {
+        assertFalse(new FrameGeometry(0, false).isSwapped());
+        assertTrue(new FrameGeometry(90, true).isSwapped());
+        assertFalse(new FrameGeometry(180, false).isSwapped());
+        assertTrue(new FrameGeometry(270, false).isSwapped());
+        assertEquals(HEIGHT, new FrameGeometry(90, false).getDisplayWidth(WIDTH, HEIGHT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsOtherAngles() {
+        new FrameGeometry(45, false);
+    }
+
+    @Test
+    public void detectionStage_mapsRotatedDetectionsToSensor() {
+        int width = 640;
+        int height = 480;
+        int[] source = { 100, 60, 160, 200 };
+        for (int orientation : ORIENTATIONS) {
+            DetectionStage stage = new DetectionStage(240);
+            stage.setRotation(orientation);
+            Mat gray = paintRect(width, height, source);
+            stage.prepareGray(gray);
+            Mat detection = stage.getDetectionMat();
+            boolean swapped = orientation == 90 || orientation == 270;
+            assertEquals(240, detection.cols());
+            assertEquals(swapped ? 320 : 180, detection.rows());
+            Mat bright = new Mat();
+            Imgproc.threshold(detection, bright, 128, 255, Imgproc.THRESH_BINARY);
+            int[] rect = boundingRect(bright);
+            stage.mapToSource(rect);
+            for (int i = 0; i < 4; ++i) {
+                assertEquals("orientation " + orientation, source[i], rect[i], 1 / stage.getScale() + 1);
+            }
+            gray.release();
+            bright.release();
+            stage.release();
+        }
+    }
+
+    private static Mat paintRect(int width, int height, int[] rect) {
+        Mat mat = Mat.zeros(height, width, CvType.CV_8UC1);
+        Imgproc.rectangle(mat, new Point(rect[0], rect[1]),
+                new Point(rect[0] + rect[2] - 1, rect[1] + rect[3] - 1), new Scalar(255), -1);
+        return mat;
+    }
+
+    private static int[] boundingRect(Mat mask) {
+        MatOfPoint points = new MatOfPoint();
+        Core.findNonZero(mask, points);
+        Rect r = Imgproc.boundingRect(points);
+        points.release();
+        return new int[] { r.x, r.y, r.width, r.height };
+    }
+
+    private static void assertRect(int orientation, boolean front, int[] expected, int[] actual) {
+        String message = "orientation " + orientation + (front ? ", front" : ", back");
+        assertArrayEquals(message, expected, actual);
+    }
+}
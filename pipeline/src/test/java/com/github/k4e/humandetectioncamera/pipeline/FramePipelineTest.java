@@ -0,0 +1,419 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.objdetect.CascadeClassifier;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class FramePipelineTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final String CASCADE_DIR = "../app/src/main/assets/haarcascades/";
+
+    @Test
+    public void process_withoutFrameReturnsFalse() {
+        FramePipeline pipeline = new FramePipeline(0);
+        assertFalse(pipeline.process(new Nv21FrameConverter()));
+        pipeline.release();
+    }
+
+    @Test
+    public void process_keepsSensorOrientationForPortrait() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline landscape = new FramePipeline(0);
+        assertTrue(landscape.process(converter));
+        assertEquals(WIDTH, landscape.getOutput().cols());
+        assertEquals(HEIGHT, landscape.getOutput().rows());
+        FramePipeline portrait = new FramePipeline(90);
+        assertTrue(portrait.process(converter));
+        assertEquals(WIDTH, portrait.getOutput().cols());
+        assertEquals(HEIGHT, portrait.getOutput().rows());
+        Mat display = new Mat();
+        portrait.getGeometry().toDisplay(portrait.getOutput(), display);
+        assertEquals(HEIGHT, display.cols());
+        assertEquals(WIDTH, display.rows());
+        display.release();
+        landscape.release();
+        portrait.release();
+        converter.release();
+    }
+
+    @Test
+    public void process_passesFrameThroughWithoutTargets() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        Mat expected = new Mat();
+        converter.toRgba(expected);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setInpaintingOn(true);
+        assertTrue(pipeline.process(converter));
+        assertEquals(0, pipeline.getTargets().size());
+        Mat diff = new Mat();
+        Core.absdiff(expected, pipeline.getOutput(), diff);
+        assertEquals(0, Core.countNonZero(diff.reshape(1)));
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void process_withoutOutputDetectsFromLumaOnly() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(90);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(new HogDetector());
+        pipeline.setOutputEnable(false);
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        assertNull(pipeline.getOutput());
+        assertEquals(0, pipeline.getStageTimer().getCount(StageTimer.CONVERSION));
+        assertEquals(1, pipeline.getStageTimer().getCount(StageTimer.DETECTION_PREPARE));
+        pipeline.setInpaintingOn(true);
+        assertTrue(pipeline.process(converter));
+        assertNotNull(pipeline.getOutput());
+        assertEquals(1, pipeline.getStageTimer().getCount(StageTimer.CONVERSION));
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void process_skipsDetectionUntilDetectorsAreSet() {
+        String face = CASCADE_DIR + "haarcascade_frontalface_alt.xml";
+        assumeTrue(new File(face).isFile());
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setFaceDetectionEnable(true);
+        assertFalse(pipeline.hasDetectors());
+        assertTrue(pipeline.process(converter));
+        assertFalse(pipeline.isKeyframe());
+        CascadeClassifier shared = new CascadeClassifier(face);
+        pipeline.setDetectors(new CascadeDetector(CascadeDetector.HAAR, shared),
+                new CascadeDetector(CascadeDetector.HAAR, shared));
+        assertTrue(pipeline.hasDetectors());
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void setBodyDetector_switchesBackendOnNextFrame() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(new HogDetector());
+        assertNull(pipeline.getBodyDetector());
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        assertEquals(HogDetector.NAME, pipeline.getBodyDetector().getName());
+        assertNull(pipeline.getFaceDetector());
+        assertTrue(pipeline.process(converter));
+        assertFalse(pipeline.isKeyframe());
+        HogDetector replacement = new HogDetector(16, 0.5);
+        pipeline.setBodyDetector(replacement);
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        assertSame(replacement, pipeline.getBodyDetector());
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void motionGate_skipsDetectionOnStaticScene() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(new HogDetector());
+        pipeline.setTrackingEnable(false);
+        pipeline.setMotionGateEnable(true);
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(pipeline.process(converter));
+            assertFalse(pipeline.isKeyframe());
+        }
+        assertEquals(3, pipeline.getMotionSkippedCount());
+        assertEquals(1, pipeline.getMotionFullFrameCount());
+        assertEquals(0.75, pipeline.getMotionSkipRatio(), 1e-9);
+        assertTrue(pipeline.getMotionSavedNanos() > 0);
+        pipeline.requestReset();
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void requestReset_andGeometryChange_forceKeyframe() {
+        String face = CASCADE_DIR + "haarcascade_frontalface_alt.xml";
+        assumeTrue(new File(face).isFile());
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.loadDetectors(face, face);
+        pipeline.setFaceDetectionEnable(true);
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        assertTrue(pipeline.process(converter));
+        assertFalse(pipeline.isKeyframe());
+        int matCount = pipeline.getMatAllocationCount();
+        pipeline.requestReset();
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        pipeline.setGeometry(new FrameGeometry(0, true));
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        assertTrue(pipeline.getGeometry().isMirrored());
+        assertEquals(matCount, pipeline.getMatAllocationCount());
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void process_runsCascadesHeadless() {
+        String face = CASCADE_DIR + "haarcascade_frontalface_alt.xml";
+        String body = CASCADE_DIR + "haarcascade_fullbody.xml";
+        assumeTrue(new File(face).isFile() && new File(body).isFile());
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.loadDetectors(face, body);
+        pipeline.setFaceDetectionEnable(true);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setInpaintingOn(true);
+        int matCount = -1;
+        for (int i = 0; i < 2 * TargetTracker.DEFAULT_KEYFRAME_INTERVAL; ++i) {
+            assertTrue(pipeline.process(converter));
+            if (i == 0) {
+                assertTrue(pipeline.isKeyframe());
+                matCount = pipeline.getMatAllocationCount();
+            }
+        }
+        assertEquals(matCount, pipeline.getMatAllocationCount());
+        assertTrue(pipeline.getDetectionLatencyNanos() > 0);
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void qualityLevelChange_redetectsTrackedTargets() {
+        int width = 640;
+        int height = 480;
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(width, height), width, height);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(new FixedDetector(160, 120, 160, 160));
+        // On a static scene every later keyframe is skipped and the tracks are carried over as they are
+        pipeline.setTrackingEnable(false);
+        pipeline.setMotionGateEnable(true);
+        pipeline.setQualityGovernorEnable(true);
+        // Every frame is over budget, so the governor steps down a level every few frames
+        pipeline.setTargetFps(1e9);
+        QualityGovernor.Level[] levels = QualityGovernor.getDefaultLevels();
+        int widthChanges = 0;
+        int appliedWidth = -1;
+        for (int i = 0; i < 30; ++i) {
+            int level = pipeline.getQualityLevel();
+            int detectionWidth = level < 0 ? pipeline.getDetectionWidth()
+                    : levels[level].getDetectionWidth();
+            assertTrue(pipeline.process(converter));
+            if (appliedWidth >= 0 && detectionWidth != appliedWidth) {
+                assertTrue(pipeline.isKeyframe());
+                ++widthChanges;
+            }
+            appliedWidth = detectionWidth;
+            TargetList targets = pipeline.getTargets();
+            assertEquals(1, targets.size());
+            assertEquals(0.25, targets.getLeft(0), 0.01);
+            assertEquals(0.25, targets.getTop(0), 0.01);
+            assertEquals(0.5, targets.getRight(0), 0.01);
+            assertEquals(280. / 480, targets.getBottom(0), 0.01);
+        }
+        assertEquals(pipeline.getQualityLevelCount() - 1, pipeline.getQualityLevel());
+        assertEquals(pipeline.getQualityLevelCount() - 1, widthChanges);
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void qualityGovernor_restoresManualSettingsWhenDisabled() {
+        int width = 640;
+        int height = 480;
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(width, height), width, height);
+        FramePipeline pipeline = new FramePipeline(0);
+        FixedDetector detector = new FixedDetector(160, 120, 160, 160);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(detector);
+        pipeline.setInpaintingOn(true);
+        pipeline.setInpaintingMode(FramePipeline.INPAINTING_FULL_FRAME);
+        pipeline.setDetectionWidth(320);
+        pipeline.setQualityGovernorEnable(true);
+        pipeline.setTargetFps(1e9);
+        int last = pipeline.getQualityLevelCount() - 1;
+        for (int i = 0; i < 30 && pipeline.getQualityLevel() < last; ++i) {
+            assertTrue(pipeline.process(converter));
+        }
+        assertEquals(last, pipeline.getQualityLevel());
+        pipeline.setKeyframeInterval(2);
+        assertTrue(pipeline.process(converter));
+        // The ROI inpainting of the cheapest level is in use, not the slow full frame inpainting
+        assertEquals(4, pipeline.getOutput().channels());
+        assertFalse(pipeline.isBackgroundPlateReady());
+        assertEquals(QualityGovernor.getDefaultLevels()[last].getDetectionWidth(), width * detector.mScale, 1e-9);
+        assertEquals(320, pipeline.getDetectionWidth());
+        assertEquals(2, pipeline.getKeyframeInterval());
+        assertEquals(FramePipeline.INPAINTING_FULL_FRAME, pipeline.getInpaintingMode());
+        pipeline.setQualityGovernorEnable(false);
+        assertTrue(pipeline.process(converter));
+        assertEquals(-1, pipeline.getQualityLevel());
+        assertTrue(pipeline.isKeyframe());
+        assertEquals(0.5, detector.mScale, 1e-9);
+        assertEquals(3, pipeline.getOutput().channels());
+        assertTrue(pipeline.process(converter));
+        assertFalse(pipeline.isKeyframe());
+        assertTrue(pipeline.process(converter));
+        assertTrue(pipeline.isKeyframe());
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void release_detachesReleasedDetectors() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        FixedDetector detector = new FixedDetector(120, 80, 80, 80);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(detector);
+        assertTrue(pipeline.process(converter));
+        assertEquals(1, pipeline.getTargets().size());
+        pipeline.release();
+        assertEquals(1, detector.mReleaseCount);
+        assertFalse(pipeline.hasDetectors());
+        assertNull(pipeline.getBodyDetector());
+        // The released detector is not used again, nor released twice
+        assertTrue(pipeline.process(converter));
+        assertEquals(0, pipeline.getTargets().size());
+        pipeline.release();
+        assertEquals(1, detector.mReleaseCount);
+        FixedDetector attached = new FixedDetector(120, 80, 80, 80);
+        pipeline.setBodyDetector(attached);
+        assertTrue(pipeline.process(converter));
+        assertEquals(1, pipeline.getTargets().size());
+        assertEquals(0, attached.mReleaseCount);
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void qualityGovernor_keepsBackgroundPlateChosenByHand() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(new FixedDetector(120, 80, 80, 80));
+        pipeline.setInpaintingOn(true);
+        pipeline.setInpaintingMode(FramePipeline.INPAINTING_BACKGROUND_PLATE);
+        pipeline.setQualityGovernorEnable(true);
+        pipeline.setTargetFps(1e9);
+        for (int i = 0; i <= BackgroundPlate.DEFAULT_WARMUP_FRAMES; ++i) {
+            assertTrue(pipeline.process(converter));
+        }
+        // The level changes did not switch the plate off, so it warmed up
+        assertEquals(pipeline.getQualityLevelCount() - 1, pipeline.getQualityLevel());
+        assertTrue(pipeline.isBackgroundPlateReady());
+        pipeline.release();
+        converter.release();
+    }
+
+    @Test
+    public void backgroundPlate_inpaintsTargetStaticFromFirstFrame() {
+        FrameConverter converter = new Nv21FrameConverter();
+        converter.put(syntheticFrame(WIDTH, HEIGHT), WIDTH, HEIGHT);
+        Mat input = new Mat();
+        converter.toRgba(input);
+        FramePipeline pipeline = new FramePipeline(0);
+        pipeline.setBodyDetectionEnable(true);
+        pipeline.setBodyDetector(new FixedDetector(120, 80, 80, 80));
+        pipeline.setInpaintingOn(true);
+        pipeline.setInpaintingMode(FramePipeline.INPAINTING_BACKGROUND_PLATE);
+        for (int i = 0; i <= BackgroundPlate.DEFAULT_WARMUP_FRAMES; ++i) {
+            assertTrue(pipeline.process(converter));
+        }
+        assertTrue(pipeline.isBackgroundPlateReady());
+        // The plate never saw behind the target, so the target must not be copied back from it
+        Mat diff = new Mat();
+        Core.absdiff(input.submat(100, 140, 140, 180), pipeline.getOutput().submat(100, 140, 140, 180), diff);
+        assertTrue(Core.mean(diff).val[0] > 20);
+        diff.release();
+        input.release();
+        pipeline.release();
+        converter.release();
+    }
+
+    private static byte[] syntheticFrame(int width, int height) {
+        Mat gray = new Mat(height + height / 2, width, CvType.CV_8UC1);
+        Core.setRNGSeed(3);
+        Core.randu(gray, 0, 255);
+        byte[] nv21 = new byte[width * (height + height / 2)];
+        gray.get(0, 0, nv21);
+        gray.release();
+        return nv21;
+    }
+
+    /**
+     * Finds one box at a fixed place of the preview frame.
+     */
+    private static class FixedDetector implements Detector {
+
+        private final int[] mRect;
+        private double mScale;
+        private int mReleaseCount;
+
+        FixedDetector(int x, int y, int width, int height) {
+            mRect = new int[] { x, y, width, height };
+        }
+
+        @Override
+        public String getName() {
+            return "Fixed";
+        }
+
+        @Override
+        public int detect(Mat detectionMat, double scale, DetectorParams params, MatOfRect out) {
+            mScale = scale;
+            int[] rect = new int[4];
+            for (int i = 0; i < 4; ++i) {
+                rect[i] = (int) Math.round(mRect[i] * scale);
+            }
+            out.create(1, 1, CvType.CV_32SC4);
+            out.put(0, 0, rect);
+            return 1;
+        }
+
+        @Override
+        public void release() {
+            ++mReleaseCount;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FrameRecorderTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void submit_writesUprightVideoAndSidecar() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(mFolder.newFile("out.avi"), 15, 4, FrameRecorder.DROP_NEWEST);
+        recorder.setGeometry(new FrameGeometry(90, false));
+        recorder.start();
+        Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4, new Scalar(200, 100, 50, 255));
+        TargetList targets = new TargetList(2);
+        targets.add(FramePipeline.TARGET_FACE, 0.25f, 0.5f, 0.75f, 1f);
+        for (int i = 0; i < 5; ++i) {
+            while (!recorder.submit(frame, targets, 1000L * i)) {
+                Thread.yield();
+            }
+        }
+        recorder.close();
+        frame.release();
+        assertEquals(5, recorder.getWrittenFrameCount());
+        assertEquals(0, recorder.getQueueDepth());
+
+        VideoCapture capture = new VideoCapture();
+        assertTrue(capture.open(recorder.getVideoFile().getPath(), Videoio.CAP_OPENCV_MJPEG));
+        Mat read = new Mat();
+        int count = 0;
+        while (capture.read(read)) {
+            assertEquals(HEIGHT, read.cols());
+            assertEquals(WIDTH, read.rows());
+            // BGR of the RGBA input, give or take JPEG rounding
+            double[] pixel = read.get(WIDTH / 2, HEIGHT / 2);
+            assertEquals(50, pixel[0], 8);
+            assertEquals(200, pixel[2], 8);
+            ++count;
+        }
+        capture.release();
+        read.release();
+        assertEquals(5, count);
+
+        List<String> lines = readSidecar(recorder);
+        assertEquals(5, lines.size());
+        assertEquals("4 4000 1 " + FramePipeline.TARGET_FACE + " 0.25 0.5 0.75 1.0", lines.get(4));
+    }
+
+    @Test
+    public void submit_dropNewestKeepsQueuedFrames() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(mFolder.newFile("out.avi"), 15, 2, FrameRecorder.DROP_NEWEST);
+        boolean[] accepted = submitFive(recorder);
+        assertArrayEquals(new boolean[] { true, true, true, false, false }, accepted);
+        assertEquals(2, recorder.getDroppedFrameCount());
+        assertEquals(3, recorder.getMaxQueueDepth());
+        recorder.start();
+        recorder.close();
+        assertEquals(3, recorder.getWrittenFrameCount());
+        assertEquals(timestamps(0, 1, 2), timestampsOf(readSidecar(recorder)));
+    }
+
+    @Test
+    public void submit_dropOldestKeepsLatestFrames() throws IOException {
+        FrameRecorder recorder = new FrameRecorder(mFolder.newFile("out.avi"), 15, 2, FrameRecorder.DROP_OLDEST);
+        boolean[] accepted = submitFive(recorder);
+        assertArrayEquals(new boolean[] { true, true, true, true, true }, accepted);
+        assertEquals(2, recorder.getDroppedFrameCount());
+        assertEquals(5, recorder.getSubmittedFrameCount());
+        recorder.start();
+        recorder.close();
+        assertEquals(3, recorder.getWrittenFrameCount());
+        assertEquals(timestamps(2, 3, 4), timestampsOf(readSidecar(recorder)));
+        assertFalse(recorder.submit(new Mat(), null, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsUnknownDropPolicy() {
+        new FrameRecorder(new File("out.avi"), 15, 2, 7);
+    }
+
+    private static boolean[] submitFive(FrameRecorder recorder) {
+        Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3, new Scalar(0));
+        boolean[] accepted = new boolean[5];
+        for (int i = 0; i < accepted.length; ++i) {
+            accepted[i] = recorder.submit(frame, null, i);
+        }
+        frame.release();
+        return accepted;
+    }
+
+    private static List<String> readSidecar(FrameRecorder recorder) throws IOException {
+        List<String> lines = new ArrayList<>();
+        BufferedReader in = new BufferedReader(new FileReader(recorder.getSidecarFile()));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return lines;
+    }
+
+    private static List<String> timestampsOf(List<String> lines) {
+        List<String> timestamps = new ArrayList<>();
+        for (String line : lines) {
+            timestamps.add(line.split(" ")[1]);
+        }
+        return timestamps;
+    }
+
+    private static List<String> timestamps(long... values) {
+        List<String> timestamps = new ArrayList<>();
+        for (long value : values) {
+            timestamps.add(String.valueOf(value));
+        }
+        return timestamps;
+    }
+}
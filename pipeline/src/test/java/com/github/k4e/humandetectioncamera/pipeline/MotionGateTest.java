@@ -0,0 +1,88 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+public class MotionGateTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Test
+    public void update_reportsFullFrameWithoutReference() {
+        MotionGate gate = new MotionGate(MotionGate.DEFAULT_WIDTH);
+        Mat luma = noise();
+        assertEquals(MotionGate.MOTION_FULL_FRAME, gate.update(luma));
+        gate.acceptFrame();
+        assertEquals(MotionGate.MOTION_NONE, gate.update(luma));
+        gate.reset();
+        assertEquals(MotionGate.MOTION_FULL_FRAME, gate.update(luma));
+        luma.release();
+        gate.release();
+    }
+
+    @Test
+    public void update_findsRegionAroundChange() {
+        MotionGate gate = new MotionGate(MotionGate.DEFAULT_WIDTH);
+        Mat luma = noise();
+        gate.update(luma);
+        gate.acceptFrame();
+        Imgproc.rectangle(luma, new Point(200, 40), new Point(239, 99), Scalar.all(255), -1);
+        assertEquals(MotionGate.MOTION_REGIONS, gate.update(luma));
+        assertEquals(1, gate.getRegionCount());
+        int[] rect = new int[4];
+        gate.getRegion(0, rect);
+        assertTrue(rect[0] <= 200 && rect[0] + rect[2] >= 240);
+        assertTrue(rect[1] <= 40 && rect[1] + rect[3] >= 100);
+        assertTrue(rect[2] * rect[3] < WIDTH * HEIGHT / 2);
+        luma.release();
+        gate.release();
+    }
+
+    @Test
+    public void update_reportsFullFrameForLargeChange() {
+        MotionGate gate = new MotionGate(MotionGate.DEFAULT_WIDTH);
+        Mat luma = noise();
+        gate.update(luma);
+        gate.acceptFrame();
+        Core.bitwise_not(luma, luma);
+        assertEquals(MotionGate.MOTION_FULL_FRAME, gate.update(luma));
+        assertEquals(0, gate.getRegionCount());
+        luma.release();
+        gate.release();
+    }
+
+    @Test
+    public void update_ignoresChangeBelowThreshold() {
+        MotionGate gate = new MotionGate(MotionGate.DEFAULT_WIDTH);
+        Mat luma = noise();
+        gate.update(luma);
+        gate.acceptFrame();
+        Core.add(luma, Scalar.all(MotionGate.DEFAULT_PIXEL_THRESHOLD / 2), luma);
+        assertEquals(MotionGate.MOTION_NONE, gate.update(luma));
+        gate.setPixelThreshold(0);
+        assertNotEquals(MotionGate.MOTION_NONE, gate.update(luma));
+        luma.release();
+        gate.release();
+    }
+
+    private static Mat noise() {
+        Mat luma = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        Core.setRNGSeed(5);
+        Core.randu(luma, 64, 192);
+        return luma;
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QualityGovernorTest {
+
+    private static final double TARGET_FPS = 20;
+    private static final long BUDGET_NANOS = 50000000L;
+
+    @Test
+    public void onFrame_staysAtBestLevelWithinBudget() {
+        QualityGovernor governor = newGovernor();
+        assertEquals(0, feed(governor, BUDGET_NANOS * 8 / 10, 500));
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void onFrame_degradesStepByStepUnderSustainedLoad() {
+        QualityGovernor governor = newGovernor();
+        assertEquals(1, feed(governor, BUDGET_NANOS * 2, QualityGovernor.DEGRADE_FRAMES));
+        assertEquals(1, governor.getLevelIndex());
+        feed(governor, BUDGET_NANOS * 2, 100);
+        assertEquals(governor.getLevelCount() - 1, governor.getLevelIndex());
+        assertSame(QualityGovernor.getDefaultLevels()[governor.getLevelCount() - 1].getName(),
+                governor.getLevel().getName());
+    }
+
+    @Test
+    public void onFrame_ignoresShortSpikes() {
+        QualityGovernor governor = newGovernor();
+        for (int i = 0; i < 50; ++i) {
+            feed(governor, BUDGET_NANOS / 2, 20);
+            feed(governor, BUDGET_NANOS * 3, 1);
+        }
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void onFrame_recoversOnlyAfterSustainedHeadroom() {
+        QualityGovernor governor = newGovernor();
+        feed(governor, BUDGET_NANOS * 2, 100);
+        int degraded = governor.getLevelIndex();
+        assertTrue(degraded > 0);
+        feed(governor, BUDGET_NANOS / 4, QualityGovernor.UPGRADE_FRAMES);
+        assertEquals(degraded, governor.getLevelIndex());
+        feed(governor, BUDGET_NANOS / 4, QualityGovernor.UPGRADE_FRAMES);
+        assertEquals(degraded - 1, governor.getLevelIndex());
+        feed(governor, BUDGET_NANOS / 4, 1000);
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void onFrame_doesNotOscillateAroundBudget() {
+        QualityGovernor governor = newGovernor();
+        // Each level is about 30% cheaper than the one above it and the best one is just over budget.
+        int changes = 0;
+        for (int i = 0; i < 2000; ++i) {
+            long nanos = (long) (BUDGET_NANOS * 1.1 * Math.pow(0.7, governor.getLevelIndex()));
+            if (governor.onFrame(nanos + (i % 7) * 1000000L)) {
+                ++changes;
+            }
+        }
+        assertEquals(1, governor.getLevelIndex());
+        assertEquals(1, changes);
+    }
+
+    @Test
+    public void reset_returnsToBestLevel() {
+        QualityGovernor governor = newGovernor();
+        feed(governor, BUDGET_NANOS * 2, 100);
+        governor.reset();
+        assertEquals(0, governor.getLevelIndex());
+        assertEquals(0, governor.getSmoothedNanos());
+    }
+
+    @Test
+    public void getDefaultLevels_returnsCopy() {
+        QualityGovernor.Level[] levels = QualityGovernor.getDefaultLevels();
+        QualityGovernor.Level best = levels[0];
+        levels[0] = levels[levels.length - 1];
+        assertSame(best, QualityGovernor.getDefaultLevels()[0]);
+        for (QualityGovernor.Level level : levels) {
+            assertNotEquals(FramePipeline.INPAINTING_BACKGROUND_PLATE, level.getInpaintingMode());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void level_rejectsBackgroundPlate() {
+        new QualityGovernor.Level("plate", 160, 12, DetectorParams.DEFAULT_FACE, DetectorParams.DEFAULT_BODY,
+                FramePipeline.INPAINTING_BACKGROUND_PLATE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setTargetFps_rejectsNonPositive() {
+        newGovernor().setTargetFps(0);
+    }
+
+    private static QualityGovernor newGovernor() {
+        return new QualityGovernor(QualityGovernor.getDefaultLevels(), TARGET_FPS);
+    }
+
+    /**
+     * @return number of level changes
+     */
+    private static int feed(QualityGovernor governor, long nanos, int frames) {
+        int changes = 0;
+        for (int i = 0; i < frames; ++i) {
+            if (governor.onFrame(nanos)) {
+                ++changes;
+            }
+        }
+        return changes;
+    }
+}
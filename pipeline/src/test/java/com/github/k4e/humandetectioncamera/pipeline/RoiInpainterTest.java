@@ -0,0 +1,149 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.photo.Photo;
+
+import static org.junit.Assert.*;
+
+public class RoiInpainterTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int[][] BLOBS = {
+            { 100, 100, 60, 80 }, { 140, 150, 50, 50 }, { 400, 300, 120, 150 }, { 600, 0, 40, 40 } };
+
+    @Test
+    public void inpaint_matchesFullFrameTelea() {
+        Mat rgba = texturedImage();
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        RoiInpainter inpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        for (int[] b : BLOBS) {
+            Imgproc.ellipse(mask, new Point(b[0] + b[2] / 2, b[1] + b[3] / 2), new Size(b[2] / 2, b[3] / 2),
+                    0, 0, 360, Scalar.all(255.), -1);
+            inpainter.addRegion(b[0], b[1], b[2], b[3]);
+        }
+        Mat fullIn = new Mat();
+        Mat fullOut = new Mat();
+        Imgproc.cvtColor(rgba, fullIn, Imgproc.COLOR_RGBA2RGB);
+        Photo.inpaint(fullIn, mask, fullOut, RoiInpainter.DEFAULT_RADIUS, Photo.INPAINT_TELEA);
+
+        Mat roi = rgba.clone();
+        assertEquals(3, inpainter.inpaint(roi, mask));
+        Mat roiRgb = new Mat();
+        Imgproc.cvtColor(roi, roiRgb, Imgproc.COLOR_RGBA2RGB);
+        Mat diff = new Mat();
+        Core.absdiff(fullOut, roiRgb, diff);
+        Scalar mean = Core.mean(diff);
+        double max = Core.minMaxLoc(diff.reshape(1)).maxVal;
+        for (int c = 0; c < 3; ++c) {
+            assertTrue("mean diff " + mean, mean.val[c] < 0.05);
+        }
+        assertTrue("max diff " + max, max <= 2);
+    }
+
+    @Test
+    public void inpaint_leavesUnmaskedPixelsUntouched() {
+        Mat rgba = texturedImage();
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        RoiInpainter inpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        int[] b = BLOBS[2];
+        Imgproc.ellipse(mask, new Point(b[0] + b[2] / 2, b[1] + b[3] / 2), new Size(b[2] / 2, b[3] / 2),
+                0, 0, 360, Scalar.all(255.), -1);
+        inpainter.addRegion(b[0], b[1], b[2], b[3]);
+        Mat roi = rgba.clone();
+        inpainter.inpaint(roi, mask);
+        Mat diff = new Mat();
+        Core.absdiff(rgba, roi, diff);
+        Mat unmasked = new Mat();
+        Core.bitwise_not(mask, unmasked);
+        Mat changed = new Mat();
+        Imgproc.cvtColor(diff, changed, Imgproc.COLOR_RGBA2GRAY);
+        Core.bitwise_and(changed, unmasked, changed);
+        assertEquals(0, Core.countNonZero(changed));
+    }
+
+    @Test
+    public void inpaint_mergesOverlappingRegions() {
+        Mat rgba = texturedImage();
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        RoiInpainter inpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        inpainter.addRegion(10, 10, 50, 50);
+        inpainter.addRegion(55, 55, 50, 50);
+        inpainter.addRegion(100, 100, 20, 20);
+        inpainter.addRegion(300, 300, 20, 20);
+        assertEquals(2, inpainter.inpaint(rgba, mask));
+    }
+
+    @Test
+    public void temporalReuse_reusesUnchangedRegions() {
+        Mat rgba = texturedImage();
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        int[] b = BLOBS[2];
+        Imgproc.ellipse(mask, new Point(b[0] + b[2] / 2, b[1] + b[3] / 2), new Size(b[2] / 2, b[3] / 2),
+                0, 0, 360, Scalar.all(255.), -1);
+        RoiInpainter inpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        inpainter.setTemporalReuse(true);
+
+        Mat first = rgba.clone();
+        inpainter.addRegion(b[0], b[1], b[2], b[3]);
+        inpainter.inpaint(first, mask);
+        assertEquals(0, inpainter.getCacheHitCount());
+        assertEquals(1, inpainter.getCacheMissCount());
+
+        Mat second = rgba.clone();
+        Imgproc.rectangle(second, new Point(b[0] + 20, b[1] + 20), new Point(b[0] + 60, b[1] + 60),
+                Scalar.all(0.), -1);
+        inpainter.clearRegions();
+        inpainter.addRegion(b[0], b[1], b[2], b[3]);
+        inpainter.inpaint(second, mask);
+        assertEquals(1, inpainter.getCacheHitCount());
+        Mat diff = new Mat();
+        Core.absdiff(first, second, diff);
+        Mat changed = new Mat();
+        Imgproc.cvtColor(diff, changed, Imgproc.COLOR_RGBA2GRAY);
+        assertEquals(0, Core.countNonZero(changed));
+    }
+
+    @Test
+    public void temporalReuse_inpaintsAgainWhenContextChanges() {
+        Mat rgba = texturedImage();
+        Mat mask = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        int[] b = BLOBS[2];
+        Imgproc.ellipse(mask, new Point(b[0] + b[2] / 2, b[1] + b[3] / 2), new Size(b[2] / 2, b[3] / 2),
+                0, 0, 360, Scalar.all(255.), -1);
+        RoiInpainter inpainter = new RoiInpainter(RoiInpainter.DEFAULT_PADDING, RoiInpainter.DEFAULT_RADIUS);
+        inpainter.setTemporalReuse(true);
+        inpainter.addRegion(b[0], b[1], b[2], b[3]);
+        inpainter.inpaint(rgba.clone(), mask);
+
+        Mat changed = rgba.clone();
+        Imgproc.rectangle(changed, new Point(b[0] - 4, b[1] - 4), new Point(b[0] + b[2] + 4, b[1] + 10),
+                Scalar.all(255.), -1);
+        inpainter.clearRegions();
+        inpainter.addRegion(b[0], b[1], b[2], b[3]);
+        inpainter.inpaint(changed, mask);
+        assertEquals(0, inpainter.getCacheHitCount());
+        assertEquals(2, inpainter.getCacheMissCount());
+    }
+
+    private static Mat texturedImage() {
+        Mat rgba = new Mat(HEIGHT, WIDTH, CvType.CV_8UC4);
+        Core.setRNGSeed(7);
+        Core.randu(rgba, 0, 255);
+        Imgproc.GaussianBlur(rgba, rgba, new Size(9, 9), 0);
+        return rgba;
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StageTimerTest {
+
+    @Test
+    public void bucketOf_isMonotonicAndBoundedByUpperBound() {
+        int previous = 0;
+        for (long micros = 0; micros < 1L << 20; micros = micros * 5 / 4 + 1) {
+            int bucket = StageTimer.bucketOf(micros);
+            assertTrue(bucket >= previous);
+            assertTrue(micros < StageTimer.bucketUpperBound(bucket));
+            assertTrue(bucket == 0 || micros >= StageTimer.bucketUpperBound(bucket - 1));
+            previous = bucket;
+        }
+        assertEquals(StageTimer.BUCKET_COUNT - 1, StageTimer.bucketOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void percentiles_areWithinBucketResolution() {
+        StageTimer timer = new StageTimer();
+        for (int i = 1; i <= 1000; ++i) {
+            timer.recordNanos(StageTimer.MASK, i * 10000L);
+        }
+        assertEquals(1000, timer.getCount(StageTimer.MASK));
+        assertEquals(5005000L, timer.getMeanNanos(StageTimer.MASK));
+        assertEquals(10000000L, timer.getMaxNanos(StageTimer.MASK));
+        assertWithin(5000000L, timer.getPercentileNanos(StageTimer.MASK, 50), 0.25);
+        assertWithin(9500000L, timer.getPercentileNanos(StageTimer.MASK, 95), 0.25);
+        assertEquals(10000000L, timer.getPercentileNanos(StageTimer.MASK, 100));
+        assertEquals(0, timer.getPercentileNanos(StageTimer.DRAW, 50));
+    }
+
+    @Test
+    public void snapshot_formatsOnlyRecordedStages() {
+        StageTimer timer = new StageTimer();
+        timer.recordNanos(StageTimer.CONVERSION, 2000000L);
+        timer.record(StageTimer.PROCESS, timer.start());
+        StageTimer.Snapshot snapshot = timer.snapshot();
+        timer.reset();
+        assertEquals(0, timer.getCount(StageTimer.CONVERSION));
+        assertEquals(1, snapshot.getCount(StageTimer.CONVERSION));
+        assertEquals(2000000L, snapshot.getMaxNanos(StageTimer.CONVERSION));
+        String[] lines = snapshot.format();
+        assertEquals(3, lines.length);
+        assertTrue(lines[1].startsWith("conversion: n 1, mean 2.00"));
+        assertTrue(lines[2].startsWith("process: n 1"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentile_rejectsOutOfRange() {
+        new StageTimer().getPercentileNanos(StageTimer.MASK, 0);
+    }
+
+    private static void assertWithin(long expected, long actual, double tolerance) {
+        assertTrue("expected about " + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected * tolerance);
+    }
+}
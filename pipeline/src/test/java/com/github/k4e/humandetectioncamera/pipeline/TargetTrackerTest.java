@@ -0,0 +1,150 @@
+package com.github.k4e.humandetectioncamera.pipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import static org.junit.Assert.*;
+
+public class TargetTrackerTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int BOX = 32;
+
+    @Test
+    public void needsDetection_followsKeyframeInterval() {
+        TargetTracker tracker = new TargetTracker(3, TargetTracker.DEFAULT_MIN_CONFIDENCE);
+        Mat gray = texturedFrame(1);
+        assertTrue(tracker.needsDetection());
+        tracker.startKeyframe();
+        tracker.addTrack(gray, FramePipeline.TARGET_FACE, new int[] { 100, 80, BOX, BOX });
+        assertFalse(tracker.needsDetection());
+        assertTrue(tracker.track(gray));
+        assertFalse(tracker.needsDetection());
+        assertTrue(tracker.track(gray));
+        assertTrue(tracker.needsDetection());
+        tracker.skipKeyframe();
+        assertFalse(tracker.needsDetection());
+        assertEquals(1, tracker.size());
+        tracker.requestKeyframe();
+        assertTrue(tracker.needsDetection());
+        assertTrue(tracker.isKeyframeRequested());
+        tracker.release();
+        gray.release();
+    }
+
+    @Test
+    public void track_requestsKeyframeWhenConfidenceDrops() {
+        TargetTracker tracker = new TargetTracker(TargetTracker.DEFAULT_KEYFRAME_INTERVAL,
+                TargetTracker.DEFAULT_MIN_CONFIDENCE);
+        Mat gray = texturedFrame(1);
+        Mat other = texturedFrame(2);
+        tracker.startKeyframe();
+        tracker.addTrack(gray, FramePipeline.TARGET_BODY, new int[] { 100, 80, BOX, BOX });
+        assertTrue(tracker.track(gray));
+        assertFalse(tracker.isKeyframeRequested());
+        // An unrelated frame cannot match the template
+        assertFalse(tracker.track(other));
+        assertTrue(tracker.isKeyframeRequested());
+        assertTrue(tracker.needsDetection());
+        tracker.release();
+        gray.release();
+        other.release();
+    }
+
+    @Test
+    public void track_keepsBoxInsideFrame() {
+        TargetTracker tracker = new TargetTracker(TargetTracker.DEFAULT_KEYFRAME_INTERVAL, -1);
+        Mat gray = texturedFrame(1);
+        tracker.startKeyframe();
+        // Clipped to the frame when added
+        tracker.addTrack(gray, FramePipeline.TARGET_FACE, new int[] { WIDTH - BOX / 2, -4, BOX, BOX });
+        int[] rect = new int[4];
+        tracker.getRect(0, rect);
+        assertArrayEquals(new int[] { WIDTH - BOX / 2, 0, BOX / 2, BOX }, rect);
+        // The content moves out over the right and top edges, so the best match lies outside the frame
+        Mat shifted = Mat.zeros(HEIGHT, WIDTH, CvType.CV_8UC1);
+        gray.submat(8, HEIGHT, 0, WIDTH - 8).copyTo(shifted.submat(0, HEIGHT - 8, 8, WIDTH));
+        for (int i = 0; i < 3; ++i) {
+            assertTrue(tracker.track(shifted));
+            tracker.getRect(0, rect);
+            assertTrue(rect[0] >= 0 && rect[0] + rect[2] <= WIDTH);
+            assertTrue(rect[1] >= 0 && rect[1] + rect[3] <= HEIGHT);
+        }
+        tracker.release();
+        gray.release();
+        shifted.release();
+    }
+
+    @Test
+    public void startPartialKeyframe_compactsKeptTracksWithTheirTemplates() {
+        TargetTracker tracker = new TargetTracker(TargetTracker.DEFAULT_KEYFRAME_INTERVAL,
+                TargetTracker.DEFAULT_MIN_CONFIDENCE);
+        Mat gray = texturedFrame(1);
+        tracker.startKeyframe();
+        tracker.addTrack(gray, FramePipeline.TARGET_FACE, new int[] { 20, 20, BOX, BOX });
+        tracker.addTrack(gray, FramePipeline.TARGET_BODY, new int[] { 120, 60, BOX, BOX });
+        tracker.addTrack(gray, FramePipeline.TARGET_FACE, new int[] { 220, 140, BOX, BOX });
+        tracker.startPartialKeyframe(new int[] { 0, 0, 40, 40 }, 1);
+        assertFalse(tracker.isKeyframeRequested());
+        assertEquals(2, tracker.size());
+        int[] rect = new int[4];
+        tracker.getRect(0, rect);
+        assertArrayEquals(new int[] { 120, 60, BOX, BOX }, rect);
+        assertEquals(FramePipeline.TARGET_BODY, tracker.getType(0));
+        tracker.getRect(1, rect);
+        assertArrayEquals(new int[] { 220, 140, BOX, BOX }, rect);
+        assertEquals(FramePipeline.TARGET_FACE, tracker.getType(1));
+        // Reuses the template of the dropped track, which must not be shared with a kept one
+        tracker.addTrack(gray, FramePipeline.TARGET_FACE, new int[] { 40, 180, BOX, BOX });
+        assertTrue(tracker.track(gray));
+        tracker.getRect(0, rect);
+        assertArrayEquals(new int[] { 120, 60, BOX, BOX }, rect);
+        tracker.getRect(1, rect);
+        assertArrayEquals(new int[] { 220, 140, BOX, BOX }, rect);
+        tracker.getRect(2, rect);
+        assertArrayEquals(new int[] { 40, 180, BOX, BOX }, rect);
+        tracker.release();
+        gray.release();
+    }
+
+    @Test
+    public void addTrack_growsBeyondInitialCapacity() {
+        TargetTracker tracker = new TargetTracker(TargetTracker.DEFAULT_KEYFRAME_INTERVAL,
+                TargetTracker.DEFAULT_MIN_CONFIDENCE);
+        Mat gray = texturedFrame(1);
+        tracker.startKeyframe();
+        int count = 40;
+        for (int i = 0; i < count; ++i) {
+            tracker.addTrack(gray, i % 2, new int[] { (i % 8) * 36 + 8, (i / 8) * 44 + 8, BOX, BOX });
+        }
+        assertEquals(count, tracker.size());
+        assertTrue(tracker.track(gray));
+        int[] rect = new int[4];
+        for (int i = 0; i < count; ++i) {
+            tracker.getRect(i, rect);
+            assertArrayEquals(new int[] { (i % 8) * 36 + 8, (i / 8) * 44 + 8, BOX, BOX }, rect);
+            assertEquals(i % 2, tracker.getType(i));
+        }
+        tracker.release();
+        gray.release();
+    }
+
+    private static Mat texturedFrame(int seed) {
+        Mat gray = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1);
+        Core.setRNGSeed(seed);
+        Core.randu(gray, 0, 255);
+        Imgproc.GaussianBlur(gray, gray, new Size(5, 5), 0);
+        return gray;
+    }
+}
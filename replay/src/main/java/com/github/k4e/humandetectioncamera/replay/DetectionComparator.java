@@ -0,0 +1,115 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
+/**
+ * Matches replayed targets against golden ones frame by frame. Every golden box is paired greedily with the
+ * unmatched replayed box of the same type that overlaps it most, and counts as matched if their IoU reaches
+ * the threshold.
+ */
+public class DetectionComparator {
+
+    private final double mIouThreshold;
+    private boolean[] mUsed;
+    private long mExpectedCount;
+    private long mActualCount;
+    private long mMatchedCount;
+    private double mMatchedIouSum;
+    private int mMismatchedFrames;
+
+    public DetectionComparator(double iouThreshold) {
+        if (iouThreshold <= 0 || iouThreshold > 1) {
+            throw new IllegalArgumentException("iouThreshold must be in (0, 1]: " + iouThreshold);
+        }
+        mIouThreshold = iouThreshold;
+        mUsed = new boolean[0];
+    }
+
+    /**
+     * @return whether every golden and every replayed box of the frame found its counterpart
+     */
+    public boolean compare(TargetList expected, TargetList actual) {
+        if (mUsed.length < actual.size()) {
+            mUsed = new boolean[actual.size()];
+        }
+        for (int j = 0; j < actual.size(); ++j) {
+            mUsed[j] = false;
+        }
+        int matched = 0;
+        for (int i = 0; i < expected.size(); ++i) {
+            int best = -1;
+            double bestIou = 0;
+            for (int j = 0; j < actual.size(); ++j) {
+                if (mUsed[j] || actual.getType(j) != expected.getType(i)) {
+                    continue;
+                }
+                double iou = iou(expected, i, actual, j);
+                if (iou > bestIou) {
+                    bestIou = iou;
+                    best = j;
+                }
+            }
+            if (best >= 0 && bestIou >= mIouThreshold) {
+                mUsed[best] = true;
+                mMatchedIouSum += bestIou;
+                ++matched;
+            }
+        }
+        mExpectedCount += expected.size();
+        mActualCount += actual.size();
+        mMatchedCount += matched;
+        boolean ok = matched == expected.size() && matched == actual.size();
+        if (!ok) {
+            ++mMismatchedFrames;
+        }
+        return ok;
+    }
+
+    public long getExpectedCount() {
+        return mExpectedCount;
+    }
+
+    public long getActualCount() {
+        return mActualCount;
+    }
+
+    public long getMatchedCount() {
+        return mMatchedCount;
+    }
+
+    public int getMismatchedFrames() {
+        return mMismatchedFrames;
+    }
+
+    /**
+     * @return matched golden boxes over all golden boxes, 1 if there were none
+     */
+    public double getRecall() {
+        return mExpectedCount == 0 ? 1 : (double) mMatchedCount / mExpectedCount;
+    }
+
+    /**
+     * @return matched replayed boxes over all replayed boxes, 1 if there were none
+     */
+    public double getPrecision() {
+        return mActualCount == 0 ? 1 : (double) mMatchedCount / mActualCount;
+    }
+
+    public double getMeanIou() {
+        return mMatchedCount == 0 ? 0 : mMatchedIouSum / mMatchedCount;
+    }
+
+    static double iou(TargetList a, int i, TargetList b, int j) {
+        double left = Math.max(a.getLeft(i), b.getLeft(j));
+        double top = Math.max(a.getTop(i), b.getTop(j));
+        double right = Math.min(a.getRight(i), b.getRight(j));
+        double bottom = Math.min(a.getBottom(i), b.getBottom(j));
+        if (right <= left || bottom <= top) {
+            return 0;
+        }
+        double intersection = (right - left) * (bottom - top);
+        double areaA = (a.getRight(i) - a.getLeft(i)) * (a.getBottom(i) - a.getTop(i));
+        double areaB = (b.getRight(j) - b.getLeft(j)) * (b.getBottom(j) - b.getTop(j));
+        return intersection / (areaA + areaB - intersection);
+    }
+}
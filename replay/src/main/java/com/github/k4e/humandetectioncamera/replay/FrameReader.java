@@ -0,0 +1,132 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads recorded NV21 frames from a single file or from every {@code .nv21} file of a directory in name order.
+ * A file may hold any number of frames back to back. The geometry is taken from a {@code <w>x<h>_} file name
+ * prefix unless it is given explicitly.
+ */
+public class FrameReader implements Closeable {
+
+    public static final String EXTENSION = ".nv21";
+    private static final Pattern SIZE_PREFIX = Pattern.compile("^(\\d+)x(\\d+)_.*");
+    private final List<File> mFiles;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mFrameSize;
+    private int mFileIndex;
+    private InputStream mInput;
+
+    /**
+     * @param width  frame width, or 0 to take it from the file names
+     * @param height frame height, or 0 to take it from the file names
+     */
+    public FrameReader(File path, int width, int height) throws IOException {
+        mFiles = listFrames(path);
+        if (mFiles.isEmpty()) {
+            throw new IOException("No " + EXTENSION + " frames in " + path);
+        }
+        if (width <= 0 || height <= 0) {
+            int[] size = parseSize(mFiles.get(0).getName());
+            if (size == null) {
+                throw new IllegalArgumentException(
+                        "Frame size is not in the file name, pass it explicitly: " + mFiles.get(0));
+            }
+            width = size[0];
+            height = size[1];
+        }
+        mWidth = width;
+        mHeight = height;
+        mFrameSize = width * height * 3 / 2;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public byte[] createBuffer() {
+        return new byte[mFrameSize];
+    }
+
+    /**
+     * Fills the buffer with the next frame. A trailing partial frame is ignored.
+     *
+     * @return false when there are no more frames
+     */
+    public boolean next(byte[] buffer) throws IOException {
+        while (true) {
+            if (mInput == null) {
+                if (mFileIndex >= mFiles.size()) {
+                    return false;
+                }
+                mInput = new BufferedInputStream(new FileInputStream(mFiles.get(mFileIndex++)));
+            }
+            if (readFully(mInput, buffer, mFrameSize)) {
+                return true;
+            }
+            mInput.close();
+            mInput = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mInput != null) {
+            mInput.close();
+            mInput = null;
+        }
+    }
+
+    static int[] parseSize(String name) {
+        Matcher m = SIZE_PREFIX.matcher(name);
+        if (!m.matches()) {
+            return null;
+        }
+        return new int[] { Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)) };
+    }
+
+    private static List<File> listFrames(File path) {
+        List<File> files = new ArrayList<>();
+        if (path.isDirectory()) {
+            File[] children = path.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    if (child.isFile() && child.getName().endsWith(EXTENSION)) {
+                        files.add(child);
+                    }
+                }
+            }
+        } else if (path.isFile()) {
+            files.add(path);
+        }
+        return files;
+    }
+
+    private static boolean readFully(InputStream in, byte[] buffer, int size) throws IOException {
+        int off = 0;
+        while (off < size) {
+            int n = in.read(buffer, off, size - off);
+            if (n < 0) {
+                return false;
+            }
+            off += n;
+        }
+        return true;
+    }
+}
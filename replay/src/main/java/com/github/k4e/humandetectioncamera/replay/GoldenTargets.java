@@ -0,0 +1,98 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Targets of every replayed frame, stored as text so golden files can be reviewed in diffs.
+ * The first line is {@code frames <n>}, followed by one {@code <frame> <type> <left> <top> <right> <bottom>}
+ * line per target with normalized coordinates. Frames without targets have no lines.
+ */
+public class GoldenTargets {
+
+    private static final int INITIAL_TARGET_CAPACITY = 4;
+    private final List<TargetList> mFrames;
+
+    public GoldenTargets() {
+        mFrames = new ArrayList<>();
+    }
+
+    public void add(TargetList targets) {
+        TargetList copy = new TargetList(Math.max(INITIAL_TARGET_CAPACITY, targets.size()));
+        copy.copyFrom(targets);
+        mFrames.add(copy);
+    }
+
+    public int size() {
+        return mFrames.size();
+    }
+
+    public TargetList get(int frame) {
+        return mFrames.get(frame);
+    }
+
+    public void write(File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.write("frames " + mFrames.size() + "\n");
+            for (int f = 0; f < mFrames.size(); ++f) {
+                TargetList targets = mFrames.get(f);
+                for (int i = 0; i < targets.size(); ++i) {
+                    out.write(String.format(Locale.US, "%d %d %.5f %.5f %.5f %.5f\n", f, targets.getType(i),
+                            targets.getLeft(i), targets.getTop(i), targets.getRight(i), targets.getBottom(i)));
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    public static GoldenTargets read(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String header = in.readLine();
+            if (header == null || !header.startsWith("frames ")) {
+                throw new IOException("Missing frames header in " + file);
+            }
+            int frameCount = Integer.parseInt(header.substring("frames ".length()).trim());
+            GoldenTargets golden = new GoldenTargets();
+            for (int f = 0; f < frameCount; ++f) {
+                golden.mFrames.add(new TargetList(INITIAL_TARGET_CAPACITY));
+            }
+            String line;
+            int lineNumber = 1;
+            while ((line = in.readLine()) != null) {
+                ++lineNumber;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 6) {
+                    throw new IOException(file + ":" + lineNumber + ": expected 6 fields");
+                }
+                int frame = Integer.parseInt(fields[0]);
+                if (frame < 0 || frame >= frameCount) {
+                    throw new IOException(file + ":" + lineNumber + ": frame out of range: " + frame);
+                }
+                golden.mFrames.get(frame).add(Integer.parseInt(fields[1]), Float.parseFloat(fields[2]),
+                        Float.parseFloat(fields[3]), Float.parseFloat(fields[4]), Float.parseFloat(fields[5]));
+            }
+            return golden;
+        } finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import java.util.Arrays;
+
+/**
+ * Keeps every frame latency of a replay so exact percentiles can be reported at the end.
+ */
+public class LatencyStats {
+
+    private long[] mSamples;
+    private int mCount;
+    private long mTotal;
+    private boolean mSorted;
+
+    public LatencyStats(int initialCapacity) {
+        mSamples = new long[Math.max(1, initialCapacity)];
+    }
+
+    public void add(long nanos) {
+        if (mCount == mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, mSamples.length * 2);
+        }
+        mSamples[mCount++] = nanos;
+        mTotal += nanos;
+        mSorted = false;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    public long getTotalNanos() {
+        return mTotal;
+    }
+
+    /**
+     * Nearest-rank percentile.
+     *
+     * @param percent in (0, 100]
+     * @return the latency in nanoseconds, or 0 without samples
+     */
+    public long percentile(double percent) {
+        if (percent <= 0 || percent > 100) {
+            throw new IllegalArgumentException("percent must be in (0, 100]: " + percent);
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        if (!mSorted) {
+            Arrays.sort(mSamples, 0, mCount);
+            mSorted = true;
+        }
+        int rank = (int) Math.ceil(percent / 100 * mCount);
+        return mSamples[Math.max(0, rank - 1)];
+    }
+
+    public long max() {
+        return percentile(100);
+    }
+}
@@ -0,0 +1,291 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.FramePipeline;
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+import com.github.k4e.humandetectioncamera.pipeline.ThreadLocalDetector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays many recorded streams at once, each through its own {@link FramePipeline}, on a work-stealing
+ * {@link ForkJoinPool}. A stream is advanced by one task at a time, a batch of frames per task, which forks the
+ * task of the next batch when it is done. So the frames of a stream are processed in order and its tracker,
+ * motion gate and background plate see them as they would live, while idle workers steal the batches of the
+ * other streams. A forked batch is popped again by the same worker unless stolen, which keeps a stream's buffers
+ * warm in one core's cache.
+ * <p>
+ * The pipelines are run on several threads, so give them {@link ThreadLocalDetector}s to have each worker
+ * detect on its own instances.
+ */
+public class MultiStreamEngine {
+
+    public static final int DEFAULT_BATCH_FRAMES = 4;
+
+    public interface FrameListener {
+        /**
+         * Called on the worker thread after every frame, in frame order for each stream.
+         */
+        void onFrame(Stream stream, int frameIndex, FramePipeline pipeline) throws IOException;
+    }
+
+    public static class Stream {
+
+        private final int mIndex;
+        private final File mInput;
+        private final FrameReader mReader;
+        private final FramePipeline mPipeline;
+        private final Nv21FrameConverter mConverter;
+        private final byte[] mBuffer;
+        private final LatencyStats mLatency;
+        private final int mWarmupFrames;
+        // Only touched by the task of the stream; forking the next task publishes them to the worker running it
+        private int mFrameCount;
+        private long mStartNanos;
+        private long mEndNanos;
+        private Exception mError;
+
+        Stream(int index, File input, FrameReader reader, FramePipeline pipeline, int warmupFrames) {
+            mIndex = index;
+            mInput = input;
+            mReader = reader;
+            mPipeline = pipeline;
+            mConverter = new Nv21FrameConverter();
+            mBuffer = reader.createBuffer();
+            mLatency = new LatencyStats(1024);
+            mWarmupFrames = warmupFrames;
+        }
+
+        public int getIndex() {
+            return mIndex;
+        }
+
+        public File getInput() {
+            return mInput;
+        }
+
+        public FramePipeline getPipeline() {
+            return mPipeline;
+        }
+
+        public int getWidth() {
+            return mReader.getWidth();
+        }
+
+        public int getHeight() {
+            return mReader.getHeight();
+        }
+
+        public int getFrameCount() {
+            return mFrameCount;
+        }
+
+        /**
+         * @return latencies of the frames after the warmup, from handing the frame over to the pipeline until
+         *         it is processed
+         */
+        public LatencyStats getLatency() {
+            return mLatency;
+        }
+
+        /**
+         * @return time from the start of the first frame to the end of the last one, waits for a worker included
+         */
+        public long getWallNanos() {
+            return mEndNanos - mStartNanos;
+        }
+
+        public double getFps() {
+            long wall = getWallNanos();
+            return wall > 0 ? mFrameCount / (wall / 1e9) : 0;
+        }
+
+        /**
+         * @return what stopped the stream early, or null if it was replayed to the end
+         */
+        public Exception getError() {
+            return mError;
+        }
+
+        /**
+         * @return false once the stream has no more frames
+         */
+        boolean processBatch(int frames, FrameListener listener) throws IOException {
+            for (int i = 0; i < frames; ++i) {
+                if (!mReader.next(mBuffer)) {
+                    return false;
+                }
+                long start = System.nanoTime();
+                if (mFrameCount == 0) {
+                    mStartNanos = start;
+                }
+                mConverter.put(mBuffer, mReader.getWidth(), mReader.getHeight());
+                mPipeline.process(mConverter);
+                long end = System.nanoTime();
+                if (mFrameCount >= mWarmupFrames) {
+                    mLatency.add(end - start);
+                }
+                if (listener != null) {
+                    listener.onFrame(this, mFrameCount, mPipeline);
+                }
+                ++mFrameCount;
+                mEndNanos = end;
+            }
+            return true;
+        }
+
+        void close() {
+            try {
+                mReader.close();
+            } catch (IOException e) {
+                if (mError == null) {
+                    mError = e;
+                }
+            }
+        }
+
+        void release() {
+            mPipeline.release();
+            mConverter.release();
+        }
+    }
+
+    private final int mParallelism;
+    private final int mBatchFrames;
+    private final List<Stream> mStreams;
+    private FrameListener mListener;
+    private CountDownLatch mRemaining;
+    private long mWallNanos;
+    private long mStealCount;
+
+    /**
+     * @param parallelism number of worker threads
+     * @param batchFrames frames a task processes before it hands the stream on
+     */
+    public MultiStreamEngine(int parallelism, int batchFrames) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (batchFrames < 1) {
+            throw new IllegalArgumentException("batchFrames must be positive: " + batchFrames);
+        }
+        mParallelism = parallelism;
+        mBatchFrames = batchFrames;
+        mStreams = new ArrayList<>();
+    }
+
+    /**
+     * Adds a stream to replay. The engine takes over the pipeline and turns its own parallel detection off, since
+     * the streams already keep every core busy.
+     *
+     * @param width  frame width, or 0 to take it from the file names
+     * @param height frame height, or 0 to take it from the file names
+     */
+    public Stream addStream(File input, int width, int height, FramePipeline pipeline, int warmupFrames)
+            throws IOException {
+        pipeline.setParallelDetectionEnable(false);
+        Stream stream = new Stream(mStreams.size(), input, new FrameReader(input, width, height), pipeline,
+                warmupFrames);
+        mStreams.add(stream);
+        return stream;
+    }
+
+    public void setFrameListener(FrameListener listener) {
+        mListener = listener;
+    }
+
+    public List<Stream> getStreams() {
+        return mStreams;
+    }
+
+    public int getParallelism() {
+        return mParallelism;
+    }
+
+    /**
+     * Replays every stream to its end and waits for the pool to terminate, so thread-local detectors can be
+     * released afterwards. A stream that fails stops with its error while the others go on.
+     */
+    public void run() throws InterruptedException {
+        ForkJoinPool pool = new ForkJoinPool(mParallelism);
+        mRemaining = new CountDownLatch(mStreams.size());
+        long start = System.nanoTime();
+        try {
+            for (Stream stream : mStreams) {
+                pool.execute(new StreamBatch(stream));
+            }
+            mRemaining.await();
+        } finally {
+            mWallNanos = System.nanoTime() - start;
+            mStealCount = pool.getStealCount();
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public long getWallNanos() {
+        return mWallNanos;
+    }
+
+    public int getTotalFrameCount() {
+        int sum = 0;
+        for (Stream stream : mStreams) {
+            sum += stream.getFrameCount();
+        }
+        return sum;
+    }
+
+    public double getAggregateFps() {
+        return mWallNanos > 0 ? getTotalFrameCount() / (mWallNanos / 1e9) : 0;
+    }
+
+    /**
+     * @return number of batches a worker took from another worker's queue
+     */
+    public long getStealCount() {
+        return mStealCount;
+    }
+
+    /**
+     * Releases the pipelines of every stream.
+     */
+    public void release() {
+        for (Stream stream : mStreams) {
+            stream.close();
+            stream.release();
+        }
+    }
+
+    private class StreamBatch extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Stream mStream;
+
+        StreamBatch(Stream stream) {
+            mStream = stream;
+        }
+
+        @Override
+        protected void compute() {
+            boolean more = false;
+            try {
+                more = mStream.processBatch(mBatchFrames, mListener);
+            } catch (IOException | RuntimeException e) {
+                mStream.mError = e;
+            } finally {
+                if (more) {
+                    new StreamBatch(mStream).fork();
+                } else {
+                    mStream.close();
+                    mRemaining.countDown();
+                }
+            }
+        }
+    }
+}
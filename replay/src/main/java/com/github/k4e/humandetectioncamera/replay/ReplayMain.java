@@ -0,0 +1,572 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.CascadeDetector;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionEventBus;
+import com.github.k4e.humandetectioncamera.pipeline.DetectionLogSink;
+import com.github.k4e.humandetectioncamera.pipeline.Detector;
+import com.github.k4e.humandetectioncamera.pipeline.FramePipeline;
+import com.github.k4e.humandetectioncamera.pipeline.HogDetector;
+import com.github.k4e.humandetectioncamera.pipeline.Nv21FrameConverter;
+import com.github.k4e.humandetectioncamera.pipeline.ThreadLocalDetector;
+
+import nu.pattern.OpenCV;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Feeds recorded NV21 frames through {@link FramePipeline} as fast as possible and reports throughput,
+ * frame latency percentiles and peak memory. Detected targets can be recorded as a golden file or compared
+ * against one; with {@code --output} the processed frames are written out, so it doubles as a batch mode.
+ * Given several inputs it replays them all at once on {@link MultiStreamEngine} and reports the throughput of
+ * every stream and of all together.
+ */
+public class ReplayMain {
+
+    private static final int EXIT_USAGE = 1;
+    private static final int EXIT_REGRESSION = 2;
+    private static final String USAGE = "Usage: replay --input <file|dir> [--input <file|dir> ...] [options]\n"
+            + "  --size <w>x<h>           frame size, default from the <w>x<h>_ file name prefix\n"
+            + "  --orientation <deg>      display orientation the frames were taken with, default 0\n"
+            + "  --cascades <dir>         directory of the Haar cascades, default app/src/main/assets/haarcascades\n"
+            + "  --lbp-cascades <dir>     directory of OpenCV's LBP cascades, which are not bundled\n"
+            + "  --face-detector <name>   haar, or lbp with --lbp-cascades, default haar\n"
+            + "  --body-detector <name>   haar or hog, default haar\n"
+            + "  --no-face, --no-body     disable a detector\n"
+            + "  --no-inpaint             disable inpainting\n"
+            + "  --no-tracking            run the detectors on every frame\n"
+            + "  --motion-gate            skip or limit detection on frames that did not change\n"
+            + "  --inpainting <mode>      full, roi or plate, default roi\n"
+            + "  --target-fps <fps>       let the quality governor hold this frame rate\n"
+            + "  --warmup <n>             frames left out of the latency statistics, default 0\n"
+            + "  --threads <n>            worker threads for several inputs, default the number of cores\n"
+            + "  --golden <file>          compare the targets against a golden file\n"
+            + "  --record-golden <file>   write the targets as a golden file\n"
+            + "  --iou <t>                IoU for a target to match, default 0.5\n"
+            + "  --min-recall <r>         fail below this recall, default 0.95\n"
+            + "  --min-precision <p>      fail below this precision, default 0.95\n"
+            + "  --events <file>          log the targets of every frame, as CSV for a .csv name, else binary\n"
+            + "  --output <dir>           write every processed frame as PNG, one subdirectory per input\n"
+            + "                           when there are several";
+
+    private final List<File> mInputs = new ArrayList<>();
+    private int mWidth;
+    private int mHeight;
+    private int mOrientation;
+    private File mCascadeDir = new File("app/src/main/assets/haarcascades");
+    private File mLbpCascadeDir;
+    private String mFaceDetector = CascadeDetector.HAAR;
+    private String mBodyDetector = CascadeDetector.HAAR;
+    private boolean mFace = true;
+    private boolean mBody = true;
+    private boolean mInpaint = true;
+    private boolean mTracking = true;
+    private boolean mMotionGate;
+    private int mInpaintingMode = FramePipeline.INPAINTING_ROI;
+    private double mTargetFps;
+    private int mWarmupFrames;
+    private int mThreads;
+    private File mGoldenFile;
+    private File mRecordGoldenFile;
+    private double mIouThreshold = 0.5;
+    private double mMinRecall = 0.95;
+    private double mMinPrecision = 0.95;
+    private File mOutputDir;
+    private File mEventsFile;
+
+    public static void main(String[] args) {
+        ReplayMain replay = new ReplayMain();
+        try {
+            replay.parseArgs(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_USAGE);
+            return;
+        }
+        try {
+            System.exit(replay.run());
+        } catch (IOException e) {
+            System.err.println("Replay failed: " + e.getMessage());
+            System.exit(EXIT_USAGE);
+        }
+    }
+
+    void parseArgs(String[] args) {
+        for (int i = 0; i < args.length; ++i) {
+            String arg = args[i];
+            switch (arg) {
+                case "--input":
+                    mInputs.add(new File(value(args, ++i, arg)));
+                    break;
+                case "--size": {
+                    String size = value(args, ++i, arg);
+                    int x = size.indexOf('x');
+                    if (x < 0) {
+                        throw new IllegalArgumentException("--size must be <w>x<h>: " + size);
+                    }
+                    mWidth = Integer.parseInt(size.substring(0, x));
+                    mHeight = Integer.parseInt(size.substring(x + 1));
+                    break;
+                }
+                case "--orientation":
+                    mOrientation = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--cascades":
+                    mCascadeDir = new File(value(args, ++i, arg));
+                    break;
+                case "--lbp-cascades":
+                    mLbpCascadeDir = new File(value(args, ++i, arg));
+                    break;
+                case "--face-detector":
+                    mFaceDetector = value(args, ++i, arg);
+                    if (!mFaceDetector.equals(CascadeDetector.HAAR) && !mFaceDetector.equals(CascadeDetector.LBP)) {
+                        throw new IllegalArgumentException("--face-detector must be haar or lbp: " + mFaceDetector);
+                    }
+                    break;
+                case "--body-detector":
+                    mBodyDetector = value(args, ++i, arg);
+                    if (!mBodyDetector.equals(CascadeDetector.HAAR) && !mBodyDetector.equals(HogDetector.NAME)) {
+                        throw new IllegalArgumentException("--body-detector must be haar or hog: " + mBodyDetector);
+                    }
+                    break;
+                case "--no-face":
+                    mFace = false;
+                    break;
+                case "--no-body":
+                    mBody = false;
+                    break;
+                case "--no-inpaint":
+                    mInpaint = false;
+                    break;
+                case "--no-tracking":
+                    mTracking = false;
+                    break;
+                case "--motion-gate":
+                    mMotionGate = true;
+                    break;
+                case "--inpainting":
+                    mInpaintingMode = parseInpaintingMode(value(args, ++i, arg));
+                    break;
+                case "--target-fps":
+                    mTargetFps = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--warmup":
+                    mWarmupFrames = Integer.parseInt(value(args, ++i, arg));
+                    break;
+                case "--threads":
+                    mThreads = Integer.parseInt(value(args, ++i, arg));
+                    if (mThreads < 1) {
+                        throw new IllegalArgumentException("--threads must be positive: " + mThreads);
+                    }
+                    break;
+                case "--golden":
+                    mGoldenFile = new File(value(args, ++i, arg));
+                    break;
+                case "--record-golden":
+                    mRecordGoldenFile = new File(value(args, ++i, arg));
+                    break;
+                case "--iou":
+                    mIouThreshold = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--min-recall":
+                    mMinRecall = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--min-precision":
+                    mMinPrecision = Double.parseDouble(value(args, ++i, arg));
+                    break;
+                case "--events":
+                    mEventsFile = new File(value(args, ++i, arg));
+                    break;
+                case "--output":
+                    mOutputDir = new File(value(args, ++i, arg));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if (mInputs.isEmpty()) {
+            throw new IllegalArgumentException("--input is required");
+        }
+        if (mFace && mFaceDetector.equals(CascadeDetector.LBP) && mLbpCascadeDir == null) {
+            throw new IllegalArgumentException("--face-detector lbp needs --lbp-cascades");
+        }
+        if (mInputs.size() > 1 && (mGoldenFile != null || mRecordGoldenFile != null || mEventsFile != null)) {
+            throw new IllegalArgumentException("--golden, --record-golden and --events take a single --input");
+        }
+    }
+
+    int run() throws IOException {
+        OpenCV.loadLocally();
+        if (mInputs.size() > 1) {
+            return runStreams();
+        }
+        FrameReader reader = new FrameReader(mInputs.get(0), mWidth, mHeight);
+        FramePipeline pipeline = new FramePipeline(mOrientation);
+        if (mFace) {
+            pipeline.setFaceDetector(mFaceDetector.equals(CascadeDetector.LBP)
+                    ? loadCascade(CascadeDetector.LBP, mLbpCascadeDir, "lbpcascade_frontalface_improved.xml")
+                    : loadCascade(CascadeDetector.HAAR, mCascadeDir, "haarcascade_frontalface_alt.xml"));
+        }
+        if (mBody) {
+            pipeline.setBodyDetector(mBodyDetector.equals(HogDetector.NAME)
+                    ? new HogDetector()
+                    : loadCascade(CascadeDetector.HAAR, mCascadeDir, "haarcascade_fullbody.xml"));
+        }
+        configure(pipeline);
+        GoldenTargets golden = mGoldenFile != null ? GoldenTargets.read(mGoldenFile) : null;
+        GoldenTargets recorded = mRecordGoldenFile != null ? new GoldenTargets() : null;
+        DetectionComparator comparator = new DetectionComparator(mIouThreshold);
+        if (mOutputDir != null) {
+            makeDirectory(mOutputDir);
+        }
+        DetectionEventBus eventBus = null;
+        DetectionLogSink eventLog = null;
+        if (mEventsFile != null) {
+            // Replays run faster than a camera, so give the writer more room than the app does
+            eventBus = new DetectionEventBus(DetectionEventBus.DEFAULT_CAPACITY * 16);
+            eventLog = new DetectionLogSink(eventBus, mEventsFile, DetectionLogSink.formatOf(mEventsFile),
+                    DetectionLogSink.DEFAULT_FLUSH_INTERVAL_MILLIS);
+            eventLog.start();
+        }
+        Nv21FrameConverter converter = new Nv21FrameConverter();
+        LatencyStats latency = new LatencyStats(1024);
+        Mat bgr = new Mat();
+        Mat display = new Mat();
+        byte[] buffer = reader.createBuffer();
+        int frame = 0;
+        long wallStart = System.nanoTime();
+        try {
+            while (reader.next(buffer)) {
+                long start = System.nanoTime();
+                converter.put(buffer, reader.getWidth(), reader.getHeight());
+                pipeline.process(converter);
+                long elapsed = System.nanoTime() - start;
+                if (frame >= mWarmupFrames) {
+                    latency.add(elapsed);
+                }
+                if (eventBus != null) {
+                    eventBus.publish(start, frame, pipeline.getTargets());
+                }
+                if (recorded != null) {
+                    recorded.add(pipeline.getTargets());
+                }
+                if (golden != null && frame < golden.size()) {
+                    comparator.compare(golden.get(frame), pipeline.getTargets());
+                }
+                if (mOutputDir != null) {
+                    writeFrame(pipeline, mOutputDir, frame, display, bgr);
+                }
+                ++frame;
+            }
+        } finally {
+            reader.close();
+            if (eventLog != null) {
+                eventLog.close();
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+        if (mTargetFps > 0) {
+            System.out.println("quality: level " + (pipeline.getQualityLevel() + 1) + " of "
+                    + pipeline.getQualityLevelCount() + " at the end");
+        }
+        if (mMotionGate) {
+            reportMotionGate("motion gate", pipeline);
+        }
+        pipeline.release();
+        converter.release();
+        bgr.release();
+        display.release();
+
+        report(frame, reader.getWidth(), reader.getHeight(), wallNanos, latency);
+        if (eventLog != null) {
+            System.out.println("events: wrote " + eventLog.getWrittenRecordCount() + " records to " + mEventsFile
+                    + ", " + eventBus.getDroppedFrameCount() + " frame(s) dropped");
+        }
+        if (recorded != null) {
+            recorded.write(mRecordGoldenFile);
+            System.out.println("golden: wrote " + recorded.size() + " frames to " + mRecordGoldenFile);
+        }
+        if (golden != null) {
+            return reportGolden(frame, golden, comparator);
+        }
+        return 0;
+    }
+
+    /**
+     * Replays every input at once, each through its own pipeline, with every worker thread detecting on its own
+     * detector instances.
+     */
+    private int runStreams() throws IOException {
+        int threads = mThreads > 0 ? mThreads : Runtime.getRuntime().availableProcessors();
+        // The streams already keep every core busy, OpenCV's own threads inside a call would only compete with them
+        Core.setNumThreads(1);
+        ThreadLocalDetector faceDetector = null;
+        ThreadLocalDetector bodyDetector = null;
+        if (mFace) {
+            faceDetector = mFaceDetector.equals(CascadeDetector.LBP)
+                    ? threadLocalCascade(CascadeDetector.LBP, mLbpCascadeDir, "lbpcascade_frontalface_improved.xml")
+                    : threadLocalCascade(CascadeDetector.HAAR, mCascadeDir, "haarcascade_frontalface_alt.xml");
+        }
+        if (mBody) {
+            bodyDetector = mBodyDetector.equals(HogDetector.NAME)
+                    ? new ThreadLocalDetector(HogDetector.NAME, new ThreadLocalDetector.Factory() {
+                        @Override public Detector create() {
+                            return new HogDetector();
+                        }
+                    })
+                    : threadLocalCascade(CascadeDetector.HAAR, mCascadeDir, "haarcascade_fullbody.xml");
+        }
+        MultiStreamEngine engine = new MultiStreamEngine(threads, MultiStreamEngine.DEFAULT_BATCH_FRAMES);
+        final Mat[] displays = new Mat[mInputs.size()];
+        final Mat[] bgrs = new Mat[mInputs.size()];
+        final File[] outputDirs = new File[mInputs.size()];
+        try {
+            for (int i = 0; i < mInputs.size(); ++i) {
+                FramePipeline pipeline = new FramePipeline(mOrientation);
+                pipeline.setDetectors(faceDetector, bodyDetector);
+                configure(pipeline);
+                try {
+                    engine.addStream(mInputs.get(i), mWidth, mHeight, pipeline, mWarmupFrames);
+                } catch (IOException | RuntimeException e) {
+                    pipeline.release();
+                    throw e;
+                }
+                if (mOutputDir != null) {
+                    outputDirs[i] = new File(mOutputDir, String.format(Locale.US, "stream_%02d", i));
+                    makeDirectory(outputDirs[i]);
+                    displays[i] = new Mat();
+                    bgrs[i] = new Mat();
+                }
+            }
+            if (mOutputDir != null) {
+                engine.setFrameListener(new MultiStreamEngine.FrameListener() {
+                    @Override
+                    public void onFrame(MultiStreamEngine.Stream stream, int frameIndex, FramePipeline pipeline) {
+                        int i = stream.getIndex();
+                        writeFrame(pipeline, outputDirs[i], frameIndex, displays[i], bgrs[i]);
+                    }
+                });
+            }
+            engine.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying", e);
+        } finally {
+            engine.release();
+            for (int i = 0; i < displays.length; ++i) {
+                if (displays[i] != null) {
+                    displays[i].release();
+                    bgrs[i].release();
+                }
+            }
+        }
+        // Every worker has terminated, so no thread detects on the instances any more
+        int faceInstances = 0;
+        int bodyInstances = 0;
+        if (faceDetector != null) {
+            faceInstances = faceDetector.getInstanceCount();
+            faceDetector.releaseInstances();
+        }
+        if (bodyDetector != null) {
+            bodyInstances = bodyDetector.getInstanceCount();
+            bodyDetector.releaseInstances();
+        }
+        return reportStreams(engine, faceInstances, bodyInstances);
+    }
+
+    private void configure(FramePipeline pipeline) {
+        pipeline.setFaceDetectionEnable(mFace);
+        pipeline.setBodyDetectionEnable(mBody);
+        pipeline.setInpaintingOn(mInpaint);
+        pipeline.setInpaintingMode(mInpaintingMode);
+        pipeline.setTrackingEnable(mTracking);
+        pipeline.setMotionGateEnable(mMotionGate);
+        // Without --output nothing reads the frames, so only inpainting needs the color conversion
+        pipeline.setOutputEnable(mOutputDir != null);
+        if (mTargetFps > 0) {
+            pipeline.setTargetFps(mTargetFps);
+            pipeline.setQualityGovernorEnable(true);
+        }
+    }
+
+    private int reportStreams(MultiStreamEngine engine, int faceInstances, int bodyInstances) {
+        System.out.println(String.format(Locale.US,
+                "streams: %d on %d threads, %d frames in %.2f s wall, %.1f fps aggregate, %d batches stolen",
+                engine.getStreams().size(), engine.getParallelism(), engine.getTotalFrameCount(),
+                engine.getWallNanos() / 1e9, engine.getAggregateFps(), engine.getStealCount()));
+        System.out.println("detectors: " + faceInstances + " face and " + bodyInstances + " body instance(s)");
+        boolean ok = true;
+        for (MultiStreamEngine.Stream stream : engine.getStreams()) {
+            LatencyStats latency = stream.getLatency();
+            System.out.println(String.format(Locale.US,
+                    "stream %d: %d frames of %dx%d, %.1f fps, p50 %.2f ms, p95 %.2f ms, max %.2f ms, %s",
+                    stream.getIndex(), stream.getFrameCount(), stream.getWidth(), stream.getHeight(),
+                    stream.getFps(), latency.percentile(50) / 1e6, latency.percentile(95) / 1e6,
+                    latency.max() / 1e6, stream.getInput()));
+            if (mMotionGate) {
+                reportMotionGate("stream " + stream.getIndex() + " motion gate", stream.getPipeline());
+            }
+            if (stream.getError() != null) {
+                System.out.println("stream " + stream.getIndex() + ": failed, " + stream.getError());
+                ok = false;
+            }
+        }
+        reportMemory();
+        return ok ? 0 : EXIT_USAGE;
+    }
+
+    private static void reportMotionGate(String label, FramePipeline pipeline) {
+        System.out.println(String.format(Locale.US,
+                "%s: %d skipped, %d by region, %d full frame, %.0f%% skipped, %.1f ms saved",
+                label, pipeline.getMotionSkippedCount(), pipeline.getMotionRegionCount(),
+                pipeline.getMotionFullFrameCount(), pipeline.getMotionSkipRatio() * 100,
+                pipeline.getMotionSavedNanos() / 1e6));
+    }
+
+    private static void report(int frames, int width, int height, long wallNanos, LatencyStats latency) {
+        double processSeconds = latency.getTotalNanos() / 1e9;
+        System.out.println(String.format(Locale.US, "frames: %d of %dx%d in %.2f s wall, %.1f fps wall",
+                frames, width, height, wallNanos / 1e9, frames / (wallNanos / 1e9)));
+        if (latency.getCount() > 0) {
+            System.out.println(String.format(Locale.US, "throughput: %.1f fps over %d measured frames",
+                    latency.getCount() / processSeconds, latency.getCount()));
+            System.out.println(String.format(Locale.US, "latency: p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    latency.percentile(50) / 1e6, latency.percentile(95) / 1e6, latency.percentile(99) / 1e6,
+                    latency.max() / 1e6));
+        }
+        reportMemory();
+    }
+
+    private static void reportMemory() {
+        long peakRss = readPeakRssKb();
+        System.out.println(String.format(Locale.US, "peak memory: rss %s, java heap %.1f MB",
+                peakRss < 0 ? "n/a" : String.format(Locale.US, "%.1f MB", peakRss / 1024.0),
+                peakHeapBytes() / (1024.0 * 1024.0)));
+    }
+
+    private int reportGolden(int frames, GoldenTargets golden, DetectionComparator comparator) {
+        System.out.println(String.format(Locale.US,
+                "golden: recall %.3f (%d/%d), precision %.3f (%d/%d), mean IoU %.3f, %d mismatched frame(s)",
+                comparator.getRecall(), comparator.getMatchedCount(), comparator.getExpectedCount(),
+                comparator.getPrecision(), comparator.getMatchedCount(), comparator.getActualCount(),
+                comparator.getMeanIou(), comparator.getMismatchedFrames()));
+        boolean ok = true;
+        if (frames != golden.size()) {
+            System.out.println("golden: frame count differs, replayed " + frames + ", golden " + golden.size());
+            ok = false;
+        }
+        if (comparator.getRecall() < mMinRecall || comparator.getPrecision() < mMinPrecision) {
+            System.out.println("golden: below the minimum recall " + mMinRecall + " or precision " + mMinPrecision);
+            ok = false;
+        }
+        return ok ? 0 : EXIT_REGRESSION;
+    }
+
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length) {
+            throw new IllegalArgumentException(option + " needs a value");
+        }
+        return args[i];
+    }
+
+    private static void writeFrame(FramePipeline pipeline, File dir, int frame, Mat display, Mat bgr) {
+        pipeline.getGeometry().toDisplay(pipeline.getOutput(), display);
+        Imgproc.cvtColor(display, bgr, display.channels() == 4 ? Imgproc.COLOR_RGBA2BGR : Imgproc.COLOR_RGB2BGR);
+        Imgcodecs.imwrite(new File(dir, String.format(Locale.US, "frame_%05d.png", frame)).getPath(), bgr);
+    }
+
+    private static void makeDirectory(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+    }
+
+    /**
+     * Loads the cascade once to fail early, then lets every worker thread load its own.
+     */
+    private static ThreadLocalDetector threadLocalCascade(final String name, File dir, String filename)
+            throws IOException {
+        loadCascade(name, dir, filename).release();
+        final String path = new File(dir, filename).getPath();
+        return new ThreadLocalDetector(name, new ThreadLocalDetector.Factory() {
+            @Override public Detector create() {
+                return CascadeDetector.load(name, path);
+            }
+        });
+    }
+
+    private static Detector loadCascade(String name, File dir, String filename) throws IOException {
+        File file = new File(dir, filename);
+        Detector detector = file.isFile() ? CascadeDetector.load(name, file.getPath()) : null;
+        if (detector == null) {
+            throw new IOException("Cannot load the " + name + " cascade " + file.getAbsolutePath());
+        }
+        return detector;
+    }
+
+    private static int parseInpaintingMode(String mode) {
+        switch (mode) {
+            case "full":
+                return FramePipeline.INPAINTING_FULL_FRAME;
+            case "roi":
+                return FramePipeline.INPAINTING_ROI;
+            case "plate":
+                return FramePipeline.INPAINTING_BACKGROUND_PLATE;
+            default:
+                throw new IllegalArgumentException("Unknown inpainting mode: " + mode);
+        }
+    }
+
+    /**
+     * Peak resident set size, which unlike the Java heap also covers the native memory of the Mats.
+     *
+     * @return kilobytes, or -1 where /proc is not available
+     */
+    private static long readPeakRssKb() {
+        File status = new File("/proc/self/status");
+        if (!status.isFile()) {
+            return -1;
+        }
+        try {
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(status), "UTF-8"));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.substring("VmHWM:".length()).replace("kB", "").trim());
+                    }
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    private static long peakHeapBytes() {
+        long sum = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                sum += pool.getPeakUsage().getUsed();
+            }
+        }
+        return sum;
+    }
+}
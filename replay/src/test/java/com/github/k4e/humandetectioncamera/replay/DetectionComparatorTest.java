@@ -0,0 +1,51 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DetectionComparatorTest {
+
+    @Test
+    public void iou_ofIdenticalAndDisjointBoxes() {
+        TargetList a = new TargetList(2);
+        a.add(0, 0.1f, 0.1f, 0.3f, 0.3f);
+        a.add(0, 0.5f, 0.5f, 0.7f, 0.7f);
+        assertEquals(1.0, DetectionComparator.iou(a, 0, a, 0), 1e-6);
+        assertEquals(0.0, DetectionComparator.iou(a, 0, a, 1), 1e-6);
+    }
+
+    @Test
+    public void compare_matchesSameTypeAboveThreshold() {
+        TargetList expected = new TargetList(2);
+        expected.add(0, 0.1f, 0.1f, 0.3f, 0.3f);
+        expected.add(1, 0.5f, 0.2f, 0.7f, 0.8f);
+        TargetList actual = new TargetList(2);
+        actual.add(1, 0.51f, 0.21f, 0.71f, 0.81f);
+        actual.add(0, 0.11f, 0.1f, 0.31f, 0.3f);
+        DetectionComparator comparator = new DetectionComparator(0.5);
+        assertTrue(comparator.compare(expected, actual));
+        assertEquals(2, comparator.getMatchedCount());
+        assertEquals(1.0, comparator.getRecall(), 1e-9);
+        assertEquals(1.0, comparator.getPrecision(), 1e-9);
+        assertTrue(comparator.getMeanIou() > 0.85);
+    }
+
+    @Test
+    public void compare_countsMissedAndUnexpectedBoxes() {
+        TargetList expected = new TargetList(2);
+        expected.add(0, 0.1f, 0.1f, 0.3f, 0.3f);
+        expected.add(0, 0.5f, 0.5f, 0.7f, 0.7f);
+        TargetList actual = new TargetList(2);
+        actual.add(1, 0.1f, 0.1f, 0.3f, 0.3f);
+        actual.add(0, 0.5f, 0.5f, 0.7f, 0.7f);
+        DetectionComparator comparator = new DetectionComparator(0.5);
+        assertFalse(comparator.compare(expected, actual));
+        assertTrue(comparator.compare(new TargetList(1), new TargetList(1)));
+        assertEquals(1, comparator.getMismatchedFrames());
+        assertEquals(0.5, comparator.getRecall(), 1e-9);
+        assertEquals(0.5, comparator.getPrecision(), 1e-9);
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.TargetList;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class GoldenTargetsTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void writeAndRead_roundTrip() throws IOException {
+        GoldenTargets golden = new GoldenTargets();
+        TargetList targets = new TargetList(2);
+        targets.add(0, 0.1f, 0.2f, 0.3f, 0.4f);
+        targets.add(1, 0.5f, 0.25f, 0.75f, 1f);
+        golden.add(targets);
+        golden.add(new TargetList(1));
+        targets.clear();
+        targets.add(1, 0f, 0f, 0.5f, 0.5f);
+        golden.add(targets);
+        File file = mFolder.newFile("golden.txt");
+        golden.write(file);
+
+        GoldenTargets read = GoldenTargets.read(file);
+        assertEquals(3, read.size());
+        assertEquals(2, read.get(0).size());
+        assertEquals(0, read.get(1).size());
+        assertEquals(1, read.get(2).size());
+        assertEquals(1, read.get(0).getType(1));
+        assertEquals(0.75f, read.get(0).getRight(1), 1e-5f);
+        assertEquals(0.5f, read.get(2).getBottom(0), 1e-5f);
+    }
+
+    @Test
+    public void add_copiesTargets() {
+        GoldenTargets golden = new GoldenTargets();
+        TargetList targets = new TargetList(1);
+        targets.add(0, 0.1f, 0.2f, 0.3f, 0.4f);
+        golden.add(targets);
+        targets.clear();
+        assertEquals(1, golden.get(0).size());
+    }
+}
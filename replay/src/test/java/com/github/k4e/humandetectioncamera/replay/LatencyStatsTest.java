@@ -0,0 +1,32 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyStatsTest {
+
+    @Test
+    public void percentile_usesNearestRank() {
+        LatencyStats stats = new LatencyStats(1);
+        for (int i = 100; i >= 1; --i) {
+            stats.add(i);
+        }
+        assertEquals(100, stats.getCount());
+        assertEquals(50, stats.percentile(50));
+        assertEquals(95, stats.percentile(95));
+        assertEquals(99, stats.percentile(99));
+        assertEquals(100, stats.max());
+        assertEquals(5050, stats.getTotalNanos());
+    }
+
+    @Test
+    public void percentile_withoutSamplesIsZero() {
+        assertEquals(0, new LatencyStats(4).percentile(99));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentile_rejectsZero() {
+        new LatencyStats(4).percentile(0);
+    }
+}
@@ -0,0 +1,116 @@
+package com.github.k4e.humandetectioncamera.replay;
+
+import com.github.k4e.humandetectioncamera.pipeline.FramePipeline;
+
+import nu.pattern.OpenCV;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MultiStreamEngineTest {
+
+    static {
+        OpenCV.loadLocally();
+    }
+
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void run_keepsFrameOrderWithinEveryStream() throws IOException, InterruptedException {
+        int[] lengths = { 9, 4, 13 };
+        MultiStreamEngine engine = new MultiStreamEngine(3, 2);
+        final List<List<Integer>> seen = new ArrayList<>();
+        for (int i = 0; i < lengths.length; ++i) {
+            engine.addStream(writeStream("s" + i, lengths[i]), 0, 0, new FramePipeline(0), 1);
+            seen.add(new ArrayList<Integer>());
+        }
+        engine.setFrameListener(new MultiStreamEngine.FrameListener() {
+            @Override
+            public void onFrame(MultiStreamEngine.Stream stream, int frameIndex, FramePipeline pipeline) {
+                // Every frame of a file is brighter than the one before
+                int value = (int) pipeline.getOutput().get(0, 0)[0];
+                List<Integer> frames = seen.get(stream.getIndex());
+                synchronized (frames) {
+                    frames.add(frameIndex);
+                    frames.add(value);
+                }
+            }
+        });
+        engine.run();
+        for (int i = 0; i < lengths.length; ++i) {
+            MultiStreamEngine.Stream stream = engine.getStreams().get(i);
+            assertNull(stream.getError());
+            assertEquals(lengths[i], stream.getFrameCount());
+            assertEquals(lengths[i] - 1, stream.getLatency().getCount());
+            List<Integer> frames = seen.get(i);
+            assertEquals(2 * lengths[i], frames.size());
+            for (int f = 0; f < lengths[i]; ++f) {
+                assertEquals(f, (int) frames.get(2 * f));
+                if (f > 0) {
+                    assertTrue(frames.get(2 * f + 1) > frames.get(2 * f - 1));
+                }
+            }
+        }
+        assertEquals(26, engine.getTotalFrameCount());
+        assertTrue(engine.getAggregateFps() > 0);
+        engine.release();
+    }
+
+    @Test
+    public void run_finishesOtherStreamsWhenOneFails() throws IOException, InterruptedException {
+        MultiStreamEngine engine = new MultiStreamEngine(2, MultiStreamEngine.DEFAULT_BATCH_FRAMES);
+        engine.addStream(writeStream("ok", 10), 0, 0, new FramePipeline(0), 0);
+        engine.addStream(writeStream("failing", 10), 0, 0, new FramePipeline(0), 0);
+        engine.setFrameListener(new MultiStreamEngine.FrameListener() {
+            @Override
+            public void onFrame(MultiStreamEngine.Stream stream, int frameIndex, FramePipeline pipeline)
+                    throws IOException {
+                if (stream.getIndex() == 1 && frameIndex == 5) {
+                    throw new IOException("disk full");
+                }
+            }
+        });
+        engine.run();
+        assertNull(engine.getStreams().get(0).getError());
+        assertEquals(10, engine.getStreams().get(0).getFrameCount());
+        assertEquals("disk full", engine.getStreams().get(1).getError().getMessage());
+        assertEquals(5, engine.getStreams().get(1).getFrameCount());
+        engine.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsZeroParallelism() {
+        new MultiStreamEngine(0, MultiStreamEngine.DEFAULT_BATCH_FRAMES);
+    }
+
+    private File writeStream(String name, int frames) throws IOException {
+        File file = mFolder.newFile(WIDTH + "x" + HEIGHT + "_" + name + FrameReader.EXTENSION);
+        byte[] frame = new byte[WIDTH * HEIGHT * 3 / 2];
+        OutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < frames; ++i) {
+                Arrays.fill(frame, 0, WIDTH * HEIGHT, (byte) (i * 16 + 8));
+                Arrays.fill(frame, WIDTH * HEIGHT, frame.length, (byte) 128);
+                out.write(frame);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}